@@ -5,6 +5,7 @@ import project_biu.server.MyHTTPServer;
 import project_biu.servlets.ConfLoader;
 import project_biu.servlets.FeaturesHandler;
 import project_biu.servlets.HtmlLoader;
+import project_biu.servlets.ImpactServlet;
 import project_biu.servlets.TopicDisplayer;
 
 import java.awt.*;
@@ -17,6 +18,7 @@ public class Main {
         server.addServlet("GET", "/publish", new TopicDisplayer());
         server.addServlet("POST", "/upload", new ConfLoader());
         server.addServlet("GET","/features", new FeaturesHandler());
+        server.addServlet("GET", "/impact", new ImpactServlet());
         server.addServlet("GET", "/app/", new HtmlLoader("html_files"));
         server.start();
 
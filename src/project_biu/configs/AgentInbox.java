@@ -0,0 +1,246 @@
+package project_biu.configs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded multi-producer, single-consumer ring buffer used as the inbox of a ParallelAgent.
+ *
+ * All slots are allocated once, up front, and reused: publishing an event only claims a sequence number
+ * and writes the topic ID and value into the slot for that sequence, so handing a message to an agent
+ * allocates nothing and takes no lock. A slot becomes visible to the consumer when its sequence field is
+ * set to the claimed sequence, and becomes free again once the consumer cursor has moved past it.
+ *
+ * When the inbox is full a producer either waits for the consumer, or (in drop-oldest mode) advances the
+ * cursor itself, discarding the oldest pending event. In drop-oldest mode the consumer also claims each
+ * event with a compare-and-set on the cursor, so an event is either consumed or dropped, never both.
+ *
+ * Only one thread may consume at a time; ParallelAgent guarantees that by owning a single worker thread
+ * or by allowing at most one pooled drain task per agent.
+ */
+public class AgentInbox {
+
+    // Topic ID reserved for the stop signal sent by ParallelAgent.close()
+    public static final int STOP = -1;
+
+    /**
+     * Receives events as they are drained from the inbox.
+     */
+    public interface Handler {
+        /**
+         * @param topicId  the ID of the topic the value arrived on, or STOP
+         * @param value    the numeric payload
+         * @param sequence the position of the event in the inbox
+         */
+        void onEvent(int topicId, double value, long sequence);
+    }
+
+    // A preallocated, mutable event slot
+    private static final class Slot {
+        volatile long sequence; // Sequence of the event currently held, published last
+        int topicId;
+        double value;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final boolean dropOldest;
+
+    // Next sequence to hand to a producer
+    private final AtomicLong claim = new AtomicLong();
+
+    // Next sequence the consumer will read; every earlier slot is free again
+    private final AtomicLong cursor = new AtomicLong();
+
+    // Consumer thread parked in take(), or null while it is running
+    private volatile Thread waiter;
+
+    /**
+     * Creates an inbox with at least the requested number of slots (rounded up to a power of two)
+     * whose producers wait while it is full.
+     *
+     * @param capacity minimum number of events that can be pending at once
+     */
+    public AgentInbox(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Creates an inbox with at least the requested number of slots (rounded up to a power of two).
+     *
+     * @param capacity   minimum number of events that can be pending at once
+     * @param dropOldest true to discard the oldest pending event instead of waiting when full
+     */
+    public AgentInbox(int capacity, boolean dropOldest) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        this.mask = size - 1;
+        this.dropOldest = dropOldest;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i - size; // "Published" one lap ago, so nothing is readable yet
+        }
+    }
+
+    /**
+     * Publishes an event. If the inbox is full, waits for a free slot, or in drop-oldest mode
+     * discards pending events until one is free.
+     *
+     * @param topicId the ID of the topic the value arrived on
+     * @param value   the numeric payload
+     * @return the number of pending events discarded to make room
+     */
+    public int put(int topicId, double value) {
+        long seq = claim.getAndIncrement();
+        int dropped = 0;
+        if (seq - slots.length >= cursor.get()) {
+            if (dropOldest) {
+                dropped = dropUntilFree(seq);
+            } else {
+                awaitFreeSlot(seq);
+            }
+        }
+        Slot slot = slots[(int) seq & mask];
+        slot.topicId = topicId;
+        slot.value = value;
+        slot.sequence = seq; // Volatile write publishes the fields above
+
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+        return dropped;
+    }
+
+    /**
+     * Hands pending events to the handler, oldest first, without blocking.
+     *
+     * @param handler receives each event
+     * @param max     maximum number of events to drain
+     * @return the number of events drained
+     */
+    public int drain(Handler handler, int max) {
+        long next = cursor.get();
+        int n = 0;
+        while (n < max) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                long current = cursor.get();
+                if (current != next) {
+                    next = current; // Producers dropped the events we were about to read
+                    continue;
+                }
+                break; // Not published yet
+            }
+            int topicId = slot.topicId;
+            double value = slot.value;
+            long seq = next;
+            // Free the slot before the handler runs, it may publish back into this inbox
+            if (dropOldest) {
+                if (!cursor.compareAndSet(seq, seq + 1)) {
+                    next = cursor.get(); // A producer dropped this event while we read it
+                    continue;
+                }
+            } else {
+                cursor.set(seq + 1);
+            }
+            next = seq + 1;
+            handler.onEvent(topicId, value, seq);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Lets the consumer thread idle once, according to the given strategy, while the inbox is empty.
+     * A strategy that may park registers the thread first, so the next publisher unparks it.
+     *
+     * @param strategy the consumer's idle strategy
+     */
+    public void idle(IdleStrategy strategy) {
+        if (!strategy.mayPark()) {
+            strategy.idle(0);
+            return;
+        }
+        waiter = Thread.currentThread();
+        if (isEmpty()) {
+            strategy.idle(0); // Producers unpark us after publishing
+        }
+        waiter = null;
+    }
+
+    /**
+     * @return true if no published event is waiting to be consumed
+     */
+    public boolean isEmpty() {
+        long next = cursor.get();
+        return slots[(int) next & mask].sequence != next;
+    }
+
+    /**
+     * @return the number of slots in this inbox
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    // Discards the oldest published events until the slot claimed by a producer is free
+    private int dropUntilFree(long seq) {
+        int dropped = 0;
+        long c;
+        while (seq - slots.length >= (c = cursor.get())) {
+            Slot oldest = slots[(int) c & mask];
+            // The stop signal is never dropped, and an event still being written cannot be
+            if (oldest.sequence == c && oldest.topicId != STOP && cursor.compareAndSet(c, c + 1)) {
+                dropped++;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        return dropped;
+    }
+
+    // Waits until the consumer has freed the slot a producer claimed
+    private void awaitFreeSlot(long seq) {
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+            // Let the pool add a worker while we wait, so the consumer's drain task can still run
+            try {
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    public boolean block() {
+                        spinWait(seq);
+                        return true;
+                    }
+
+                    public boolean isReleasable() {
+                        return seq - slots.length < cursor.get();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                spinWait(seq);
+            }
+        } else {
+            spinWait(seq);
+        }
+    }
+
+    // Spins briefly, then backs off to yielding and short parks until the slot is free
+    private void spinWait(long seq) {
+        int spins = 0;
+        while (seq - slots.length >= cursor.get()) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else if (spins < 200) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, 50_000L);
+            }
+            spins++;
+        }
+    }
+}
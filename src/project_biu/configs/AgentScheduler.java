@@ -0,0 +1,40 @@
+package project_biu.configs;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the work-stealing pool shared by every agent running in {@link ExecutionMode#POOLED} mode.
+ *
+ * The pool is created on first use, sized to the number of available cores, and runs in async (FIFO)
+ * mode, which suits event-style tasks that are submitted and never joined. Its workers are daemon
+ * threads, so an idle pool never keeps the application alive.
+ */
+public class AgentScheduler {
+
+    // Lazily initialized holder, the pool is only started when a pooled agent is actually deployed
+    private static class Holder {
+        private static final ForkJoinPool POOL = new ForkJoinPool(
+                Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                null,
+                true);
+    }
+
+    private AgentScheduler() {}
+
+    /**
+     * @return the shared pool used to run agent mailboxes
+     */
+    public static ForkJoinPool get() {
+        return Holder.POOL;
+    }
+
+    /**
+     * Submits a task to the shared pool.
+     *
+     * @param task the work to run, typically an agent draining its mailbox
+     */
+    public static void schedule(Runnable task) {
+        Holder.POOL.execute(task);
+    }
+}
@@ -0,0 +1,20 @@
+package project_biu.configs;
+
+/*
+ * Decides what a ParallelAgent does with messages that arrive faster than its agent handles them.
+ *
+ * Policies:
+ * - BLOCK: every message is queued; publishers wait while the inbox is full (the original behavior).
+ * - CONFLATE: only the newest value per input topic is kept; publishers never wait, and the worker
+ *             drains every pending topic in one batch and evaluates a ComputeAgent once.
+ * - DROP_OLDEST: every message is queued, but a publisher facing a full inbox discards the oldest
+ *                pending message instead of waiting.
+ *
+ * In a config file the policy is chosen per agent with an option on the class line, e.g.
+ * "project_biu.configs.PlusAgent inbox=conflate".
+ */
+public enum BackpressurePolicy {
+    BLOCK,
+    CONFLATE,
+    DROP_OLDEST
+}
@@ -13,11 +13,12 @@
 
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
-import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
 
 /**
  * BinOpAgent listens to two input topics and publishes the result
@@ -27,17 +28,20 @@ import java.util.function.BinaryOperator;
  * Once it receives valid numeric inputs from both, it computes the result
  * and sends it as a message on the output topic.
  */
-public class BinOpAgent implements Agent {
+public class BinOpAgent implements ComputeAgent, Memoizable {
 
     String name;
     String firstTopicName;
-    private Double firstInputVal;
+    private double firstInputVal;
     String secondTopicName;
-    private Double secondInputVal;
+    private double secondInputVal;
     String outputTopicName;
-    BinaryOperator<Double> operation;
+    int firstTopicId;
+    int secondTopicId;
+    Topic outputTopic;
+    DoubleBinaryOperator operation;
 
-    public BinOpAgent(String name, String firstTopicName, String secondTopicName, String outputTopicName, BinaryOperator<Double> operation){
+    public BinOpAgent(String name, String firstTopicName, String secondTopicName, String outputTopicName, DoubleBinaryOperator operation){
         this.name = name;
         this.firstTopicName = firstTopicName;
         this.secondTopicName = secondTopicName;
@@ -47,11 +51,16 @@ public class BinOpAgent implements Agent {
         this.operation = operation;
 
         // Subscribe this agent to both input topics
-        TopicManagerSingleton.get().getTopic(firstTopicName).subscribe(this);
-        TopicManagerSingleton.get().getTopic(secondTopicName).subscribe(this);
+        Topic firstTopic = TopicManagerSingleton.get().getTopic(firstTopicName);
+        Topic secondTopic = TopicManagerSingleton.get().getTopic(secondTopicName);
+        this.firstTopicId = firstTopic.id;
+        this.secondTopicId = secondTopic.id;
+        firstTopic.subscribe(this);
+        secondTopic.subscribe(this);
 
         // Register this agent as a publisher on the output topic
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     /**
@@ -63,23 +72,68 @@ public class BinOpAgent implements Agent {
      */
     @Override
     public void callback(String topic, Message msg) {
-        // Store received value in the appropriate input variable
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    /**
+     * Stores a received value in the appropriate input variable, without publishing.
+     *
+     * @param topic The topic the value came from
+     * @param value The numeric value
+     */
+    @Override
+    public void update(String topic, double value) {
         if (topic.equals(firstTopicName)) {
-            firstInputVal = msg.asDouble;
+            firstInputVal = value;
         }
         if (topic.equals(secondTopicName)) {
-            secondInputVal = msg.asDouble;
+            secondInputVal = value;
+        }
+    }
+
+    // Compares resolved IDs instead of topic names
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId == firstTopicId) {
+            firstInputVal = value;
         }
+        if (topicId == secondTopicId) {
+            secondInputVal = value;
+        }
+    }
 
-        // Check if both inputs are now ready to compute the result
+    /**
+     * Checks if both inputs are ready and, if so, applies the operation and publishes the result.
+     */
+    @Override
+    public void evaluate() {
         if ((!Double.isNaN(firstInputVal)) && (!Double.isNaN(secondInputVal))) {
-            Double outputVal = operation.apply(firstInputVal, secondInputVal);
+            double outputVal = operation.applyAsDouble(firstInputVal, secondInputVal);
 
             // Publish the computed result to the output topic
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
+    // Routes the operation through a cache from now on
+    @Override
+    public void memoize(int capacity) {
+        this.operation = new MemoCache(operation, capacity);
+    }
+
+    @Override
+    public MemoCache getMemoCache() {
+        return operation instanceof MemoCache memo ? memo : null;
+    }
+
     @Override
     public void close() {
         // Optional: Clean-up logic for the agent, currently unused
@@ -106,7 +160,10 @@ public class BinOpAgent implements Agent {
         return secondTopicName;
     }
 
-    public BinaryOperator<Double> getOperation() {
+    /**
+     * @return the operation, behind its MemoCache if the agent is memoized
+     */
+    public DoubleBinaryOperator getOperation() {
         return operation;
     }
 }
@@ -0,0 +1,318 @@
+package project_biu.configs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Rewrites the agent blocks of a configuration after parsing and before any agent is instantiated.
+ *
+ * Passes, repeated until none of them changes anything:
+ * - Constant folding: an agent whose inputs are all constants is computed here; its output topic becomes a
+ *   constant too and the agent is dropped. Constants are the topics declared with setConstant and the outputs
+ *   folded so far; GenericConfig publishes all of them once the remaining agents are deployed.
+ * - Common subexpression elimination: an agent of the same class, options and inputs as another one (in any
+ *   order for PlusAgent, MulAgent and the reductions) computes the same values, so it is dropped. If it published another
+ *   topic, its readers are rewired to the other agent's output topic, unless its own output is observed or
+ *   also published by another agent, since that topic would stop receiving values.
+ * - Dead agent elimination: only when observed topics were declared, an agent whose output topic is neither
+ *   read by another agent nor observed is dropped.
+ *
+ * Only the built-in arithmetic agents take part, since their output depends on nothing but their inputs;
+ * any other agent is left as it is and its inputs and outputs count as used.
+ * Every change is recorded in a report, one line per dropped agent.
+ */
+public class ConfigOptimizer {
+
+    /*
+     * A parsed configuration block: the class name line, split into class name and options,
+     * and the subscriptions and publications lines, split on commas.
+     */
+    public static final class Block {
+        final String header;
+        final String className;
+        final Map<String, String> options;
+        String[] subs;
+        String[] pubs;
+
+        Block(String header, String className, Map<String, String> options, String[] subs, String[] pubs) {
+            this.header = header;
+            this.className = className;
+            this.options = options;
+            this.subs = subs;
+            this.pubs = pubs;
+        }
+
+        @Override
+        public String toString() {
+            return className.substring(className.lastIndexOf('.') + 1) + " " + String.join(",", subs)
+                    + " -> " + String.join(",", pubs).trim();
+        }
+    }
+
+    private static final Set<String> REDUCTIONS = Set.of("SumAgent", "ProductAgent", "MinAgent", "MaxAgent", "MeanAgent");
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final Map<String, Double> declared = new LinkedHashMap<>();
+    private Set<String> observed = null;
+
+    // Results of the last run
+    private final Map<String, Double> constants = new LinkedHashMap<>();
+    private final List<String> report = new ArrayList<>();
+
+    /**
+     * Declares a topic whose value never changes; agents reading only constants are folded.
+     *
+     * @param topic the topic name
+     * @param value its value
+     * @return this optimizer
+     */
+    public ConfigOptimizer setConstant(String topic, double value) {
+        declared.put(topic, value);
+        return this;
+    }
+
+    /**
+     * Declares the topics someone outside the configuration reads, which enables dead agent elimination.
+     * Without it every topic counts as observed.
+     *
+     * @param topics the observed topic names
+     * @return this optimizer
+     */
+    public ConfigOptimizer setObserved(Set<String> topics) {
+        this.observed = new HashSet<>(topics);
+        return this;
+    }
+
+    /**
+     * Optimizes the blocks of a configuration.
+     *
+     * @param blocks the parsed blocks, in file order
+     * @return the blocks to instantiate, in file order (possibly rewritten)
+     */
+    public List<Block> optimize(List<Block> blocks) {
+        List<Block> kept = new ArrayList<>(blocks);
+        constants.clear();
+        constants.putAll(declared);
+        report.clear();
+
+        boolean changed = true;
+        while (changed) {
+            changed = fold(kept);
+            changed |= eliminateCommon(kept);
+            changed |= eliminateDead(kept);
+        }
+        return kept;
+    }
+
+    /**
+     * @return the constants to publish after deployment, declared ones first, then folded outputs in folding order
+     */
+    public Map<String, Double> getConstants() {
+        return constants;
+    }
+
+    /**
+     * @return one line per agent the last run dropped, saying why
+     */
+    public List<String> getReport() {
+        return report;
+    }
+
+    // Computes the agents whose inputs are all constant
+    private boolean fold(List<Block> kept) {
+        Map<String, Integer> producers = producerCounts(kept);
+        boolean changed = false;
+        for (int i = 0; i < kept.size(); i++) {
+            Block b = kept.get(i);
+            String[] subs = trimmed(b.subs);
+            String out = output(b);
+            if (out == null || producers.get(out) > 1 || constants.containsKey(out)
+                    || !Arrays.stream(subs).allMatch(constants::containsKey)) {
+                continue;
+            }
+            double[] in = Arrays.stream(subs).mapToDouble(constants::get).toArray();
+            double value;
+            try {
+                value = switch (simpleName(b)) {
+                    case "PlusAgent" -> Expression.apply('+', in[0], in[1]);
+                    case "MulAgent" -> Expression.apply('*', in[0], in[1]);
+                    case "DivAgent" -> Expression.apply('/', in[0], in[1]);
+                    case "ExponnentAgent" -> Expression.apply('^', in[0], in[1]);
+                    case "IncAgent" -> Expression.apply('+', in[0], 1);
+                    case "SumAgent" -> Arrays.stream(in).reduce(0, Operators.PLUS);
+                    case "ProductAgent" -> Arrays.stream(in).reduce(1, Operators.TIMES);
+                    case "MinAgent" -> Arrays.stream(in).reduce(Double.POSITIVE_INFINITY, Operators.MIN);
+                    case "MaxAgent" -> Arrays.stream(in).reduce(Double.NEGATIVE_INFINITY, Operators.MAX);
+                    case "MeanAgent" -> Arrays.stream(in).reduce(0, Operators.PLUS) / in.length;
+                    default -> Expression.parse(String.join(",", b.pubs), Arrays.asList(subs)).evaluate(in);
+                };
+            } catch (RuntimeException e) {
+                continue; // A malformed block; left for instantiation to report
+            }
+            constants.put(out, value);
+            report.add("folded " + b + " = " + (Double.isNaN(value) ? "no value" : value));
+            kept.remove(i--);
+            changed = true;
+        }
+        return changed;
+    }
+
+    // Drops agents computing the same thing as an earlier one, rewiring their readers
+    private boolean eliminateCommon(List<Block> kept) {
+        Map<String, Integer> producers = producerCounts(kept);
+        Map<String, Block> seen = new HashMap<>();
+        boolean changed = false;
+        for (int i = 0; i < kept.size(); i++) {
+            Block b = kept.get(i);
+            String out = output(b);
+            if (out == null) {
+                continue;
+            }
+            Block first = seen.putIfAbsent(key(b), b);
+            if (first == null) {
+                continue;
+            }
+            String target = output(first);
+            if (out.equals(target)) {
+                // The same agent twice: the second one only republishes the same values
+                kept.remove(i--);
+                producers.merge(out, -1, Integer::sum);
+                report.add("merged duplicate " + b);
+                changed = true;
+                continue;
+            }
+            if (producers.get(out) > 1 || isObserved(out) || constants.containsKey(out)
+                    || !canRename(kept, out, target)) {
+                continue;
+            }
+            kept.remove(i--);
+            rename(kept, out, target);
+            report.add("merged " + b + " into " + target);
+            changed = true; // Readers visited before the rename are compared again in the next round
+        }
+        return changed;
+    }
+
+    // Drops agents nobody reads, when the observed topics are known
+    private boolean eliminateDead(List<Block> kept) {
+        if (observed == null) {
+            return false;
+        }
+        Set<String> read = new HashSet<>();
+        for (Block b : kept) {
+            read.addAll(Arrays.asList(trimmed(b.subs)));
+        }
+        boolean changed = false;
+        for (int i = 0; i < kept.size(); i++) {
+            Block b = kept.get(i);
+            String out = output(b);
+            if (out != null && !read.contains(out) && !observed.contains(out)) {
+                kept.remove(i--);
+                report.add("removed unobserved " + b);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // Identity of what an agent computes: class, options, inputs (sorted when commutative) and formula
+    private static String key(Block b) {
+        String[] subs = trimmed(b.subs);
+        String name = simpleName(b);
+        if (name.equals("PlusAgent") || name.equals("MulAgent") || REDUCTIONS.contains(name)) {
+            Arrays.sort(subs);
+        }
+        String key = b.className + " " + new TreeMap<>(b.options) + " " + String.join(",", subs);
+        if (name.equals("ExpressionAgent")) {
+            String formula = String.join(",", b.pubs);
+            key += " " + formula.substring(formula.indexOf('=') + 1).replaceAll("\\s+", "");
+        }
+        return key;
+    }
+
+    // A formula can only be rewired to a topic whose name it can refer to
+    private static boolean canRename(List<Block> kept, String from, String to) {
+        if (NAME.matcher(to).matches()) {
+            return true;
+        }
+        for (Block b : kept) {
+            if (simpleName(b).equals("ExpressionAgent") && Arrays.asList(trimmed(b.subs)).contains(from)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Makes every agent reading one topic read another one instead
+    private static void rename(List<Block> kept, String from, String to) {
+        Pattern reference = Pattern.compile("(?<![A-Za-z0-9_])" + Pattern.quote(from) + "(?![A-Za-z0-9_])");
+        for (Block b : kept) {
+            boolean reads = false;
+            for (int k = 0; k < b.subs.length; k++) {
+                if (b.subs[k].trim().equals(from)) {
+                    b.subs[k] = to;
+                    reads = true;
+                }
+            }
+            if (reads && simpleName(b).equals("ExpressionAgent")) {
+                String formula = String.join(",", b.pubs);
+                int eq = formula.indexOf('=');
+                String body = reference.matcher(formula.substring(eq + 1)).replaceAll(Matcher.quoteReplacement(to));
+                b.pubs = (formula.substring(0, eq + 1) + body).split(",");
+            }
+        }
+    }
+
+    private boolean isObserved(String topic) {
+        return observed == null || observed.contains(topic);
+    }
+
+    // The output topic of a built-in arithmetic agent, or null for any other agent
+    private static String output(Block b) {
+        return switch (simpleName(b)) {
+            case "PlusAgent", "MulAgent", "DivAgent", "ExponnentAgent", "IncAgent",
+                 "SumAgent", "ProductAgent", "MinAgent", "MaxAgent", "MeanAgent" ->
+                    b.className.startsWith("project_biu.configs.") ? b.pubs[0].trim() : null;
+            case "ExpressionAgent" -> {
+                String formula = String.join(",", b.pubs);
+                int eq = formula.indexOf('=');
+                yield b.className.startsWith("project_biu.configs.") && eq > 0 ? formula.substring(0, eq).trim() : null;
+            }
+            default -> null;
+        };
+    }
+
+    private static Map<String, Integer> producerCounts(List<Block> kept) {
+        Map<String, Integer> producers = new HashMap<>();
+        for (Block b : kept) {
+            for (String pub : outputs(b)) {
+                producers.merge(pub, 1, Integer::sum);
+            }
+        }
+        return producers;
+    }
+
+    // Every topic an agent may publish: its output, or for other agents each name of the publications line
+    private static List<String> outputs(Block b) {
+        String out = output(b);
+        return out != null ? List.of(out) : Arrays.asList(trimmed(b.pubs));
+    }
+
+    private static String simpleName(Block b) {
+        return b.className.substring(b.className.lastIndexOf('.') + 1);
+    }
+
+    private static String[] trimmed(String[] names) {
+        return Arrays.stream(names).map(String::trim).toArray(String[]::new);
+    }
+}
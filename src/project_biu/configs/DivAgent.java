@@ -1,7 +1,8 @@
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
 /*
@@ -16,14 +17,17 @@ import project_biu.graph.TopicManagerSingleton;
  *   - outputTopicName: Destination for computed results
  *   - counter: Tracks instance count for labeling
  */
-public class DivAgent implements Agent {
+public class DivAgent implements ComputeAgent {
 
     String name;
     String firstTopicName;
-    private Double firstInputVal;
+    private double firstInputVal;
     String secondTopicName;
-    private Double secondInputVal;
+    private double secondInputVal;
     String outputTopicName;
+    int firstTopicId;
+    int secondTopicId;
+    Topic outputTopic;
     static int counter = 1;
 
     /**
@@ -45,11 +49,16 @@ public class DivAgent implements Agent {
         counter++;
 
         // Register this agent as a subscriber to both input topics
-        TopicManagerSingleton.get().getTopic(firstTopicName).subscribe(this);
-        TopicManagerSingleton.get().getTopic(secondTopicName).subscribe(this);
+        Topic firstTopic = TopicManagerSingleton.get().getTopic(firstTopicName);
+        Topic secondTopic = TopicManagerSingleton.get().getTopic(secondTopicName);
+        this.firstTopicId = firstTopic.id;
+        this.secondTopicId = secondTopic.id;
+        firstTopic.subscribe(this);
+        secondTopic.subscribe(this);
 
         // Declare this agent as a publisher to the output topic
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     @Override
@@ -72,18 +81,45 @@ public class DivAgent implements Agent {
      */
     @Override
     public void callback(String topic, Message msg) {
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    @Override
+    public void update(String topic, double value) {
         // Update the corresponding value based on the topic
         if (topic.equals(firstTopicName)) {
-            firstInputVal = msg.asDouble;
+            firstInputVal = value;
         }
         if (topic.equals(secondTopicName)) {
-            secondInputVal = msg.asDouble;
+            secondInputVal = value;
         }
+    }
 
+    // Compares resolved IDs instead of topic names
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId == firstTopicId) {
+            firstInputVal = value;
+        }
+        if (topicId == secondTopicId) {
+            secondInputVal = value;
+        }
+    }
+
+    @Override
+    public void evaluate() {
         // Perform division if both inputs are ready and denominator is not zero
         if (!Double.isNaN(firstInputVal) && !Double.isNaN(secondInputVal) && secondInputVal != 0.0) {
             double outputVal = firstInputVal / secondInputVal;
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
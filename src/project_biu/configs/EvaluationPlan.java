@@ -0,0 +1,1230 @@
+package project_biu.configs;
+
+import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
+import project_biu.graph.GraphAnalysis;
+import project_biu.graph.IndexedGraph;
+import project_biu.graph.Message;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleBinaryOperator;
+
+/*
+ * A configuration compiled into a flat, topologically ordered list of arithmetic operations.
+ * Instead of agents calling each other recursively through Topic.publish, publishing an input marks
+ * the operations reading it as dirty, then makes one pass in topological order over the dirty operations,
+ * reading and writing a double[] state vector. An operation that produces a result marks its own consumers,
+ * so only the downstream cone of the published topic is recomputed, and every operation in it (including
+ * the meeting point of a diamond) is computed once per publish.
+ *
+ * Components:
+ * - ops / first / second / out: One entry per operation, in topological order: the opcode, the IDs of
+ *                               its two input topics (INC uses first twice) and the ID of its output topic.
+ *                               An ExpressionAgent expands into one operation per operator of its formula;
+ *                               its intermediate results and constants get slots past the last topic ID.
+ *                               A ReduceAgent expands into a balanced tree of binary operations the same way.
+ * - levelStart: The operations are grouped by topological level (the length of the longest path of operations
+ *               leading to them); level L holds positions levelStart[L] up to levelStart[L + 1]. Operations
+ *               of one level never read each other's outputs, so a level can be computed in parallel.
+ * - pool: When set, levels with enough dirty operations are computed in parallel on this ForkJoinPool.
+ * - custom: The operator of BinOpAgent operations and of memoized agents (CUSTOM opcode).
+ * - state: Latest value of every topic, indexed by TopicManager ID, then of every intermediate result and
+ *          constant of the formulas; NaN means no value yet.
+ * - consumerStart / consumers: Per topic, the positions of the operations reading it, in ascending order
+ *                              (consumers[consumerStart[t]] up to consumers[consumerStart[t + 1]]).
+ * - dirty: Bit set of the operations waiting to be recomputed in the current pass.
+ * - touched counters: How many operations the last and all passes recomputed, to measure incrementality.
+ * - outputs: The output Topic of each operation; results are still published there so the UI,
+ *            tests and other subscribers observe the same topic values as in the other modes.
+ *            A result the topic's OutputFilter drops is neither stored nor propagated, as with the agents.
+ *            Null for intermediate results of a formula, which are never published; when such an operation
+ *            produces nothing its slot is reset to NaN instead, so the rest of the formula has no value either.
+ * - agents / inputs: The compiled agents and the topics each one subscribed to, for deploy.
+ * - kernel: When generated, a hidden class running sequential passes as straight-line bytecode
+ *           specialized for this plan (see KernelGenerator); null when passes are interpreted.
+ * - lazy: When set, a publish runs no pass at all. It marks the whole downstream cone of the topic dirty, so
+ *         the dirty set always contains everything downstream of a dirty operation, and reading an output
+ *         topic runs the dirty operations it depends on (found through producerStart / producers, the
+ *         operations writing each topic or slot), in plan order. Clean results are reused as they are.
+ *
+ * - fixedPoint / cycleStart / cycleEnd: When the operations form cycles and the plan was compiled with fixed-point
+ *                                     settings, operations are ordered by strongly connected component, components
+ *                                     in topological order. The operations of a cyclic component occupy positions
+ *                                     cycleStart[n] up to cycleEnd[n] (0 for operations on no cycle); a pass reaching
+ *                                     one of them solves the whole component by iteration (see solve), so the
+ *                                     acyclic parts are still computed once per pass. Null when there are no cycles.
+ *
+ * Only configurations made of the built-in arithmetic agents can be compiled, and only acyclic ones unless
+ * fixed-point settings are given; passes of a plan with cycles are sequential and interpreted.
+ * Each agent keeps its place in the topics' subscriber lists through a PlannedAgent proxy,
+ * so graph views and tools that inspect subscriptions keep working.
+ */
+public class EvaluationPlan {
+
+    // Opcodes
+    static final int PLUS = 0;
+    static final int MUL = 1;
+    static final int DIV = 2;
+    static final int POW = 3;
+    static final int INC = 4;
+    static final int CUSTOM = 5;
+    static final int MINUS = 6;
+
+    // A level needs at least this many dirty operations before it is worth forking tasks for it
+    private static final int PARALLEL_THRESHOLD = 256;
+
+    // Smallest number of operations a task computes without splitting further
+    private static final int MIN_GRAIN = 64;
+
+    final ComputeAgent[] agents;
+    final int[][] inputs;
+    final int[] ops;
+    final int[] first;
+    final int[] second;
+    final int[] out;
+    final DoubleBinaryOperator[] custom;
+    final Topic[] outputs;
+    final double[] state;
+    final int[] consumerStart;
+    int[] consumers;
+    int[] levelStart;
+    private final long[] dirty;
+
+    // Lazy evaluation: the producers of each slot, in compressed form, and scratch space for walking the graph
+    private boolean lazy = false;
+    private int[] producerStart;
+    private int[] producers;
+    private int[] stack;
+    private int[] pulled;
+
+    // Parallel evaluation: the pool (null for sequential passes), and per operation its result and whether it produced one
+    private ForkJoinPool pool = null;
+    private final double[] results;
+    private final boolean[] produced;
+    private int[] work;
+
+    // Generated evaluator for sequential passes, and the callbacks it publishes through
+    private Kernel kernel = null;
+    private final Sink sink = new PlanSink();
+    private int kernelMethodSize = 0; // Code length of the kernel's largest method, in bytes
+
+    // Solving cycles: the settings, the component of each position, and the values before the current solve
+    private FixedPoint fixedPoint = null;
+    private int[] cycleStart;
+    private int[] cycleEnd;
+    private double[] previous;
+    private volatile int lastIterations = 0;
+    private long unconverged = 0;
+
+    // Operations recomputed by the last pass and by all passes, and the number of passes
+    private volatile int lastTouched = 0;
+    private long totalTouched = 0;
+    private long updates = 0;
+
+    // The message most recently applied per topic; every proxy subscribed to a topic receives the same message
+    private final Message[] applied;
+
+    // Set while a pass runs, so the plan's own publishes are not fed back into it
+    private boolean evaluating = false;
+
+    // The result message being published; its proxies skip it without locking, even when a large
+    // fan-out delivers it from pool threads while this plan's lock is held by the publishing thread
+    private volatile Message publishing = null;
+
+    private EvaluationPlan(List<Agent> agents, int size, int slotCount, int topicCount) {
+        this.agents = agents.toArray(new ComputeAgent[0]);
+        this.inputs = new int[agents.size()][];
+        this.ops = new int[size];
+        this.first = new int[size];
+        this.second = new int[size];
+        this.out = new int[size];
+        this.custom = new DoubleBinaryOperator[size];
+        this.outputs = new Topic[size];
+        this.state = new double[slotCount];
+        this.consumerStart = new int[slotCount + 1];
+        this.dirty = new long[(size + 63) >>> 6];
+        this.results = new double[size];
+        this.produced = new boolean[size];
+        this.applied = new Message[topicCount];
+    }
+
+    /**
+     * Compiles a set of agents into an evaluation plan.
+     *
+     * @param agents the agents of a configuration, as instantiated (not wrapped)
+     * @return the plan, or null if an agent is not a built-in arithmetic agent or the agents form a cycle
+     */
+    public static EvaluationPlan compile(List<Agent> agents) {
+        return compile(agents, null);
+    }
+
+    /**
+     * Compiles a set of agents into an evaluation plan, solving their feedback loops by fixed-point iteration.
+     *
+     * @param agents the agents of a configuration, as instantiated (not wrapped)
+     * @param fixedPoint how to solve cycles, or null to refuse them
+     * @return the plan, or null if an agent is not a built-in arithmetic agent, or the agents form a cycle
+     *         and no fixed-point settings were given
+     */
+    public static EvaluationPlan compile(List<Agent> agents, FixedPoint fixedPoint) {
+        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
+        int topicCount = tm.getTopicCount();
+
+        // Size the arrays: one operation per agent or formula operator, one slot per topic, intermediate result and constant
+        int size = 0;
+        int slotCount = topicCount;
+        for (Agent agent : agents) {
+            if (agent instanceof ExpressionAgent a) {
+                int count = a.expression.operationCount();
+                size += count;
+                slotCount += count - 1 + a.expression.constantCount();
+            } else if (agent instanceof ReduceAgent a) {
+                int count = Math.max(a.k - 1, 1) + (a instanceof MeanAgent ? 1 : 0);
+                size += count;
+                slotCount += count - 1 + (a.k == 1 ? 1 : 0) + (a instanceof MeanAgent ? 1 : 0);
+            } else {
+                size++;
+            }
+        }
+
+        // Decode every agent into (opcode, inputs, output), in configuration order
+        Decoder d = new Decoder(size, slotCount, topicCount);
+        int[][] inputs = new int[agents.size()][];
+        for (int i = 0; i < agents.size(); i++) {
+            switch (agents.get(i)) {
+                case PlusAgent a -> inputs[i] = d.add(PLUS, a.firstTopicId, a.secondTopicId, a.outputTopic.id, null);
+                case MulAgent a -> inputs[i] = d.add(MUL, a.firstTopicId, a.secondTopicId, a.outputTopic.id, null);
+                case DivAgent a -> inputs[i] = d.add(DIV, a.firstTopicId, a.secondTopicId, a.outputTopic.id, null);
+                case ExponnentAgent a -> inputs[i] = a.memo != null
+                        ? d.add(CUSTOM, a.firstTopicId, a.secondTopicId, a.outputTopic.id, a.memo)
+                        : d.add(POW, a.firstTopicId, a.secondTopicId, a.outputTopic.id, null);
+                case IncAgent a -> {
+                    int in = tm.getTopic(a.inputTopicName).id;
+                    inputs[i] = d.add(INC, in, in, a.outputTopic.id, null);
+                }
+                case BinOpAgent a -> inputs[i] = d.add(CUSTOM, a.firstTopicId, a.secondTopicId, a.outputTopic.id, a.getOperation());
+                case ExpressionAgent a -> {
+                    d.expand(a.expression.root, a.inputTopicIds, a.outputTopic.id);
+                    inputs[i] = a.inputTopicIds.clone();
+                }
+                case ReduceAgent a -> {
+                    d.reduce(a, a.outputTopic.id);
+                    inputs[i] = Arrays.stream(a.inputTopicIds).distinct().toArray();
+                }
+                default -> {
+                    return null; // Unknown behavior, can't be compiled
+                }
+            }
+        }
+        int[] ops = d.ops;
+        int[] first = d.first;
+        int[] second = d.second;
+        int[] out = d.out;
+
+        int[] order = topologicalOrder(ops, first, second, out, slotCount);
+        GraphAnalysis components = null;
+        int[] levelStart;
+        if (order == null) {
+            if (fixedPoint == null) {
+                return null;
+            }
+            components = componentGraph(ops, first, second, out, slotCount).analyze();
+            order = components.topologicalOrder();
+            levelStart = new int[]{0, size}; // Not computed in parallel
+        } else {
+            levelStart = levels(order, first, second, out, slotCount);
+        }
+
+        EvaluationPlan plan = new EvaluationPlan(agents, size, slotCount, topicCount);
+        plan.levelStart = levelStart;
+        plan.work = new int[size];
+        System.arraycopy(inputs, 0, plan.inputs, 0, inputs.length);
+        for (int t = 0; t < topicCount; t++) {
+            Message last = tm.getTopic(t).getLastMessageObject();
+            plan.state[t] = last != null ? last.asDouble : Double.NaN;
+        }
+        System.arraycopy(d.constants, topicCount, plan.state, topicCount, slotCount - topicCount);
+        for (int n = 0; n < size; n++) {
+            int i = order[n];
+            plan.ops[n] = ops[i];
+            plan.first[n] = first[i];
+            plan.second[n] = second[i];
+            plan.out[n] = out[i];
+            plan.outputs[n] = out[i] < topicCount ? tm.getTopic(out[i]) : null;
+            plan.custom[n] = d.custom[i];
+        }
+        plan.indexConsumers();
+        if (components != null) {
+            plan.indexCycles(components, order, fixedPoint);
+        }
+        return plan;
+    }
+
+    /*
+     * Level of each operation: one more than the deepest producer of its inputs, found in a single pass
+     * since producers come first in topological order. Then regroups the order by level, in place (still
+     * topological), and returns where each level starts.
+     */
+    private static int[] levels(int[] order, int[] first, int[] second, int[] out, int slotCount) {
+        int size = order.length;
+        int[] level = new int[size];
+        int[] topicLevel = new int[slotCount];
+        int levels = 0;
+        for (int i : order) {
+            level[i] = Math.max(topicLevel[first[i]], topicLevel[second[i]]);
+            topicLevel[out[i]] = Math.max(topicLevel[out[i]], level[i] + 1);
+            levels = Math.max(levels, level[i] + 1);
+        }
+        int[] levelStart = new int[levels + 1];
+        for (int i = 0; i < size; i++) {
+            levelStart[level[i] + 1]++;
+        }
+        for (int l = 0; l < levels; l++) {
+            levelStart[l + 1] += levelStart[l];
+        }
+        int[] byLevel = new int[size];
+        int[] fill = levelStart.clone();
+        for (int i : order) {
+            byLevel[fill[level[i]]++] = i;
+        }
+        System.arraycopy(byLevel, 0, order, 0, size);
+        return levelStart;
+    }
+
+    /*
+     * Collects the decoded operations in configuration order, and allocates the slots of formulas' intermediate
+     * results and constants after the topics. Constants hold their value in the constants array, intermediate
+     * results NaN.
+     */
+    private static final class Decoder {
+        final int[] ops;
+        final int[] first;
+        final int[] second;
+        final int[] out;
+        final DoubleBinaryOperator[] custom;
+        final double[] constants;
+        private int size = 0;
+        private int nextSlot;
+
+        Decoder(int size, int slotCount, int topicCount) {
+            this.ops = new int[size];
+            this.first = new int[size];
+            this.second = new int[size];
+            this.out = new int[size];
+            this.custom = new DoubleBinaryOperator[size];
+            this.constants = new double[slotCount];
+            Arrays.fill(constants, Double.NaN);
+            this.nextSlot = topicCount;
+        }
+
+        // Adds one operation; returns the topics it reads
+        int[] add(int op, int a, int b, int result, DoubleBinaryOperator operation) {
+            ops[size] = op;
+            first[size] = a;
+            second[size] = b;
+            out[size] = result;
+            custom[size] = operation;
+            size++;
+            return a == b ? new int[]{a} : new int[]{a, b};
+        }
+
+        // Adds the operations of a formula's subtree, bottom up; returns the slot holding its value
+        int expand(Expression.Term term, int[] inputTopicIds, int result) {
+            return switch (term) {
+                case Expression.Num n -> {
+                    constants[nextSlot] = n.value();
+                    yield nextSlot++;
+                }
+                case Expression.Var v -> inputTopicIds[v.index()];
+                case Expression.Bin b -> {
+                    int l = expand(b.left(), inputTopicIds, -1);
+                    int r = expand(b.right(), inputTopicIds, -1);
+                    int op = switch (b.op()) {
+                        case '+' -> PLUS;
+                        case '-' -> MINUS;
+                        case '*' -> MUL;
+                        case '/' -> DIV;
+                        default -> POW;
+                    };
+                    add(op, l, r, result >= 0 ? result : nextSlot++, null);
+                    yield out[size - 1];
+                }
+            };
+        }
+
+        // Adds the operations of a reduction: its inputs combined pairwise, level by level, then divided for a mean
+        void reduce(ReduceAgent a, int result) {
+            int op = a.operator == Operators.PLUS ? PLUS : a.operator == Operators.TIMES ? MUL : CUSTOM;
+            boolean mean = a instanceof MeanAgent;
+            int[] level = a.inputTopicIds;
+            if (level.length == 1) {
+                level = new int[]{level[0], constant(a.identity)};
+            }
+            while (level.length > 1) {
+                int[] next = new int[(level.length + 1) / 2];
+                for (int j = 0; j < next.length; j++) {
+                    if (2 * j + 1 < level.length) {
+                        int target = next.length == 1 && !mean ? result : nextSlot++;
+                        add(op, level[2 * j], level[2 * j + 1], target, op == CUSTOM ? a.operator : null);
+                        next[j] = target;
+                    } else {
+                        next[j] = level[2 * j];
+                    }
+                }
+                level = next;
+            }
+            if (mean) {
+                add(DIV, level[0], constant(a.k), result, null);
+            }
+        }
+
+        private int constant(double value) {
+            constants[nextSlot] = value;
+            return nextSlot++;
+        }
+    }
+
+    /*
+     * Builds the per-topic consumer lists in compressed form: one count pass, a prefix sum, one fill pass.
+     * Operations are visited in topological order, so each list comes out ascending.
+     * An operation reading the same topic twice is listed once.
+     */
+    private void indexConsumers() {
+        int size = ops.length;
+        for (int n = 0; n < size; n++) {
+            consumerStart[first[n] + 1]++;
+            if (second[n] != first[n]) {
+                consumerStart[second[n] + 1]++;
+            }
+        }
+        for (int t = 0; t < state.length; t++) {
+            consumerStart[t + 1] += consumerStart[t];
+        }
+        consumers = new int[consumerStart[state.length]];
+        int[] fill = consumerStart.clone();
+        for (int n = 0; n < size; n++) {
+            consumers[fill[first[n]]++] = n;
+            if (second[n] != first[n]) {
+                consumers[fill[second[n]]++] = n;
+            }
+        }
+    }
+
+    // Records the position range of every cyclic component; positions follow the analysis' component order
+    private void indexCycles(GraphAnalysis components, int[] order, FixedPoint fixedPoint) {
+        int size = ops.length;
+        this.fixedPoint = fixedPoint;
+        this.cycleStart = new int[size];
+        this.cycleEnd = new int[size];
+        this.previous = new double[size];
+        for (int n = 0; n < size; ) {
+            int end = n + 1;
+            while (end < size && components.component(order[end]) == components.component(order[n])) {
+                end++;
+            }
+            if (components.isCyclic(order[n])) {
+                for (int m = n; m < end; m++) {
+                    cycleStart[m] = n;
+                    cycleEnd[m] = end;
+                }
+            }
+            n = end;
+        }
+    }
+
+    // The graph of the operations, with an edge from every operation to each operation reading its output
+    private static IndexedGraph componentGraph(int[] ops, int[] first, int[] second, int[] out, int slotCount) {
+        int size = ops.length;
+        int[] producerStart = new int[slotCount + 1];
+        for (int i = 0; i < size; i++) {
+            producerStart[out[i] + 1]++;
+        }
+        for (int t = 0; t < slotCount; t++) {
+            producerStart[t + 1] += producerStart[t];
+        }
+        int[] producers = new int[size];
+        int[] fill = Arrays.copyOf(producerStart, slotCount);
+        for (int i = 0; i < size; i++) {
+            producers[fill[out[i]]++] = i;
+        }
+
+        IndexedGraph.Builder b = new IndexedGraph.Builder();
+        for (int i = 0; i < size; i++) {
+            b.addNode(""); // Operations are only known by position
+        }
+        for (int i = 0; i < size; i++) {
+            int inputCount = ops[i] == INC || first[i] == second[i] ? 1 : 2;
+            for (int k = 0; k < inputCount; k++) {
+                int t = k == 0 ? first[i] : second[i];
+                for (int j = producerStart[t]; j < producerStart[t + 1]; j++) {
+                    b.edge(producers[j], i);
+                }
+            }
+        }
+        return b.build();
+    }
+
+    /*
+     * Orders the operations so that every operation comes after all producers of its inputs (Kahn's algorithm).
+     * Returns null if that is impossible because the operations form a cycle.
+     */
+    private static int[] topologicalOrder(int[] ops, int[] first, int[] second, int[] out, int slotCount) {
+        int size = ops.length;
+
+        // Producers of each topic or slot
+        List<List<Integer>> producers = new ArrayList<>(slotCount);
+        for (int t = 0; t < slotCount; t++) {
+            producers.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            producers.get(out[i]).add(i);
+        }
+
+        // Edges producer -> consumer, counted once per input
+        List<List<Integer>> consumers = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            consumers.add(new ArrayList<>());
+        }
+        int[] indegree = new int[size];
+        for (int i = 0; i < size; i++) {
+            int inputCount = ops[i] == INC ? 1 : 2;
+            for (int k = 0; k < inputCount; k++) {
+                for (int p : producers.get(k == 0 ? first[i] : second[i])) {
+                    consumers.get(p).add(i);
+                    indegree[i]++;
+                }
+            }
+        }
+
+        int[] order = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            if (indegree[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int i = order[head++];
+            for (int c : consumers.get(i)) {
+                if (--indegree[c] == 0) {
+                    order[tail++] = c;
+                }
+            }
+        }
+        return tail == size ? order : null;
+    }
+
+    /**
+     * Subscribes the plan in place of its agents: every subscription of an agent is handed to a
+     * PlannedAgent proxy feeding the plan, so the agents themselves are no longer called.
+     *
+     * @return the proxies, one per agent, in configuration order
+     */
+    public List<Agent> deploy() {
+        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
+        List<Agent> proxies = new ArrayList<>(agents.length);
+        for (int i = 0; i < agents.length; i++) {
+            PlannedAgent proxy = new PlannedAgent(this, agents[i]);
+            for (int topicId : inputs[i]) {
+                tm.getTopic(topicId).replaceSubscriber(agents[i], proxy);
+            }
+            proxies.add(proxy);
+        }
+        return proxies;
+    }
+
+    /*
+     * Applies a value published on a topic and recomputes its downstream cone.
+     * Passes are serialized, since they share the state vector.
+     */
+    synchronized void accept(int topicId, Message msg) {
+        if (evaluating) {
+            return; // Our own output
+        }
+        int fromWord = apply(topicId, msg);
+        if (fromWord < 0 || lazy) {
+            return;
+        }
+        evaluating = true;
+        try {
+            pass(fromWord);
+        } finally {
+            evaluating = false;
+        }
+    }
+
+    /*
+     * Applies all the values of a transaction before recomputing, so the union of their downstream cones
+     * is evaluated in a single pass and every operation in it sees only new inputs, exactly once.
+     */
+    synchronized void acceptAll(int[] topicIds, Message[] msgs) {
+        if (evaluating) {
+            return;
+        }
+        int fromWord = Integer.MAX_VALUE;
+        for (int i = 0; i < topicIds.length; i++) {
+            int word = apply(topicIds[i], msgs[i]);
+            if (word >= 0) {
+                fromWord = Math.min(fromWord, word);
+            }
+        }
+        if (fromWord == Integer.MAX_VALUE || lazy) {
+            return;
+        }
+        evaluating = true;
+        try {
+            pass(fromWord);
+        } finally {
+            evaluating = false;
+        }
+    }
+
+    // Runs a sequential, generated or level-parallel pass
+    private void pass(int fromWord) {
+        if (pool != null) {
+            runLevels(fromWord);
+        } else if (kernel != null) {
+            runKernel(fromWord);
+        } else {
+            run(fromWord);
+        }
+    }
+
+    /*
+     * Stores a published value and marks the operations reading it.
+     * Returns the bit set word of its first consumer, or -1 if there is nothing to recompute: the topic is
+     * outside the plan or unread, or another proxy of the plan already applied this very message.
+     */
+    private int apply(int topicId, Message msg) {
+        if (topicId >= applied.length || applied[topicId] == msg) {
+            return -1;
+        }
+        applied[topicId] = msg;
+        state[topicId] = msg.asDouble;
+        int start = consumerStart[topicId];
+        if (start == consumerStart[topicId + 1]) {
+            return -1; // Nothing in the plan reads this topic
+        }
+        if (lazy) {
+            markCone(topicId);
+        } else {
+            markConsumers(topicId);
+        }
+        return consumers[start] >>> 6;
+    }
+
+    // Flags every operation reading the topic for recomputation
+    private void markConsumers(int topicId) {
+        for (int k = consumerStart[topicId]; k < consumerStart[topicId + 1]; k++) {
+            int n = consumers[k];
+            dirty[n >>> 6] |= 1L << n;
+        }
+    }
+
+    // Flags every operation downstream of the topic, stopping at operations already flagged, whose cone is too
+    private void markCone(int topicId) {
+        int top = 0;
+        stack[top++] = topicId;
+        while (top > 0) {
+            int t = stack[--top];
+            for (int k = consumerStart[t]; k < consumerStart[t + 1]; k++) {
+                int n = consumers[k];
+                if ((dirty[n >>> 6] & (1L << n)) == 0) {
+                    dirty[n >>> 6] |= 1L << n;
+                    stack[top++] = out[n];
+                }
+            }
+        }
+    }
+
+    /*
+     * Brings a topic up to date in lazy mode: collects the dirty operations it depends on, walking back from
+     * the topic through dirty producers only (a clean operation has only clean operations upstream), then
+     * evaluates them in plan order, publishing each result like a pass would. Their results mark the operations
+     * downstream dirty, pulled ones included, so those are cleared again afterwards: they are up to date, and
+     * a second read of an unchanged output computes and publishes nothing. Operations left dirty are
+     * downstream of something else, and wait for a read of their own.
+     */
+    synchronized void pull(int topicId) {
+        if (!lazy || evaluating || producerStart[topicId] == producerStart[topicId + 1]) {
+            return;
+        }
+        int count = 0;
+        int top = 0;
+        stack[top++] = topicId;
+        while (top > 0) {
+            int t = stack[--top];
+            for (int k = producerStart[t]; k < producerStart[t + 1]; k++) {
+                int n = producers[k];
+                long bit = 1L << n;
+                if ((dirty[n >>> 6] & bit) != 0) {
+                    dirty[n >>> 6] &= ~bit; // Cleared now so it is collected once; evaluate expects it cleared
+                    pulled[count++] = n;
+                    stack[top++] = first[n];
+                    stack[top++] = second[n];
+                }
+            }
+        }
+        if (count == 0) {
+            lastTouched = 0;
+            return;
+        }
+        Arrays.sort(pulled, 0, count);
+        evaluating = true;
+        try {
+            for (int k = 0; k < count; k++) {
+                evaluate(pulled[k], state);
+            }
+        } finally {
+            evaluating = false;
+            for (int k = 0; k < count; k++) {
+                dirty[pulled[k] >>> 6] &= ~(1L << pulled[k]);
+            }
+        }
+        lastTouched = count;
+        totalTouched += count;
+        updates++;
+    }
+
+    /*
+     * Recomputes the dirty operations in topological order, starting from a word of the bit set, and
+     * publishes each result. Consumers are always later in the order, so marking them while scanning is safe.
+     * Mirrors the agents: nothing is published while an input is missing, or when dividing by zero.
+     */
+    private void run(int fromWord) {
+        double[] s = state;
+        long[] d = dirty;
+        int touched = 0;
+        for (int w = fromWord; w < d.length; w++) {
+            while (d[w] != 0) {
+                int n = (w << 6) + Long.numberOfTrailingZeros(d[w]);
+                d[w] &= d[w] - 1; // Clear the lowest set bit, which is n
+                if (cycleEnd != null && cycleEnd[n] != 0) {
+                    touched += solve(cycleStart[n], cycleEnd[n]);
+                } else {
+                    touched++;
+                    evaluate(n, s);
+                }
+            }
+        }
+        lastTouched = touched;
+        totalTouched += touched;
+        updates++;
+    }
+
+    // Sequential pass through the generated kernel, one call per bit set word with dirty operations
+    private void runKernel(int fromWord) {
+        double[] s = state;
+        long[] d = dirty;
+        int touched = 0;
+        for (int w = fromWord; w < d.length; w++) {
+            if (d[w] != 0) {
+                touched += kernel.run(w, s, d, sink);
+            }
+        }
+        lastTouched = touched;
+        totalTouched += touched;
+        updates++;
+    }
+
+    // Computes one operation; if it produces a result, stores and publishes it and marks its consumers dirty
+    private void evaluate(int n, double[] s) {
+        if (compute(n, s)) {
+            commit(n);
+        } else if (outputs[n] == null) {
+            retract(n);
+        }
+    }
+
+    /*
+     * Solves the cyclic component at positions start up to end by Gauss-Seidel iteration: every iteration
+     * recomputes its operations in plan order, each reading the latest values of the others, until no value
+     * moves by more than the tolerance or the iteration cap is reached. Values the loop has not produced yet
+     * start from 0; with damping, a value moves only part of the way to its recomputed value per iteration.
+     *
+     * The values reached are then published once each, like a pass publishes its results, and the consumers
+     * past the component are marked dirty. An operation producing nothing in the last iteration publishes
+     * nothing, and its topic keeps its value. A value an output filter drops is kept, being part of the solution,
+     * but does not mark its consumers. Returns the number of operations computed.
+     */
+    private int solve(int start, int end) {
+        double[] s = state;
+        double tolerance = fixedPoint.getTolerance();
+        double damping = fixedPoint.getDamping();
+        for (int m = start; m < end; m++) {
+            previous[m] = s[out[m]];
+            if (Double.isNaN(s[out[m]])) {
+                s[out[m]] = 0.0;
+            }
+        }
+        int iterations = 0;
+        boolean converged = false;
+        while (!converged && iterations < fixedPoint.getMaxIterations()) {
+            iterations++;
+            converged = true;
+            for (int m = start; m < end; m++) {
+                double old = s[out[m]];
+                produced[m] = compute(m, s);
+                double value = !produced[m] ? Double.NaN
+                        : Double.isNaN(old) ? results[m] : old + damping * (results[m] - old);
+                converged &= Double.isNaN(value) ? Double.isNaN(old) : Math.abs(value - old) <= tolerance;
+                s[out[m]] = value;
+            }
+        }
+        lastIterations = iterations;
+        if (!converged) {
+            unconverged++;
+        }
+
+        for (int m = start; m < end; m++) {
+            if (!produced[m]) {
+                if (outputs[m] != null) {
+                    s[out[m]] = previous[m];
+                }
+            } else if (outputs[m] == null || publish(m, s[out[m]])) {
+                markConsumers(out[m]);
+            }
+        }
+        for (int m = start; m < end; m++) {
+            dirty[m >>> 6] &= ~(1L << m); // Marked by the component's own results, which are final
+        }
+        return iterations * (end - start);
+    }
+
+    /*
+     * Computes one operation into results[n], reading the state but never writing it, so the operations of
+     * a level can be computed concurrently. Returns false when the agent would not publish anything.
+     */
+    private boolean compute(int n, double[] s) {
+        double a = s[first[n]];
+        double b = s[second[n]];
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return false;
+        }
+        double result;
+        switch (ops[n]) {
+            case PLUS -> result = a + b;
+            case MINUS -> result = a - b;
+            case MUL -> result = a * b;
+            case DIV -> {
+                if (b == 0.0) {
+                    return false;
+                }
+                result = a / b;
+            }
+            case POW -> result = Math.pow(a, b);
+            case INC -> result = a + 1;
+            default -> result = custom[n].applyAsDouble(a, b);
+        }
+        results[n] = result;
+        return true;
+    }
+
+    /*
+     * Publishes a computed result, then stores it and marks the consumers of its topic.
+     * A result the output topic's filter drops is not stored either, so its consumers are not recomputed.
+     */
+    private void commit(int n) {
+        double result = results[n];
+        if (outputs[n] != null && !publish(n, result)) {
+            return;
+        }
+        state[out[n]] = result;
+        markConsumers(out[n]);
+    }
+
+    // An intermediate result of a formula that has no value anymore: clears it so the rest of the formula is recomputed
+    private void retract(int n) {
+        if (!Double.isNaN(state[out[n]])) {
+            state[out[n]] = Double.NaN;
+            markConsumers(out[n]);
+        }
+    }
+
+    // Publishes the result of an operation on its output topic; returns false if the topic's filter dropped it
+    private boolean publish(int n, double result) {
+        Message msg = new Message(result);
+        publishing = msg;
+        try {
+            return outputs[n].publish(msg);
+        } finally {
+            publishing = null;
+        }
+    }
+
+    /*
+     * Level-parallel pass: for each level, gathers its dirty operations, computes them (in parallel when
+     * there are enough of them), then commits the results on this thread in plan order. Committing
+     * sequentially keeps state writes, dirty marking and publishing single-threaded and in the same
+     * order as a sequential pass, so both give identical results.
+     */
+    private void runLevels(int fromWord) {
+        double[] s = state;
+        long[] d = dirty;
+        int touched = 0;
+        int from = fromWord << 6;
+        for (int l = 0; l < levelStart.length - 1; l++) {
+            int lo = levelStart[l];
+            int hi = levelStart[l + 1];
+            if (hi <= from) {
+                continue;
+            }
+            // Collect and clear the dirty bits of this level
+            int count = 0;
+            for (int n = lo; n < hi; n++) {
+                long word = d[n >>> 6];
+                if (word == 0) {
+                    n |= 63; // Skip to the end of this all-clean word
+                } else if ((word & (1L << n)) != 0) {
+                    d[n >>> 6] = word & ~(1L << n);
+                    work[count++] = n;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            touched += count;
+            if (count < PARALLEL_THRESHOLD) {
+                for (int k = 0; k < count; k++) {
+                    produced[work[k]] = compute(work[k], s);
+                }
+            } else {
+                int grain = Math.max(MIN_GRAIN, count / (pool.getParallelism() * 4));
+                pool.invoke(new LevelTask(0, count, grain));
+            }
+            for (int k = 0; k < count; k++) {
+                if (produced[work[k]]) {
+                    commit(work[k]);
+                } else if (outputs[work[k]] == null) {
+                    retract(work[k]);
+                }
+            }
+        }
+        lastTouched = touched;
+        totalTouched += touched;
+        updates++;
+    }
+
+    /*
+     * Computes a range of the current level's work list. Splits in halves down to the grain, which is sized
+     * from the level width and the pool parallelism, and stops splitting early when this worker already has
+     * surplus queued tasks that idle workers could steal.
+     */
+    private final class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final int grain;
+
+        LevelTask(int lo, int hi, int grain) {
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= grain || getSurplusQueuedTaskCount() > 3) {
+                double[] s = state;
+                for (int k = lo; k < hi; k++) {
+                    int n = work[k];
+                    produced[n] = EvaluationPlan.this.compute(n, s);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new LevelTask(lo, mid, grain), new LevelTask(mid, hi, grain));
+        }
+    }
+
+    /**
+     * Evaluates wide levels in parallel on a pool, or sequentially again.
+     * Results are identical either way; only the computation of each level is spread over the pool's workers,
+     * while publishing the results stays on the publishing thread.
+     *
+     * @param pool the pool to compute levels on, or null for sequential passes
+     */
+    public synchronized void setPool(ForkJoinPool pool) {
+        if (pool != null && cycleEnd != null) {
+            throw new IllegalStateException("A plan with cycles is evaluated sequentially");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Generates a class evaluating this plan as straight-line code and runs sequential passes through it.
+     * Results and published messages are identical to the interpreted passes; a pool set with setPool
+     * still takes precedence.
+     *
+     * @return whether the kernel could be generated; if not, passes stay interpreted
+     */
+    public synchronized boolean generateKernel() {
+        if (cycleEnd != null) {
+            System.err.println("Could not generate an evaluator for a plan with cycles, interpreting it");
+            return false;
+        }
+        try {
+            KernelGenerator generator = new KernelGenerator(this);
+            kernel = generator.generate();
+            kernelMethodSize = generator.getLargestChunk();
+            return true;
+        } catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+            System.err.println("Could not generate an evaluator, interpreting the plan: " + e);
+            return false;
+        }
+    }
+
+    /**
+     * @return whether sequential passes run through a generated kernel
+     */
+    public synchronized boolean hasKernel() {
+        return kernel != null;
+    }
+
+    /**
+     * @return the code length in bytes of the largest method of the generated kernel, which the JIT only
+     *         compiles below 8000 bytes; 0 if no kernel was generated
+     */
+    public synchronized int getKernelMethodSize() {
+        return kernel == null ? 0 : kernelMethodSize;
+    }
+
+    /**
+     * Switches between eager passes on every publish and lazy evaluation on reads. In lazy mode the plan's
+     * output topics recompute their value when read (Topic.getLastMessage and getLastMessageObject), so
+     * inputs changing much more often than outputs are read cost little more than marking operations dirty.
+     * Leaving lazy mode brings every topic up to date at once.
+     *
+     * @param lazy whether to evaluate lazily
+     */
+    public synchronized void setLazy(boolean lazy) {
+        if (lazy == this.lazy) {
+            return;
+        }
+        if (lazy && cycleEnd != null) {
+            throw new IllegalStateException("A plan with cycles cannot be evaluated lazily");
+        }
+        if (lazy && producerStart == null) {
+            indexProducers();
+            stack = new int[Math.max(2 * ops.length, 1) + 1];
+            pulled = new int[ops.length];
+        }
+        this.lazy = lazy;
+        setReadHooks(lazy);
+        if (!lazy) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return whether outputs are computed when read rather than when inputs are published
+     */
+    public synchronized boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Recomputes every dirty operation now, so that all topics are up to date; does nothing in eager mode,
+     * where passes leave nothing dirty.
+     */
+    public synchronized void refresh() {
+        if (evaluating || Arrays.stream(dirty).allMatch(w -> w == 0)) {
+            return;
+        }
+        evaluating = true;
+        try {
+            run(0);
+        } finally {
+            evaluating = false;
+        }
+    }
+
+    /**
+     * Detaches the plan from the reads of its output topics, so a lazy plan that was shut down is not
+     * evaluated anymore.
+     */
+    public synchronized void close() {
+        setReadHooks(false);
+    }
+
+    // Installs or removes the read hook of every output topic
+    private void setReadHooks(boolean install) {
+        for (Topic topic : outputs) {
+            if (topic != null) {
+                int id = topic.id;
+                topic.setReadHook(install ? () -> pull(id) : null);
+            }
+        }
+    }
+
+    // Builds the per-slot producer lists, in the same compressed form as the consumer lists
+    private void indexProducers() {
+        producerStart = new int[state.length + 1];
+        for (int n = 0; n < ops.length; n++) {
+            producerStart[out[n] + 1]++;
+        }
+        for (int t = 0; t < state.length; t++) {
+            producerStart[t + 1] += producerStart[t];
+        }
+        producers = new int[ops.length];
+        int[] fill = producerStart.clone();
+        for (int n = 0; n < ops.length; n++) {
+            producers[fill[out[n]]++] = n;
+        }
+    }
+
+    /**
+     * @return the number of topological levels; operations of a level can be computed in parallel
+     */
+    public int getLevelCount() {
+        return levelStart.length - 1;
+    }
+
+    /**
+     * @return whether the plan solves feedback loops by iteration
+     */
+    public boolean hasCycles() {
+        return cycleEnd != null;
+    }
+
+    /**
+     * @return the number of iterations the most recent solve of a feedback loop took
+     */
+    public int getLastIterationCount() {
+        return lastIterations;
+    }
+
+    /**
+     * @return the number of solves that stopped at the iteration cap without converging
+     */
+    public synchronized long getUnconvergedCount() {
+        return unconverged;
+    }
+
+    /**
+     * @return the number of operations in the plan
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * @return the number of operations the most recent publish recomputed
+     */
+    public int getLastTouchedCount() {
+        return lastTouched;
+    }
+
+    /**
+     * @return the number of operations recomputed by all publishes so far
+     */
+    public synchronized long getTotalTouchedCount() {
+        return totalTouched;
+    }
+
+    /**
+     * @return the number of publishes that recomputed part of the plan
+     */
+    public synchronized long getUpdateCount() {
+        return updates;
+    }
+
+    /*
+     * A generated evaluator. run recomputes the dirty operations of one bit set word, in plan order, exactly
+     * as run(int) would, and returns how many it touched.
+     */
+    interface Kernel {
+        int run(int word, double[] state, long[] dirty, Sink sink);
+    }
+
+    // What a generated kernel calls back into the plan for
+    interface Sink {
+        boolean publish(int n, double result);
+
+        void mark(int topicId);
+
+        void retract(int n);
+
+        double custom(int n, double a, double b);
+    }
+
+    private final class PlanSink implements Sink {
+        @Override
+        public boolean publish(int n, double result) {
+            return EvaluationPlan.this.publish(n, result);
+        }
+
+        @Override
+        public void mark(int topicId) {
+            markConsumers(topicId);
+        }
+
+        @Override
+        public void retract(int n) {
+            EvaluationPlan.this.retract(n);
+        }
+
+        @Override
+        public double custom(int n, double a, double b) {
+            return EvaluationPlan.this.custom[n].applyAsDouble(a, b);
+        }
+    }
+
+    /*
+     * Stands in for a compiled agent in the topics' subscriber lists: forwards every message to the plan
+     * and exposes the agent's name, so the deployed graph looks the same as in the other modes.
+     */
+    public static final class PlannedAgent implements Agent {
+        private final EvaluationPlan plan;
+        private final ComputeAgent agent;
+
+        PlannedAgent(EvaluationPlan plan, ComputeAgent agent) {
+            this.plan = plan;
+            this.agent = agent;
+        }
+
+        @Override
+        public String getName() {
+            return agent.getName();
+        }
+
+        @Override
+        public void reset() {
+            agent.reset();
+        }
+
+        @Override
+        public void callback(String topic, Message msg) {
+            callback(TopicManagerSingleton.get().getTopic(topic).id, msg);
+        }
+
+        @Override
+        public void callback(int topicId, Message msg) {
+            if (msg != plan.publishing) {
+                plan.accept(topicId, msg);
+            }
+        }
+
+        @Override
+        public void callbackAll(int[] topicIds, Message[] msgs) {
+            plan.acceptAll(topicIds, msgs);
+        }
+
+        @Override
+        public void close() {
+            agent.close();
+        }
+
+        public Agent getAgent() {
+            return agent;
+        }
+    }
+}
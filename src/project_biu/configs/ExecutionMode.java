@@ -0,0 +1,43 @@
+package project_biu.configs;
+
+/*
+ * Selects how the agents of a configuration are run.
+ *
+ * Modes:
+ * - THREAD: every agent owns a dedicated platform thread draining its ring-buffer inbox (see AgentInbox) and
+ *           waiting for messages under the agent's IdleStrategy, parking by default (the original model).
+ * - VIRTUAL: same worker loop as THREAD, but on a JDK virtual thread; a blocked agent costs a few
+ *            kilobytes of heap-allocated stack instead of a megabyte-sized native thread stack.
+ * - POOLED: agents are lightweight actors; their mailboxes are drained by a shared work-stealing pool
+ *           sized to the number of cores, so thousands of agents do not mean thousands of threads.
+ * - COMPILED: no ParallelAgent at all; the whole configuration is compiled into an EvaluationPlan that a
+ *             publish runs synchronously, in topological order, on the publishing thread. Only acyclic
+ *             configurations of the built-in arithmetic agents compile; others fall back to POOLED.
+ * - PARALLEL: COMPILED, but wide topological levels are computed in parallel on the common ForkJoinPool;
+ *             pays off for configurations with hundreds of independent agents at each depth.
+ * - BYTECODE: COMPILED, but the plan is also translated into a generated class evaluating it as straight-line
+ *             code, so the JIT compiles the whole graph's arithmetic without any dispatch between agents.
+ * - LAZY: COMPILED, but publishing only marks the downstream operations stale; an output topic is computed
+ *         when it is read, reusing every result that is still current. Suits inputs changing far more often
+ *         than outputs are looked at. Subscribers of an output hear about a new value only once it is read.
+ * - FIXED_POINT: COMPILED, but configurations with feedback loops compile too. Each loop is recomputed until
+ *                its values converge (see FixedPoint) and published once, instead of agents publishing to each
+ *                other around the loop without end; the acyclic parts are computed once per publish as usual.
+ */
+public enum ExecutionMode {
+    THREAD,
+    VIRTUAL,
+    POOLED,
+    COMPILED,
+    PARALLEL,
+    BYTECODE,
+    LAZY,
+    FIXED_POINT;
+
+    /**
+     * @return whether this mode compiles the whole configuration into an EvaluationPlan
+     */
+    public boolean isCompiled() {
+        return this == COMPILED || this == PARALLEL || this == BYTECODE || this == LAZY || this == FIXED_POINT;
+    }
+}
@@ -1,7 +1,8 @@
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
 /*
@@ -17,16 +18,21 @@ import project_biu.graph.TopicManagerSingleton;
  *   outputTopicName - Target for publishing the computed result
  *   firstInputVal   - Latest value received from the base topic
  *   secondInputVal  - Latest value received from the exponent topic
+ *   memo            - Cache of computed powers, when memoized (see Memoizable)
  *   counter         - Static counter for naming instances uniquely
  */
-public class ExponnentAgent implements Agent {
+public class ExponnentAgent implements ComputeAgent, Memoizable {
 
     String name;
     String firstTopicName;
-    private Double firstInputVal;
+    private double firstInputVal;
     String secondTopicName;
-    private Double secondInputVal;
+    private double secondInputVal;
     String outputTopicName;
+    int firstTopicId;
+    int secondTopicId;
+    Topic outputTopic;
+    MemoCache memo = null;
     static int counter = 1;
 
     /**
@@ -48,11 +54,16 @@ public class ExponnentAgent implements Agent {
         counter++;
 
         // Register for incoming data
-        TopicManagerSingleton.get().getTopic(firstTopicName).subscribe(this);
-        TopicManagerSingleton.get().getTopic(secondTopicName).subscribe(this);
+        Topic firstTopic = TopicManagerSingleton.get().getTopic(firstTopicName);
+        Topic secondTopic = TopicManagerSingleton.get().getTopic(secondTopicName);
+        this.firstTopicId = firstTopic.id;
+        this.secondTopicId = secondTopic.id;
+        firstTopic.subscribe(this);
+        secondTopic.subscribe(this);
 
         // Register as publisher for the result
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     @Override
@@ -74,21 +85,59 @@ public class ExponnentAgent implements Agent {
      */
     @Override
     public void callback(String topic, Message msg) {
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    @Override
+    public void update(String topic, double value) {
         // Store incoming values based on source topic
         if (topic.equals(firstTopicName)) {
-            firstInputVal = msg.asDouble;
+            firstInputVal = value;
         }
         if (topic.equals(secondTopicName)) {
-            secondInputVal = msg.asDouble;
+            secondInputVal = value;
         }
+    }
 
+    // Compares resolved IDs instead of topic names
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId == firstTopicId) {
+            firstInputVal = value;
+        }
+        if (topicId == secondTopicId) {
+            secondInputVal = value;
+        }
+    }
+
+    @Override
+    public void evaluate() {
         // If both inputs are available, compute and publish result
         if (!Double.isNaN(firstInputVal) && !Double.isNaN(secondInputVal)) {
-            double outputVal = Math.pow(firstInputVal, secondInputVal);
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            double outputVal = memo != null ? memo.applyAsDouble(firstInputVal, secondInputVal)
+                    : Math.pow(firstInputVal, secondInputVal);
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
+    @Override
+    public void memoize(int capacity) {
+        this.memo = new MemoCache(Operators.POW, capacity);
+    }
+
+    @Override
+    public MemoCache getMemoCache() {
+        return memo;
+    }
+
     @Override
     public void close() {
         // Optional: clean-up logic goes here
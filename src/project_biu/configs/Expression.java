@@ -0,0 +1,283 @@
+package project_biu.configs;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/*
+ * An arithmetic formula over input topics, as used by ExpressionAgent: "out = (A*B + C) / D".
+ *
+ * Grammar (usual precedence, ^ binds tightest and is right associative):
+ *   definition := name '=' expr
+ *   expr       := term (('+' | '-') term)*
+ *   term       := factor (('*' | '/') factor)*
+ *   factor     := '-' factor | primary ('^' factor)?
+ *   primary    := number | name | '(' expr ')'
+ *
+ * The formula is parsed once into a tree of Terms: numbers, variables (an index into the agent's inputs)
+ * and binary operations. Negation is represented as multiplication by -1, constant subtrees are folded
+ * while parsing, and the root is always a binary operation (a bare variable becomes v + 0), so the tree
+ * maps one to one onto the plan's binary operations.
+ *
+ * Like a chain of arithmetic agents, an operation has no value while one of its operands has none (NaN),
+ * and dividing by zero gives no value.
+ */
+public final class Expression {
+
+    sealed interface Term permits Num, Var, Bin {}
+
+    record Num(double value) implements Term {}
+
+    record Var(int index, String name) implements Term {}
+
+    record Bin(char op, Term left, Term right) implements Term {}
+
+    final String output;   // Output topic name
+    final String source;   // The formula as written, right of '='
+    final Bin root;
+
+    private final String text;
+    private final List<String> inputs;
+    private int pos = 0;
+
+    private Expression(String text, List<String> inputs) {
+        this.text = text;
+        this.inputs = inputs;
+        int eq = text.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Formula must have the form out = expression: " + text);
+        }
+        this.output = text.substring(0, eq).trim();
+        if (output.isEmpty() || !isName(output)) {
+            throw new IllegalArgumentException("Invalid output topic in formula: " + text);
+        }
+        this.source = text.substring(eq + 1).trim();
+        this.pos = eq + 1;
+        Term tree = expr();
+        skipSpaces();
+        if (pos < text.length()) {
+            throw error("Unexpected '" + text.charAt(pos) + "'");
+        }
+        switch (tree) {
+            case Bin b -> this.root = b;
+            case Var v -> this.root = new Bin('+', v, new Num(0));
+            case Num n -> throw new IllegalArgumentException("Formula reads no input: " + text);
+        }
+    }
+
+    /**
+     * Parses a formula.
+     *
+     * @param definition the formula, "output = expression"
+     * @param inputs the input topic names the expression may refer to; a variable's index is its position here
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the formula is malformed or refers to a topic that is not an input
+     */
+    public static Expression parse(String definition, List<String> inputs) {
+        return new Expression(definition, inputs);
+    }
+
+    private Term expr() {
+        Term t = term();
+        for (char c = peek(); c == '+' || c == '-'; c = peek()) {
+            pos++;
+            t = bin(c, t, term());
+        }
+        return t;
+    }
+
+    private Term term() {
+        Term t = factor();
+        for (char c = peek(); c == '*' || c == '/'; c = peek()) {
+            pos++;
+            t = bin(c, t, factor());
+        }
+        return t;
+    }
+
+    private Term factor() {
+        if (peek() == '-') {
+            pos++;
+            return bin('*', new Num(-1), factor());
+        }
+        Term base = primary();
+        if (peek() == '^') {
+            pos++;
+            return bin('^', base, factor());
+        }
+        return base;
+    }
+
+    private Term primary() {
+        char c = peek();
+        if (c == '(') {
+            pos++;
+            Term t = expr();
+            if (peek() != ')') {
+                throw error("Missing ')'");
+            }
+            pos++;
+            return t;
+        }
+        int start = pos;
+        if (Character.isDigit(c) || c == '.') {
+            while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+                pos++;
+            }
+            if (pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+                pos++;
+                if (pos < text.length() && (text.charAt(pos) == '+' || text.charAt(pos) == '-')) {
+                    pos++;
+                }
+                while (pos < text.length() && Character.isDigit(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+            try {
+                return new Num(Double.parseDouble(text.substring(start, pos)));
+            } catch (NumberFormatException e) {
+                throw error("Invalid number '" + text.substring(start, pos) + "'");
+            }
+        }
+        if (Character.isLetter(c) || c == '_') {
+            while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_')) {
+                pos++;
+            }
+            String name = text.substring(start, pos);
+            int index = inputs.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Formula refers to " + name + ", which is not an input: " + text);
+            }
+            return new Var(index, name);
+        }
+        throw error(c == 0 ? "Unexpected end" : "Unexpected '" + c + "'");
+    }
+
+    // A binary operation, folded into a number when both operands are numbers and the result has a value
+    private static Term bin(char op, Term left, Term right) {
+        if (left instanceof Num l && right instanceof Num r) {
+            double v = apply(op, l.value(), r.value());
+            if (!Double.isNaN(v)) {
+                return new Num(v);
+            }
+        }
+        return new Bin(op, left, right);
+    }
+
+    // Next non-space character, or 0 at the end
+    private char peek() {
+        skipSpaces();
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " of formula: " + text);
+    }
+
+    private static boolean isName(String s) {
+        return s.chars().noneMatch(c -> Character.isWhitespace(c) || "+-*/^()=,".indexOf(c) >= 0);
+    }
+
+    /**
+     * Applies a binary operator the way the arithmetic agents do.
+     *
+     * @return the result, or NaN if an operand is NaN or b is a zero divisor
+     */
+    static double apply(char op, double a, double b) {
+        if (Double.isNaN(a) || Double.isNaN(b)) {
+            return Double.NaN;
+        }
+        return switch (op) {
+            case '+' -> a + b;
+            case '-' -> a - b;
+            case '*' -> a * b;
+            case '/' -> b == 0.0 ? Double.NaN : a / b;
+            default -> Math.pow(a, b);
+        };
+    }
+
+    /*
+     * Compiles a term into a tree of lambdas over the input values, each node specialized for its operator
+     * so evaluating needs no dispatch on the tree's shape. Returns NaN when the term has no value.
+     */
+    static ToDoubleFunction<double[]> compile(Term term) {
+        return switch (term) {
+            case Num n -> {
+                double v = n.value();
+                yield values -> v;
+            }
+            case Var v -> {
+                int i = v.index();
+                yield values -> values[i];
+            }
+            case Bin b -> {
+                ToDoubleFunction<double[]> l = compile(b.left());
+                ToDoubleFunction<double[]> r = compile(b.right());
+                yield switch (b.op()) {
+                    case '+' -> values -> l.applyAsDouble(values) + r.applyAsDouble(values);
+                    case '-' -> values -> l.applyAsDouble(values) - r.applyAsDouble(values);
+                    case '*' -> values -> l.applyAsDouble(values) * r.applyAsDouble(values);
+                    case '/' -> values -> {
+                        double d = r.applyAsDouble(values);
+                        return d == 0.0 ? Double.NaN : l.applyAsDouble(values) / d;
+                    };
+                    default -> values -> apply('^', l.applyAsDouble(values), r.applyAsDouble(values));
+                };
+            }
+        };
+    }
+
+    /**
+     * Computes the formula once, without compiling it.
+     *
+     * @param values the value of each input
+     * @return the result, or NaN if the formula has no value for these inputs
+     */
+    double evaluate(double[] values) {
+        return value(root, values);
+    }
+
+    private static double value(Term t, double[] values) {
+        return switch (t) {
+            case Num n -> n.value();
+            case Var v -> values[v.index()];
+            case Bin b -> apply(b.op(), value(b.left(), values), value(b.right(), values));
+        };
+    }
+
+    /**
+     * @return the number of binary operations in the expression
+     */
+    int operationCount() {
+        return count(root);
+    }
+
+    private static int count(Term t) {
+        return t instanceof Bin b ? 1 + count(b.left()) + count(b.right()) : 0;
+    }
+
+    /**
+     * @return the number of constants in the expression
+     */
+    int constantCount() {
+        return constants(root);
+    }
+
+    private static int constants(Term t) {
+        return switch (t) {
+            case Num n -> 1;
+            case Var v -> 0;
+            case Bin b -> constants(b.left()) + constants(b.right());
+        };
+    }
+
+    @Override
+    public String toString() {
+        return output + " = " + source;
+    }
+}
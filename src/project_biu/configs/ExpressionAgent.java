@@ -0,0 +1,143 @@
+package project_biu.configs;
+
+import project_biu.graph.ComputeAgent;
+import project_biu.graph.Message;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * ExpressionAgent computes a whole formula over its input topics, such as "out = (A*B + C) / D",
+ * where a chain of arithmetic agents would need one agent and one intermediate topic per operation.
+ *
+ * In a configuration file the subscriptions line lists the input topics and the publications line holds
+ * the formula, whose left side names the output topic:
+ * <pre>
+ * project_biu.configs.ExpressionAgent
+ * A,B,C,D
+ * out = (A*B + C) / D
+ * </pre>
+ * The formula is parsed once, when the agent is created, and compiled into an evaluator (see Expression).
+ * Nothing is published while an input is missing or when the formula divides by zero, like the agents it replaces.
+ */
+public class ExpressionAgent implements ComputeAgent {
+    String name; // Unique name of this agent instance
+    String[] inputTopicNames; // Input topics, in the order of the values array
+    int[] inputTopicIds; // TopicManager IDs of the input topics
+    private final double[] values; // Latest value of each input, NaN until received
+    String outputTopicName; // Topic name where the result is published
+    Topic outputTopic; // Output topic, resolved once so publishing needs no lookup
+    final Expression expression; // The parsed formula
+    private final ToDoubleFunction<double[]> left; // Compiled operands of the formula's last operation
+    private final ToDoubleFunction<double[]> right;
+    static int counter = 1; // Counter to generate unique agent names
+
+    /**
+     * Constructor parses the formula and sets up input/output topics.
+     *
+     * @param subs The input topic names
+     * @param pubs The formula "output = expression"; split on commas by the configuration loader and joined back here
+     * @throws IllegalArgumentException if the formula is malformed or reads a topic that is not listed in subs
+     */
+    public ExpressionAgent(String[] subs, String[] pubs) {
+        this.inputTopicNames = Arrays.stream(subs).map(String::trim).toArray(String[]::new);
+        this.expression = Expression.parse(String.join(",", pubs), Arrays.asList(inputTopicNames));
+        this.left = Expression.compile(expression.root.left());
+        this.right = Expression.compile(expression.root.right());
+        this.outputTopicName = expression.output;
+        this.values = new double[inputTopicNames.length];
+        Arrays.fill(values, Double.NaN);
+
+        this.name = "ExpressionAgent " + counter;
+        counter++;
+
+        // Subscribe to every input topic
+        this.inputTopicIds = new int[inputTopicNames.length];
+        for (int i = 0; i < inputTopicNames.length; i++) {
+            Topic input = TopicManagerSingleton.get().getTopic(inputTopicNames[i]);
+            inputTopicIds[i] = input.id;
+            input.subscribe(this);
+        }
+
+        // Declare intent to publish on output topic
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(values, Double.NaN);
+    }
+
+    // Records the new input value and recomputes the formula
+    @Override
+    public void callback(String topic, Message msg) {
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    // Stores the value of every input read from this topic
+    @Override
+    public void update(String topic, double value) {
+        for (int i = 0; i < inputTopicNames.length; i++) {
+            if (inputTopicNames[i].equals(topic)) {
+                values[i] = value;
+            }
+        }
+    }
+
+    @Override
+    public void update(int topicId, double value) {
+        for (int i = 0; i < inputTopicIds.length; i++) {
+            if (inputTopicIds[i] == topicId) {
+                values[i] = value;
+            }
+        }
+    }
+
+    /*
+     * Evaluates both operands of the formula's last operation, then applies it unless one of them has no value.
+     * The last operation itself may yield NaN (e.g. Infinity - Infinity), which is published like the
+     * arithmetic agents would.
+     */
+    @Override
+    public void evaluate() {
+        double a = left.applyAsDouble(values);
+        double b = right.applyAsDouble(values);
+        char op = expression.root.op();
+        if (Double.isNaN(a) || Double.isNaN(b) || (op == '/' && b == 0.0)) {
+            return;
+        }
+        outputTopic.publish(new Message(Expression.apply(op, a, b)));
+    }
+
+    @Override
+    public void close() {}
+
+    // Getters for the formula and topic names
+    public String getFormula() {
+        return expression.toString();
+    }
+
+    public String[] getInputTopicNames() {
+        return inputTopicNames.clone();
+    }
+
+    public String getOutputTopicName() {
+        return outputTopicName;
+    }
+}
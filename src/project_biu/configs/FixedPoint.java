@@ -0,0 +1,68 @@
+package project_biu.configs;
+
+import java.util.Map;
+
+/**
+ * How an EvaluationPlan solves the feedback loops of a configuration in FIXED_POINT mode: each loop is
+ * recomputed until no value moves by more than the tolerance, or until the iteration cap is reached.
+ * With a damping factor d below 1, a value only moves d of the way to its recomputed value per iteration,
+ * which makes loops that overshoot or oscillate settle, at the price of more iterations.
+ */
+public final class FixedPoint {
+
+    public static final FixedPoint DEFAULT = new FixedPoint(1e-9, 1000, 1.0);
+
+    private final double tolerance;
+    private final int maxIterations;
+    private final double damping;
+
+    /**
+     * @param tolerance the largest change of any value of a loop for it to count as converged
+     * @param maxIterations the most times a loop is recomputed per publish
+     * @param damping the fraction of the way a value moves to its recomputed value, in (0, 1]; 1 for none
+     * @throws IllegalArgumentException if a setting is out of range
+     */
+    public FixedPoint(double tolerance, int maxIterations, double damping) {
+        if (!(tolerance >= 0) || maxIterations < 1 || !(damping > 0 && damping <= 1)) {
+            throw new IllegalArgumentException("Fixed point needs a tolerance >= 0, at least one iteration and a damping in (0, 1]");
+        }
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        this.damping = damping;
+    }
+
+    /**
+     * Creates the settings described by options: tolerance, iterations and damping, each defaulting to DEFAULT's.
+     *
+     * @param options the options, by lower-case key
+     * @return the settings
+     * @throws IllegalArgumentException if an option value is invalid
+     */
+    public static FixedPoint fromOptions(Map<String, String> options) {
+        String tolerance = options.get("tolerance");
+        String iterations = options.get("iterations");
+        String damping = options.get("damping");
+        return new FixedPoint(
+                tolerance == null ? DEFAULT.tolerance : Double.parseDouble(tolerance),
+                iterations == null ? DEFAULT.maxIterations : Integer.parseInt(iterations.trim()),
+                damping == null ? DEFAULT.damping : Double.parseDouble(damping));
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public double getDamping() {
+        return damping;
+    }
+
+    @Override
+    public String toString() {
+        return "tolerance " + tolerance + ", at most " + maxIterations + " iterations"
+                + (damping < 1 ? ", damping " + damping : "");
+    }
+}
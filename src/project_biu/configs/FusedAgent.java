@@ -0,0 +1,52 @@
+package project_biu.configs;
+
+import project_biu.graph.Agent;
+import project_biu.graph.Message;
+
+/*
+ * Subscribes an agent that was fused into the chain of the agent producing its inputs: messages are handed
+ * to it synchronously, on the thread of that producer's worker, instead of going through an inbox and a
+ * worker of its own. The intermediate topic is still published, so its last value stays readable and
+ * the agent still appears in the deployed graph under its own name.
+ */
+public final class FusedAgent implements Agent {
+    private final Agent agent;
+
+    FusedAgent(Agent agent) {
+        this.agent = agent;
+    }
+
+    @Override
+    public String getName() {
+        return agent.getName();
+    }
+
+    @Override
+    public void reset() {
+        agent.reset();
+    }
+
+    @Override
+    public void callback(String topic, Message msg) {
+        agent.callback(topic, msg);
+    }
+
+    @Override
+    public void callback(int topicId, Message msg) {
+        agent.callback(topicId, msg);
+    }
+
+    @Override
+    public void callbackAll(int[] topicIds, Message[] msgs) {
+        agent.callbackAll(topicIds, msgs);
+    }
+
+    @Override
+    public void close() {
+        agent.close();
+    }
+
+    public Agent getAgent() {
+        return agent;
+    }
+}
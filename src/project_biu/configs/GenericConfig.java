@@ -5,10 +5,22 @@ import java.lang.reflect.Constructor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 import project_biu.graph.Agent;
+import project_biu.graph.Message;
+import project_biu.graph.OutputFilter;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
 
 /*
  * GenericConfig:
@@ -19,11 +31,33 @@ import project_biu.graph.Agent;
  * - Parse and validate configuration blocks (3 lines each)
  * - Instantiate agents by class name using reflection
  * - Maintain a list of agents and provide cleanup through close()
+ * - Run every agent behind a ParallelAgent in the selected ExecutionMode, or compile them into an EvaluationPlan
+ * - Optionally rewrite the parsed blocks with a ConfigOptimizer before instantiating anything
+ * - Fuse linear chains: an agent whose inputs are all published by one other agent, and read by nobody else,
+ *   runs synchronously on that agent's worker (see FusedAgent) instead of behind a ParallelAgent of its own
+ *
+ * The class-name line of a block may carry per-agent options after the class name,
+ * as whitespace-separated key=value pairs, e.g. "project_biu.configs.PlusAgent inbox=conflate".
+ * Supported options:
+ * - inbox: backpressure policy of the agent's inbox (block, conflate or drop_oldest)
+ * - idle: idle strategy of the agent's worker thread (busy_spin, spin_yield, backoff or block)
+ * - filter, epsilon, throttle: an OutputFilter on the agent's output topics, dropping values that changed by
+ *   no more than epsilon (filter=exact, abs or rel) or that follow the last delivered one by less than
+ *   throttle milliseconds; in every execution mode, a dropped value does not reach the agents downstream
+ * - memo: the number of input pairs a Memoizable agent caches the result of (see MemoCache)
  */
 public class GenericConfig implements Config {
 
     String configFileName;
     private List<Agent> agents = new ArrayList<>();
+    private ExecutionMode executionMode = ExecutionMode.THREAD;
+    private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+    private Supplier<IdleStrategy> idleStrategy = IdleStrategy.Block::new;
+    private FixedPoint fixedPoint = FixedPoint.DEFAULT;
+    private EvaluationPlan plan = null;
+    private ConfigOptimizer optimizer = null;
+    private boolean fusion = false;
+    private final Map<String, OutputFilter> filters = new LinkedHashMap<>();
 
     /**
      * Assigns the configuration file name to be used when loading agents.
@@ -34,6 +68,74 @@ public class GenericConfig implements Config {
         this.configFileName = confFile;
     }
 
+    /**
+     * Selects how the agents of this configuration are executed.
+     * Must be called before create(); THREAD is used by default.
+     *
+     * @param mode the execution mode for every agent created by this configuration
+     */
+    public void setExecutionMode(ExecutionMode mode) {
+        this.executionMode = mode;
+    }
+
+    /**
+     * @return the execution mode used when agents are created
+     */
+    public ExecutionMode getExecutionMode() {
+        return this.executionMode;
+    }
+
+    /**
+     * Selects the backpressure policy for agents whose block does not set the inbox option.
+     * Must be called before create(); BLOCK is used by default.
+     *
+     * @param policy the default inbox policy
+     */
+    public void setBackpressurePolicy(BackpressurePolicy policy) {
+        this.backpressurePolicy = policy;
+    }
+
+    /**
+     * Selects the idle strategy for agents whose block does not set the idle option,
+     * choosing between low latency (busy spinning) and low CPU (blocking).
+     * Must be called before create(); blocking is used by default.
+     *
+     * @param idleStrategy creates one strategy instance per agent worker
+     */
+    public void setIdleStrategy(Supplier<IdleStrategy> idleStrategy) {
+        this.idleStrategy = idleStrategy;
+    }
+
+    /**
+     * Selects how feedback loops are solved in FIXED_POINT mode.
+     * Must be called before create(); FixedPoint.DEFAULT is used by default.
+     *
+     * @param fixedPoint the tolerance, iteration cap and damping of the loops
+     */
+    public void setFixedPoint(FixedPoint fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Runs an optimizer over the parsed blocks before agents are instantiated, and publishes the constants it
+     * found once they are deployed. Must be called before create(); no optimization is done by default.
+     *
+     * @param optimizer the optimizer, whose report is available after create(); null to disable
+     */
+    public void setOptimizer(ConfigOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Enables or disables the fusion of single-consumer chains in the THREAD, VIRTUAL and POOLED modes.
+     * Must be called before create(); disabled by default, so every agent keeps its own worker.
+     *
+     * @param fusion whether agents fed by a single producer run on that producer's worker
+     */
+    public void setFusion(boolean fusion) {
+        this.fusion = fusion;
+    }
+
     /**
      * Loads configuration from a file and instantiates agents accordingly.
      * Each agent is defined using a 3-line block: class name, subscriptions, publications.
@@ -55,28 +157,279 @@ public class GenericConfig implements Config {
             throw new Exception("Invalid configuration format. File must be in 3-line blocks.");
         }
 
-        // Iterate over config blocks
+        // Parse the config blocks
+        List<ConfigOptimizer.Block> blocks = new ArrayList<>();
         for (int i = 0; i < lines.size(); i += 3) {
             try {
-                String className = lines.get(i);
-                String[] subs = lines.get(i + 1).split(",");
-                String[] pubs = lines.get(i + 2).split(",");
+                String[] header = lines.get(i).trim().split("\\s+");
+                blocks.add(new ConfigOptimizer.Block(lines.get(i), header[0], parseOptions(header),
+                        lines.get(i + 1).split(","), lines.get(i + 2).split(",")));
+            } catch (Exception e) {
+                throw new Exception("Failed to create agent for: " + lines.get(i));
+            }
+        }
+        if (optimizer != null) {
+            blocks = optimizer.optimize(blocks);
+        }
+        checkInboxPolicies(blocks);
+        checkIdleStrategies(blocks);
+
+        // Agents as instantiated, with the subscriptions and options of their blocks
+        List<Agent> created = new ArrayList<>();
+        List<String[]> createdSubs = new ArrayList<>();
+        List<Map<String, String>> createdOptions = new ArrayList<>();
 
+        for (ConfigOptimizer.Block block : blocks) {
+            try {
                 // Load class dynamically
-                Class<?> agentClass = Class.forName(className);
+                Class<?> agentClass = Class.forName(block.className);
                 Constructor<?> constructor = agentClass.getConstructor(String[].class, String[].class);
-                Object agent = constructor.newInstance((Object) subs, (Object) pubs);
+                Object agent = constructor.newInstance((Object) block.subs, (Object) block.pubs);
 
-                // Wrap in a ParallelAgent and track it
-                ParallelAgent p_agent = new ParallelAgent((Agent) agent, 1);
-                this.agents.add(p_agent);
+                created.add((Agent) agent);
+                createdSubs.add(block.subs);
+                createdOptions.add(block.options);
 
             } catch (ClassNotFoundException e) {
-                throw new Exception("Class not found: " + lines.get(i));
+                throw new Exception("Class not found: " + block.header);
             } catch (NoSuchMethodException e) {
-                throw new Exception("Missing expected constructor for: " + lines.get(i));
+                throw new Exception("Missing expected constructor for: " + block.header);
             } catch (Exception e) {
-                throw new Exception("Failed to create agent for: " + lines.get(i));
+                throw new Exception("Failed to create agent for: " + block.header);
+            }
+        }
+
+        setFilters(created, blocks);
+        memoize(created, blocks);
+
+        ExecutionMode mode = executionMode;
+        if (mode.isCompiled()) {
+            plan = EvaluationPlan.compile(created, mode == ExecutionMode.FIXED_POINT ? fixedPoint : null);
+            if (plan != null) {
+                if (mode == ExecutionMode.PARALLEL) {
+                    plan.setPool(ForkJoinPool.commonPool());
+                } else if (mode == ExecutionMode.BYTECODE) {
+                    plan.generateKernel();
+                } else if (mode == ExecutionMode.LAZY) {
+                    plan.setLazy(true);
+                }
+                this.agents.addAll(plan.deploy());
+                publishConstants();
+                return;
+            }
+            System.err.println("Configuration has cycles or agents that can't be compiled, running it in POOLED mode");
+            mode = ExecutionMode.POOLED;
+        }
+
+        int[] producers = fusion ? fusionProducers(created, createdSubs, createdOptions) : null;
+        for (int k = 0; k < created.size(); k++) {
+            Agent agent = created.get(k);
+            Map<String, String> options = createdOptions.get(k);
+
+            if (producers != null && producers[k] >= 0) {
+                // Fed by a single agent: take its input straight from that agent's worker
+                FusedAgent fused = new FusedAgent(agent);
+                this.agents.add(fused);
+                for (String sub : createdSubs.get(k)) {
+                    TopicManagerSingleton.get().getTopic(sub).replaceSubscriber(agent, fused);
+                }
+                continue;
+            }
+
+            // Wrap in a ParallelAgent and track it
+            ParallelAgent p_agent = new ParallelAgent(agent, 1, mode, inboxPolicy(options), idleStrategy(options));
+            this.agents.add(p_agent);
+
+            // The agent subscribed itself in its constructor; route its input through the wrapper instead
+            for (String sub : createdSubs.get(k)) {
+                TopicManagerSingleton.get().getTopic(sub).replaceSubscriber(agent, p_agent);
+            }
+        }
+        publishConstants();
+    }
+
+    /*
+     * Finds the agents that can be fused behind the agent producing their inputs: every input topic of the
+     * agent has it as its only subscriber and the same single publisher, the agent sets no options, and it is
+     * not on or between cycles, where running synchronously could call back into a busy producer.
+     * Returns, per agent, the index of that producer, or -1 to give the agent its own worker.
+     */
+    private static int[] fusionProducers(List<Agent> created, List<String[]> createdSubs,
+                                         List<Map<String, String>> createdOptions) {
+        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
+        int n = created.size();
+        Map<Agent, Integer> index = new IdentityHashMap<>();
+        for (int k = 0; k < n; k++) {
+            index.put(created.get(k), k);
+        }
+
+        // Agent graph: producer -> consumer, through every topic
+        List<List<Integer>> next = new ArrayList<>();
+        List<List<Integer>> prev = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            next.add(new ArrayList<>());
+            prev.add(new ArrayList<>());
+        }
+        for (Topic t : tm.getTopics()) {
+            for (Agent pub : t.getPublishers()) {
+                Integer p = index.get(pub);
+                for (Agent sub : t.getSubscribers()) {
+                    Integer c = index.get(sub);
+                    if (p != null && c != null) {
+                        next.get(p).add(c);
+                        prev.get(c).add(p);
+                    }
+                }
+            }
+        }
+        boolean[] cyclic = cyclicRegion(next, prev);
+
+        int[] producers = new int[n];
+        for (int k = 0; k < n; k++) {
+            producers[k] = -1;
+            if (!createdOptions.get(k).isEmpty() || cyclic[k]) {
+                continue;
+            }
+            Agent agent = created.get(k);
+            int producer = -1;
+            for (String sub : createdSubs.get(k)) {
+                Topic t = tm.getTopic(sub);
+                Agent[] pubs = t.getPublishers();
+                Integer p = pubs.length == 1 ? index.get(pubs[0]) : null;
+                boolean onlyReader = Arrays.stream(t.getSubscribers()).allMatch(a -> a == agent);
+                if (p == null || p == k || !onlyReader || (producer >= 0 && producer != p)) {
+                    producer = -1;
+                    break;
+                }
+                producer = p;
+            }
+            producers[k] = producer;
+        }
+        return producers;
+    }
+
+    /*
+     * Marks the agents on a cycle or between two cycles: what remains after repeatedly removing agents without
+     * producers, then agents without consumers.
+     */
+    private static boolean[] cyclicRegion(List<List<Integer>> next, List<List<Integer>> prev) {
+        int n = next.size();
+        boolean[] removed = new boolean[n];
+        for (List<List<Integer>> edges : List.of(prev, next)) {
+            List<List<Integer>> reverse = edges == prev ? next : prev;
+            int[] degree = new int[n];
+            ArrayDeque<Integer> ready = new ArrayDeque<>();
+            for (int k = 0; k < n; k++) {
+                if (!removed[k]) {
+                    for (int e : edges.get(k)) {
+                        if (!removed[e]) {
+                            degree[k]++;
+                        }
+                    }
+                    if (degree[k] == 0) {
+                        ready.add(k);
+                    }
+                }
+            }
+            while (!ready.isEmpty()) {
+                int k = ready.poll();
+                removed[k] = true;
+                for (int r : reverse.get(k)) {
+                    if (!removed[r] && --degree[r] == 0) {
+                        ready.add(r);
+                    }
+                }
+            }
+        }
+        boolean[] cyclic = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            cyclic[k] = !removed[k];
+        }
+        return cyclic;
+    }
+
+    /*
+     * Installs the output filter of every agent whose options set one on each topic the agent publishes.
+     * Done before the agents are compiled or wrapped, so every execution mode sees the filters.
+     */
+    private void setFilters(List<Agent> created, List<ConfigOptimizer.Block> blocks) throws Exception {
+        filters.clear();
+        for (int k = 0; k < created.size(); k++) {
+            Map<String, String> options = blocks.get(k).options;
+            try {
+                if (OutputFilter.fromOptions(options) == null) {
+                    continue;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new Exception("Invalid output filter for: " + blocks.get(k).header + " (" + e.getMessage() + ")");
+            }
+            Agent agent = created.get(k);
+            for (Topic topic : TopicManagerSingleton.get().getTopics()) {
+                if (Arrays.asList(topic.getPublishers()).contains(agent)) {
+                    OutputFilter filter = OutputFilter.fromOptions(options); // One per topic, since filters keep state
+                    topic.setFilter(filter);
+                    filters.put(topic.name, filter);
+                }
+            }
+        }
+    }
+
+    // Rejects an invalid inbox option before any agent is created, subscribed or given a worker
+    private static void checkInboxPolicies(List<ConfigOptimizer.Block> blocks) throws Exception {
+        for (ConfigOptimizer.Block block : blocks) {
+            String inbox = block.options.get("inbox");
+            if (inbox == null) {
+                continue;
+            }
+            try {
+                BackpressurePolicy.valueOf(inbox.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new Exception("Invalid inbox policy for: " + block.header);
+            }
+        }
+    }
+
+    // Rejects an invalid idle option before any agent is created, subscribed or given a worker
+    private static void checkIdleStrategies(List<ConfigOptimizer.Block> blocks) throws Exception {
+        for (ConfigOptimizer.Block block : blocks) {
+            String idle = block.options.get("idle");
+            if (idle == null) {
+                continue;
+            }
+            try {
+                IdleStrategy.forName(idle);
+            } catch (IllegalArgumentException e) {
+                throw new Exception("Invalid idle strategy for: " + block.header);
+            }
+        }
+    }
+
+    // Routes the agents with a memo option through a cache of that capacity
+    private static void memoize(List<Agent> created, List<ConfigOptimizer.Block> blocks) throws Exception {
+        for (int k = 0; k < created.size(); k++) {
+            String memo = blocks.get(k).options.get("memo");
+            if (memo == null) {
+                continue;
+            }
+            if (!(created.get(k) instanceof Memoizable agent)) {
+                throw new Exception("Agent can't be memoized: " + blocks.get(k).header);
+            }
+            try {
+                agent.memoize(Integer.parseInt(memo.trim()));
+            } catch (IllegalArgumentException e) {
+                throw new Exception("Invalid memo capacity for: " + blocks.get(k).header);
+            }
+        }
+    }
+
+    // Publishes the optimizer's constants, so the deployed agents reading them receive their values
+    private void publishConstants() {
+        if (optimizer == null) {
+            return;
+        }
+        for (Map.Entry<String, Double> constant : optimizer.getConstants().entrySet()) {
+            if (!Double.isNaN(constant.getValue())) {
+                TopicManagerSingleton.get().getTopic(constant.getKey()).publish(new Message(constant.getValue()));
             }
         }
     }
@@ -102,11 +455,87 @@ public class GenericConfig implements Config {
      */
     @Override
     public void close() {
+        if (plan != null) {
+            plan.close();
+        }
         for (Agent a : agents) {
             a.close();
         }
     }
 
+    /**
+     * Reads the key=value options following the class name on a block's first line.
+     *
+     * @param header the first line of a block, split on whitespace
+     * @return the options by lower-case key
+     * @throws Exception if an option is not of the form key=value
+     */
+    private Map<String, String> parseOptions(String[] header) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int k = 1; k < header.length; k++) {
+            String[] keyVal = header[k].split("=", 2);
+            if (keyVal.length != 2) {
+                throw new Exception("Invalid agent option: " + header[k]);
+            }
+            options.put(keyVal[0].toLowerCase(), keyVal[1]);
+        }
+        return options;
+    }
+
+    /**
+     * Resolves the inbox policy of an agent from its options, falling back to the configured default.
+     *
+     * @param options the agent's options
+     * @return the backpressure policy to use
+     */
+    private BackpressurePolicy inboxPolicy(Map<String, String> options) {
+        String inbox = options.get("inbox");
+        return inbox == null ? backpressurePolicy : BackpressurePolicy.valueOf(inbox.trim().toUpperCase());
+    }
+
+    /**
+     * Creates the idle strategy of an agent from its options, falling back to the configured default.
+     *
+     * @param options the agent's options
+     * @return a new idle strategy instance for the agent's worker
+     */
+    private IdleStrategy idleStrategy(Map<String, String> options) {
+        String idle = options.get("idle");
+        return idle == null ? idleStrategy.get() : IdleStrategy.forName(idle).get();
+    }
+
+    /**
+     * Waits until every agent has finished handling the messages delivered to it,
+     * so that topic values read afterwards reflect the last publish.
+     * Configurations with cycles may never settle, hence the timeout.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return true if all agents were idle before the timeout expired
+     */
+    public boolean awaitSettled(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        int idlePasses = 0;
+        // Two consecutive idle scans, since a message may move between agents while we scan
+        while (idlePasses < 2) {
+            boolean idle = true;
+            for (Agent a : agents) {
+                if (a instanceof ParallelAgent && !((ParallelAgent) a).isIdle()) {
+                    idle = false;
+                    break;
+                }
+            }
+            idlePasses = idle ? idlePasses + 1 : 0;
+            if (idlePasses < 2) {
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                Thread.onSpinWait();
+                Thread.yield();
+            }
+        }
+        return true;
+    }
+
     /**
      * Validates that the config file follows the expected format:
      *  - Number of lines is divisible by 3
@@ -145,7 +574,7 @@ public class GenericConfig implements Config {
             return false;
         }
 
-        String className = lines.get(index).trim();
+        String className = lines.get(index).trim().split("\\s+")[0];
         try {
             Class.forName(className);
         } catch (ClassNotFoundException e) {
@@ -169,4 +598,50 @@ public class GenericConfig implements Config {
     public List<Agent> getAgents() {
         return this.agents;
     }
+
+    /**
+     * @return the output filters set by the agents' options, by topic name, with how many values they dropped
+     */
+    public Map<String, OutputFilter> getOutputFilters() {
+        return filters;
+    }
+
+    /**
+     * @return the caches of the memoized agents, by agent name, with their hit, miss and eviction counts
+     */
+    public Map<String, MemoCache> getMemoCaches() {
+        Map<String, MemoCache> caches = new LinkedHashMap<>();
+        for (Agent a : agents) {
+            if (unwrap(a) instanceof Memoizable m && m.getMemoCache() != null) {
+                caches.put(a.getName(), m.getMemoCache());
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * @return the plan running this configuration in a compiled mode (COMPILED, PARALLEL, BYTECODE, LAZY or FIXED_POINT), or null if it isn't compiled
+     */
+    public EvaluationPlan getEvaluationPlan() {
+        return this.plan;
+    }
+
+    /**
+     * Returns the agent behind one of the deployed agents returned by getAgents().
+     *
+     * @param agent a ParallelAgent, a compiled plan's PlannedAgent, a FusedAgent, or a plain agent
+     * @return the agent it runs, or the agent itself if it is not a wrapper
+     */
+    public static Agent unwrap(Agent agent) {
+        if (agent instanceof ParallelAgent) {
+            return ((ParallelAgent) agent).getAgent();
+        }
+        if (agent instanceof EvaluationPlan.PlannedAgent) {
+            return ((EvaluationPlan.PlannedAgent) agent).getAgent();
+        }
+        if (agent instanceof FusedAgent) {
+            return ((FusedAgent) agent).getAgent();
+        }
+        return agent;
+    }
 }
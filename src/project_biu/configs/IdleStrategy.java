@@ -0,0 +1,156 @@
+package project_biu.configs;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Decides what a ParallelAgent worker thread does when its inbox has nothing to process,
+ * trading CPU usage for wake-up latency. Strategies keep state (spin counters, current back-off),
+ * so every worker gets its own instance.
+ *
+ * Provided strategies:
+ * - BusySpin: never gives up the core; lowest latency, one full core per agent.
+ * - SpinYield: spins for a while, then yields the core to other threads between checks.
+ * - Backoff: spins, yields, then parks for exponentially growing periods up to a maximum.
+ * - Block: parks until a publisher wakes the worker up; lowest CPU (the default).
+ *
+ * Parking strategies are woken early by publishers, so they never sleep through a message.
+ * Strategies only apply to THREAD and VIRTUAL modes; pooled agents have no worker loop to idle.
+ */
+public interface IdleStrategy {
+
+    /**
+     * Called by the worker after each attempt to drain its inbox.
+     *
+     * @param workCount the number of events the last attempt handled; 0 means the inbox was empty
+     */
+    void idle(int workCount);
+
+    /**
+     * Returns the strategy to its most eager state, called once work has been found.
+     */
+    void reset();
+
+    /**
+     * @return true if this strategy may park the thread, so publishers must be able to unpark it
+     */
+    default boolean mayPark() {
+        return false;
+    }
+
+    /**
+     * Looks up a strategy by name, as used in config files and request parameters.
+     *
+     * @param name one of busy_spin, spin_yield, backoff or block (case-insensitive)
+     * @return a factory creating one strategy instance per worker
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static Supplier<IdleStrategy> forName(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "busy_spin":
+                return BusySpin::new;
+            case "spin_yield":
+                return SpinYield::new;
+            case "backoff":
+                return Backoff::new;
+            case "block":
+                return Block::new;
+            default:
+                throw new IllegalArgumentException("Unknown idle strategy: " + name);
+        }
+    }
+
+    // Spins on the core without ever yielding it
+    class BusySpin implements IdleStrategy {
+        @Override
+        public void idle(int workCount) {
+            if (workCount == 0) {
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void reset() {}
+    }
+
+    // Spins for a fixed number of empty polls, then yields between polls
+    class SpinYield implements IdleStrategy {
+        private static final int MAX_SPINS = 100;
+        private int spins = 0;
+
+        @Override
+        public void idle(int workCount) {
+            if (workCount > 0) {
+                spins = 0;
+            } else if (spins < MAX_SPINS) {
+                spins++;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void reset() {
+            spins = 0;
+        }
+    }
+
+    // Spins, then yields, then parks for a period that doubles on every empty poll
+    class Backoff implements IdleStrategy {
+        private static final int MAX_SPINS = 100;
+        private static final int MAX_YIELDS = 10;
+        private static final long MIN_PARK_NANOS = 1_000L;
+        private static final long MAX_PARK_NANOS = 1_000_000L;
+
+        private int spins = 0;
+        private int yields = 0;
+        private long parkNanos = MIN_PARK_NANOS;
+
+        @Override
+        public void idle(int workCount) {
+            if (workCount > 0) {
+                reset();
+            } else if (spins < MAX_SPINS) {
+                spins++;
+                Thread.onSpinWait();
+            } else if (yields < MAX_YIELDS) {
+                yields++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+            }
+        }
+
+        @Override
+        public void reset() {
+            spins = 0;
+            yields = 0;
+            parkNanos = MIN_PARK_NANOS;
+        }
+
+        @Override
+        public boolean mayPark() {
+            return true;
+        }
+    }
+
+    // Parks until unparked by a publisher
+    class Block implements IdleStrategy {
+        @Override
+        public void idle(int workCount) {
+            if (workCount == 0) {
+                LockSupport.park(this);
+            }
+        }
+
+        @Override
+        public void reset() {}
+
+        @Override
+        public boolean mayPark() {
+            return true;
+        }
+    }
+}
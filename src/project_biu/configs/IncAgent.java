@@ -1,8 +1,9 @@
 // IncAgent.java
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
 /**
@@ -12,11 +13,12 @@ import project_biu.graph.TopicManagerSingleton;
  *
  * This agent demonstrates basic message transformation and forwarding.
  */
-public class IncAgent implements Agent {
+public class IncAgent implements ComputeAgent {
     String name; // Unique name of this agent instance
     String inputTopicName; // Topic name from which the input value is received
-    private Double inputVal; // The last value received from input topic
+    private double inputVal; // The last value received from input topic
     String outputTopicName; // Topic name where the incremented value is published
+    Topic outputTopic; // Output topic, resolved once so publishing needs no lookup
     static int counter = 1; // Counter to generate unique agent names
 
     /**
@@ -37,7 +39,8 @@ public class IncAgent implements Agent {
         TopicManagerSingleton.get().getTopic(inputTopicName).subscribe(this);
 
         // Declare intent to publish on output topic
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     /**
@@ -65,14 +68,44 @@ public class IncAgent implements Agent {
      */
     @Override
     public void callback(String topic, Message msg) {
-        inputVal = msg.asDouble;
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    /**
+     * Stores the latest input value without publishing.
+     *
+     * @param topic The name of the topic the value came from
+     * @param value The received value
+     */
+    @Override
+    public void update(String topic, double value) {
+        inputVal = value;
+    }
+
+    // A single input, so the ID needs no checking
+    @Override
+    public void update(int topicId, double value) {
+        inputVal = value;
+    }
 
-        // If a valid number was received, perform the increment operation
+    /**
+     * Increments the stored value and publishes it, if a valid number was received.
+     */
+    @Override
+    public void evaluate() {
         if (!Double.isNaN(inputVal)) {
-            Double outputVal = inputVal + 1;
+            double outputVal = inputVal + 1;
 
             // Send the new value to the output topic
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
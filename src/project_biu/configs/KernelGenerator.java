@@ -0,0 +1,537 @@
+package project_biu.configs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Translates an EvaluationPlan into a hidden class implementing EvaluationPlan.Kernel, with the plan's
+ * operations unrolled into straight-line bytecode: every topic ID, opcode and consumer of an operation
+ * becomes a constant, so the JIT sees plain array arithmetic with no opcode switch, no index tables and
+ * no interface dispatch per agent.
+ *
+ * The plan's positions are split in chunks of 64, one per word of the dirty bit set, and every chunk
+ * becomes one or more static methods called in order. A method ends once its code would pass METHOD_BUDGET
+ * bytes, below the size over which HotSpot does not compile methods at all (8000 bytes, see
+ * -XX:-DontCompileHugeMethods), since operations marking many consumers inline make 64 of them too large.
+ * Each operation of a chunk compiles to:
+ *
+ *   if ((dirty[w] & bit) != 0) {
+ *       dirty[w] &= ~bit; touched++;
+ *       a = state[first]; b = state[second];
+ *       if (a == a && b == b [&& b != 0 for DIV]) {
+ *           r = a op b;
+ *           if (sink.publish(n, r)) {
+ *               state[out] = r;
+ *               dirty[...] |= ... for each consumer of out;
+ *           }
+ *       }
+ *   }
+ *
+ * which is the interpreter's pass, operation for operation. An intermediate result of a formula is stored
+ * without publishing, and when it gets no value the kernel calls sink.retract(n) instead of doing nothing.
+ * Classes are emitted in version 49 format, which the verifier checks by type inference, so no stack map
+ * frames have to be computed.
+ */
+final class KernelGenerator {
+
+    // Operations whose output has more consumers than this mark them through the sink instead of inline
+    private static final int MAX_INLINE_MARKS = 16;
+
+    // Largest code length of a generated chunk method, in bytes
+    static final int METHOD_BUDGET = 7000;
+
+    private static final String KERNEL = "project_biu/configs/EvaluationPlan$Kernel";
+    private static final String SINK = "project_biu/configs/EvaluationPlan$Sink";
+    private static final String CHUNK_DESC = "([D[JL" + SINK + ";)I";
+
+    // Local variable slots of a chunk method
+    private static final int S = 0, D = 1, SINK_SLOT = 2, A = 3, B = 5, R = 7, TOUCHED = 9;
+
+    private final EvaluationPlan plan;
+    private final ConstantPool cp = new ConstantPool();
+    private int largestChunk = 0;
+
+    KernelGenerator(EvaluationPlan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Generates and loads the kernel of the plan.
+     *
+     * @return a new kernel instance
+     * @throws ReflectiveOperationException if the generated class can't be defined or instantiated
+     */
+    EvaluationPlan.Kernel generate() throws ReflectiveOperationException {
+        byte[] bytes = classBytes();
+        Class<?> kernelClass = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+        return (EvaluationPlan.Kernel) kernelClass.getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * @return the code length of the largest chunk method generated, in bytes
+     */
+    int getLargestChunk() {
+        return largestChunk;
+    }
+
+    private byte[] classBytes() {
+        int chunks = (plan.size() + 63) >>> 6;
+        List<List<byte[]>> parts = new ArrayList<>();
+        for (int c = 0; c < chunks; c++) {
+            parts.add(chunkCode(c));
+        }
+        List<byte[]> methods = new ArrayList<>();
+        methods.add(method(0x0001, "<init>", "()V", 1, 1, constructorCode()));
+        methods.add(method(0x0001, "run", "(I[D[JL" + SINK + ";)I", 5, 5, dispatchCode(parts)));
+        for (int c = 0; c < chunks; c++) {
+            for (int p = 0; p < parts.get(c).size(); p++) {
+                byte[] code = parts.get(c).get(p);
+                largestChunk = Math.max(largestChunk, code.length);
+                methods.add(method(0x000A, chunkName(c, p), CHUNK_DESC, 8, TOUCHED + 1, code));
+            }
+        }
+
+        int thisClass = cp.classRef("project_biu/configs/EvaluationPlan$$Kernel");
+        int superClass = cp.classRef("java/lang/Object");
+        int kernelInterface = cp.classRef(KERNEL);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);  // minor version
+            out.writeShort(49); // major version: Java 5, verified without stack map frames
+            cp.write(out);
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(kernelInterface);
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (byte[] m : methods) {
+                out.write(m);
+            }
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Writing to memory
+        }
+        return bytes.toByteArray();
+    }
+
+    // Serializes a method with a single Code attribute
+    private byte[] method(int access, String name, String desc, int maxStack, int maxLocals, byte[] code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(access);
+            out.writeShort(cp.utf8(name));
+            out.writeShort(cp.utf8(desc));
+            out.writeShort(1);
+            out.writeShort(cp.utf8("Code"));
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private byte[] constructorCode() {
+        Code code = new Code();
+        code.op(0x2a); // aload_0
+        code.op(0xb7); // invokespecial Object.<init>
+        code.u2(cp.methodRef("java/lang/Object", "<init>", "()V", false));
+        code.op(0xb1); // return
+        return code.bytes();
+    }
+
+    // Name of the p-th method of a chunk
+    private static String chunkName(int chunk, int p) {
+        return "chunk" + chunk + "_" + p;
+    }
+
+    // run(chunk, state, dirty, sink): tableswitch on the chunk number to the chunk's static methods, in order
+    private byte[] dispatchCode(List<List<byte[]>> parts) {
+        int chunks = parts.size();
+        Code code = new Code();
+        code.op(0x1b); // iload_1
+        int switchPc = code.pc();
+        code.op(0xaa); // tableswitch
+        while (code.pc() % 4 != 0) {
+            code.op(0);
+        }
+        int defaultAt = code.pc();
+        code.u4(0);
+        code.u4(0);
+        code.u4(chunks - 1);
+        int tableAt = code.pc();
+        for (int c = 0; c < chunks; c++) {
+            code.u4(0);
+        }
+        for (int c = 0; c < chunks; c++) {
+            code.patch4(tableAt + 4 * c, code.pc() - switchPc);
+            code.op(0x03); // iconst_0
+            for (int p = 0; p < parts.get(c).size(); p++) {
+                code.op(0x2c); // aload_2
+                code.op(0x2d); // aload_3
+                code.op(0x19); // aload 4
+                code.op(4);
+                code.op(0xb8); // invokestatic chunk
+                code.u2(cp.methodRef("project_biu/configs/EvaluationPlan$$Kernel", chunkName(c, p), CHUNK_DESC, false));
+                code.op(0x60); // iadd
+            }
+            code.op(0xac); // ireturn
+        }
+        code.patch4(defaultAt, code.pc() - switchPc);
+        code.op(0x03); // iconst_0
+        code.op(0xac); // ireturn
+        return code.bytes();
+    }
+
+    // The methods of a chunk; each operation is emitted on its own, its branches being relative, and starts a
+    // new method when it would take the current one over the budget
+    private List<byte[]> chunkCode(int chunk) {
+        List<byte[]> methods = new ArrayList<>();
+        Code code = null;
+        int end = Math.min(plan.size(), (chunk + 1) << 6);
+        for (int n = chunk << 6; n < end; n++) {
+            Code operation = new Code();
+            operation(operation, n);
+            if (code != null && code.pc() + operation.pc() + 3 > METHOD_BUDGET) {
+                methods.add(finishChunk(code));
+                code = null;
+            }
+            if (code == null) {
+                code = new Code();
+                code.op(0x03); // iconst_0
+                code.op(0x36); // istore touched
+                code.op(TOUCHED);
+            }
+            code.append(operation);
+        }
+        methods.add(finishChunk(code));
+        return methods;
+    }
+
+    private byte[] finishChunk(Code code) {
+        code.op(0x15); // iload touched
+        code.op(TOUCHED);
+        code.op(0xac); // ireturn
+        return code.bytes();
+    }
+
+    private void operation(Code code, int n) {
+        int word = n >>> 6;
+        long bit = 1L << n;
+        boolean intermediate = plan.outputs[n] == null;
+        List<Integer> skips = new ArrayList<>();  // Branches to the end: the operation is clean
+        List<Integer> fails = new ArrayList<>();  // Branches taken when the operation produces nothing
+
+        // if ((dirty[word] & bit) != 0)
+        code.op(0x2b); // aload_1
+        pushInt(code, word);
+        code.op(0x2f); // laload
+        pushLong(code, bit);
+        code.op(0x7f); // land
+        code.op(0x09); // lconst_0
+        code.op(0x94); // lcmp
+        skips.add(code.branch(0x99)); // ifeq
+
+        // dirty[word] &= ~bit; touched++
+        code.op(0x2b);
+        pushInt(code, word);
+        code.op(0x5c); // dup2
+        code.op(0x2f); // laload
+        pushLong(code, ~bit);
+        code.op(0x7f); // land
+        code.op(0x50); // lastore
+        code.op(0x84); // iinc touched 1
+        code.op(TOUCHED);
+        code.op(1);
+
+        // a = state[first]; b = state[second]; skip if either is NaN
+        loadState(code, plan.first[n], A);
+        loadState(code, plan.second[n], B);
+        for (int slot : new int[]{A, B}) {
+            code.op(0x18); // dload
+            code.op(slot);
+            code.op(0x18);
+            code.op(slot);
+            code.op(0x97); // dcmpl, -1 if NaN
+            fails.add(code.branch(0x9a)); // ifne
+        }
+
+        int op = plan.ops[n];
+        if (op == EvaluationPlan.DIV) {
+            code.op(0x18);
+            code.op(B);
+            code.op(0x0e); // dconst_0
+            code.op(0x97); // dcmpl
+            fails.add(code.branch(0x99)); // ifeq: dividing by zero publishes nothing
+        }
+
+        // r = a op b
+        if (op == EvaluationPlan.CUSTOM) {
+            code.op(0x2c); // aload_2 (sink)
+            pushInt(code, n);
+        }
+        code.op(0x18);
+        code.op(A);
+        if (op == EvaluationPlan.INC) {
+            code.op(0x0f); // dconst_1
+        } else {
+            code.op(0x18);
+            code.op(B);
+        }
+        switch (op) {
+            case EvaluationPlan.PLUS, EvaluationPlan.INC -> code.op(0x63); // dadd
+            case EvaluationPlan.MINUS -> code.op(0x67); // dsub
+            case EvaluationPlan.MUL -> code.op(0x6b); // dmul
+            case EvaluationPlan.DIV -> code.op(0x6f); // ddiv
+            case EvaluationPlan.POW -> {
+                code.op(0xb8); // invokestatic Math.pow
+                code.u2(cp.methodRef("java/lang/Math", "pow", "(DD)D", false));
+            }
+            default -> {
+                code.op(0xb9); // invokeinterface sink.custom(n, a, b)
+                code.u2(cp.methodRef(SINK, "custom", "(IDD)D", true));
+                code.op(6);
+                code.op(0);
+            }
+        }
+        code.op(0x39); // dstore r
+        code.op(R);
+
+        if (!intermediate) {
+            // if (!sink.publish(n, r)) skip: the output filter dropped the result
+            code.op(0x2c);
+            pushInt(code, n);
+            code.op(0x18);
+            code.op(R);
+            code.op(0xb9);
+            code.u2(cp.methodRef(SINK, "publish", "(ID)Z", true));
+            code.op(4);
+            code.op(0);
+            skips.add(code.branch(0x99)); // ifeq
+        }
+
+        // state[out] = r
+        code.op(0x2a); // aload_0
+        pushInt(code, plan.out[n]);
+        code.op(0x18);
+        code.op(R);
+        code.op(0x52); // dastore
+
+        // Mark the consumers of out
+        int topic = plan.out[n];
+        int from = plan.consumerStart[topic];
+        int to = plan.consumerStart[topic + 1];
+        if (to - from > MAX_INLINE_MARKS) {
+            code.op(0x2c);
+            pushInt(code, topic);
+            code.op(0xb9); // invokeinterface sink.mark(topic)
+            code.u2(cp.methodRef(SINK, "mark", "(I)V", true));
+            code.op(2);
+            code.op(0);
+        } else {
+            for (int k = from; k < to; k++) {
+                int c = plan.consumers[k];
+                code.op(0x2b);
+                pushInt(code, c >>> 6);
+                code.op(0x5c); // dup2
+                code.op(0x2f); // laload
+                pushLong(code, 1L << c);
+                code.op(0x81); // lor
+                code.op(0x50); // lastore
+            }
+        }
+
+        if (intermediate) {
+            // Jump over the retract block
+            skips.add(code.branch(0xa7)); // goto
+            for (int at : fails) {
+                code.patchBranch(at, code.pc());
+            }
+            fails.clear();
+            code.op(0x2c);
+            pushInt(code, n);
+            code.op(0xb9); // invokeinterface sink.retract(n)
+            code.u2(cp.methodRef(SINK, "retract", "(I)V", true));
+            code.op(2);
+            code.op(0);
+        }
+
+        for (int at : skips) {
+            code.patchBranch(at, code.pc());
+        }
+        for (int at : fails) {
+            code.patchBranch(at, code.pc());
+        }
+    }
+
+    private void loadState(Code code, int topic, int slot) {
+        code.op(0x2a); // aload_0
+        pushInt(code, topic);
+        code.op(0x31); // daload
+        code.op(0x39); // dstore
+        code.op(slot);
+    }
+
+    private void pushInt(Code code, int v) {
+        if (v >= -1 && v <= 5) {
+            code.op(0x03 + v); // iconst_<v>
+        } else if (v >= Byte.MIN_VALUE && v <= Byte.MAX_VALUE) {
+            code.op(0x10); // bipush
+            code.op(v);
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            code.op(0x11); // sipush
+            code.u2(v);
+        } else {
+            code.op(0x13); // ldc_w
+            code.u2(cp.integer(v));
+        }
+    }
+
+    private void pushLong(Code code, long v) {
+        code.op(0x14); // ldc2_w
+        code.u2(cp.longConstant(v));
+    }
+
+    // Bytecode of one method, with forward branches patched once their target is known
+    private static final class Code {
+        private byte[] buf = new byte[256];
+        private int length = 0;
+
+        int pc() {
+            return length;
+        }
+
+        void op(int b) {
+            if (length == buf.length) {
+                buf = java.util.Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[length++] = (byte) b;
+        }
+
+        void u2(int v) {
+            op(v >>> 8);
+            op(v);
+        }
+
+        void u4(int v) {
+            u2(v >>> 16);
+            u2(v);
+        }
+
+        // Emits a branch instruction with a placeholder offset; returns its position for patchBranch
+        int branch(int opcode) {
+            int at = length;
+            op(opcode);
+            u2(0);
+            return at;
+        }
+
+        void patchBranch(int at, int target) {
+            int offset = target - at;
+            if (offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch too long");
+            }
+            buf[at + 1] = (byte) (offset >>> 8);
+            buf[at + 2] = (byte) offset;
+        }
+
+        void patch4(int at, int v) {
+            buf[at] = (byte) (v >>> 24);
+            buf[at + 1] = (byte) (v >>> 16);
+            buf[at + 2] = (byte) (v >>> 8);
+            buf[at + 3] = (byte) v;
+        }
+
+        // Copies another method fragment's code to the end of this one; only valid for relative branches
+        void append(Code other) {
+            for (int i = 0; i < other.length; i++) {
+                op(other.buf[i]);
+            }
+        }
+
+        byte[] bytes() {
+            return java.util.Arrays.copyOf(buf, length);
+        }
+    }
+
+    // Constant pool with deduplicated entries
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> index = new HashMap<>();
+        private int next = 1;
+
+        private int add(String key, int slots, IOAction write) {
+            Integer existing = index.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                write.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            int at = next;
+            next += slots;
+            index.put(key, at);
+            return at;
+        }
+
+        int utf8(String s) {
+            return add("U" + s, 1, () -> { out.writeByte(1); out.writeUTF(s); });
+        }
+
+        int integer(int v) {
+            return add("I" + v, 1, () -> { out.writeByte(3); out.writeInt(v); });
+        }
+
+        int longConstant(long v) {
+            return add("J" + v, 2, () -> { out.writeByte(5); out.writeLong(v); });
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            return add("C" + internalName, 1, () -> { out.writeByte(7); out.writeShort(name); });
+        }
+
+        int nameAndType(String name, String desc) {
+            int n = utf8(name);
+            int d = utf8(desc);
+            return add("N" + name + " " + desc, 1, () -> { out.writeByte(12); out.writeShort(n); out.writeShort(d); });
+        }
+
+        int methodRef(String owner, String name, String desc, boolean isInterface) {
+            int c = classRef(owner);
+            int nt = nameAndType(name, desc);
+            return add("M" + owner + "." + name + desc, 1,
+                    () -> { out.writeByte(isInterface ? 11 : 10); out.writeShort(c); out.writeShort(nt); });
+        }
+
+        void write(DataOutputStream target) throws IOException {
+            if (next > 0xFFFF) {
+                throw new IllegalStateException("Plan too large for one class");
+            }
+            target.writeShort(next);
+            target.write(bytes.toByteArray());
+        }
+
+        private interface IOAction {
+            void run() throws IOException;
+        }
+    }
+}
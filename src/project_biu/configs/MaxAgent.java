@@ -0,0 +1,12 @@
+package project_biu.configs;
+
+/**
+ * Publishes the largest value among any number of input topics.
+ * Updating one input costs O(log k) for k inputs, see ReduceAgent.
+ */
+public class MaxAgent extends ReduceAgent {
+
+    public MaxAgent(String[] subs, String[] pubs) {
+        super(subs, pubs, "max", Operators.MAX, Double.NEGATIVE_INFINITY);
+    }
+}
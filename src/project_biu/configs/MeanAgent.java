@@ -0,0 +1,18 @@
+package project_biu.configs;
+
+/**
+ * Publishes the arithmetic mean of any number of input topics: their sum, maintained as in SumAgent,
+ * divided by the number of inputs.
+ * Updating one input costs O(log k) for k inputs, see ReduceAgent.
+ */
+public class MeanAgent extends ReduceAgent {
+
+    public MeanAgent(String[] subs, String[] pubs) {
+        super(subs, pubs, "mean", Operators.PLUS, 0);
+    }
+
+    @Override
+    protected double finish(double reduced, int count) {
+        return reduced / count;
+    }
+}
@@ -0,0 +1,214 @@
+package project_biu.configs;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+/*
+ * A bounded memoization cache in front of a binary operator, for agents whose computation costs more than
+ * a table lookup (Math.pow, or the arbitrary operators of BinOpAgent) and that keep seeing the same inputs.
+ *
+ * Layout, all primitive arrays so neither lookups nor insertions allocate:
+ * - Entries: up to capacity slots holding the raw bits of both operands and the result, and the previous
+ *   and next slot in recency order (a doubly linked list through int arrays, most recent at head).
+ * - Index: an open-addressing table with linear probing, at most half full, mapping an operand pair to
+ *   its entry slot plus one (0 is an empty bucket). Removal shifts the following buckets of the probe run
+ *   back, so no tombstones accumulate.
+ *
+ * Eviction is LRU: a miss on a full cache reuses the least recently used slot. Operands are compared by
+ * their bits, so 0.0 and -0.0 are distinct keys and every cached result is exactly what the operator
+ * returned. Methods are synchronized, since a plan computing a level in parallel may call one operator
+ * from several threads; agents otherwise call it from their single worker.
+ */
+public final class MemoCache implements DoubleBinaryOperator {
+
+    private static final int NONE = -1;
+
+    private final DoubleBinaryOperator function;
+    private final int capacity;
+
+    // Entries
+    private final long[] firstKey;
+    private final long[] secondKey;
+    private final double[] values;
+    private final int[] prev;
+    private final int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+    private int size = 0;
+
+    // Index
+    private final int[] index;
+    private final int mask;
+
+    // Metrics
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param function the operator whose results are cached; must depend on nothing but its operands
+     * @param capacity the maximum number of cached operand pairs
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public MemoCache(DoubleBinaryOperator function, int capacity) {
+        if (capacity <= 0 || capacity > 1 << 28) {
+            throw new IllegalArgumentException("Invalid memoization capacity: " + capacity);
+        }
+        this.function = function;
+        this.capacity = capacity;
+        this.firstKey = new long[capacity];
+        this.secondKey = new long[capacity];
+        this.values = new double[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        this.index = new int[Integer.highestOneBit(capacity) << 2]; // Between 2 and 4 buckets per entry
+        this.mask = index.length - 1;
+    }
+
+    /**
+     * Returns the cached result for these operands, computing and caching it on a miss.
+     */
+    @Override
+    public synchronized double applyAsDouble(double a, double b) {
+        long ka = Double.doubleToRawLongBits(a);
+        long kb = Double.doubleToRawLongBits(b);
+        int bucket = hash(ka, kb) & mask;
+        for (int e = index[bucket]; e != 0; e = index[bucket]) {
+            int slot = e - 1;
+            if (firstKey[slot] == ka && secondKey[slot] == kb) {
+                hits++;
+                if (slot != head) {
+                    unlink(slot);
+                    linkFirst(slot);
+                }
+                return values[slot];
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        misses++;
+        double result = function.applyAsDouble(a, b);
+        int slot;
+        if (size < capacity) {
+            slot = size++;
+        } else {
+            slot = tail;
+            unlink(slot);
+            removeFromIndex(slot);
+            evictions++;
+            bucket = hash(ka, kb) & mask; // The removal may have shifted the empty bucket found above
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+        }
+        firstKey[slot] = ka;
+        secondKey[slot] = kb;
+        values[slot] = result;
+        index[bucket] = slot + 1;
+        linkFirst(slot);
+        return result;
+    }
+
+    // Empties the bucket of an entry and moves back the entries probing past it (backward shift deletion)
+    private void removeFromIndex(int slot) {
+        int hole = hash(firstKey[slot], secondKey[slot]) & mask;
+        while (index[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int b = (hole + 1) & mask; index[b] != 0; b = (b + 1) & mask) {
+            int e = index[b] - 1;
+            int home = hash(firstKey[e], secondKey[e]) & mask;
+            // The entry can fill the hole unless its home bucket lies cyclically in (hole, b]
+            if (((b - home) & mask) >= ((b - hole) & mask)) {
+                index[hole] = index[b];
+                hole = b;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+    }
+
+    private void linkFirst(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        } else {
+            tail = slot;
+        }
+        head = slot;
+    }
+
+    private static int hash(long a, long b) {
+        long h = a * 0x9E3779B97F4A7C15L + b;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Empties the cache; the metrics are kept.
+     */
+    public synchronized void clear() {
+        Arrays.fill(index, 0);
+        head = NONE;
+        tail = NONE;
+        size = 0;
+    }
+
+    /**
+     * @return the operator whose results are cached
+     */
+    public DoubleBinaryOperator getFunction() {
+        return function;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of calls answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of calls that computed their result
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of cached results dropped to make room for new ones
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long calls = hits + misses;
+        return hits + " hits, " + misses + " misses, " + evictions + " evictions"
+                + (calls > 0 ? String.format(" (%.1f%% hit rate)", 100.0 * hits / calls) : "");
+    }
+}
@@ -0,0 +1,23 @@
+package project_biu.configs;
+
+/**
+ * An agent whose result depends only on its current inputs and can be computed through a MemoCache.
+ * In a config file memoization is enabled per agent with an option on the class line,
+ * e.g. "project_biu.configs.ExponnentAgent memo=1024".
+ */
+public interface Memoizable {
+
+    /**
+     * Computes through a new cache from now on.
+     * Must be called before the agent is deployed, since compiled plans take the agent's operator then.
+     *
+     * @param capacity the maximum number of cached input pairs
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    void memoize(int capacity);
+
+    /**
+     * @return the agent's cache, with its hit, miss and eviction counts; null if it is not memoized
+     */
+    MemoCache getMemoCache();
+}
@@ -0,0 +1,12 @@
+package project_biu.configs;
+
+/**
+ * Publishes the smallest value among any number of input topics.
+ * Updating one input costs O(log k) for k inputs, see ReduceAgent.
+ */
+public class MinAgent extends ReduceAgent {
+
+    public MinAgent(String[] subs, String[] pubs) {
+        super(subs, pubs, "min", Operators.MIN, Double.POSITIVE_INFINITY);
+    }
+}
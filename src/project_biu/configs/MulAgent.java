@@ -1,7 +1,8 @@
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
 /**
@@ -10,7 +11,7 @@ import project_biu.graph.TopicManagerSingleton;
  *
  * This agent demonstrates a basic binary arithmetic operation in a reactive publish-subscribe model.
  */
-public class MulAgent implements Agent {
+public class MulAgent implements ComputeAgent {
 
     // Unique identifier for the agent instance
     String name;
@@ -19,17 +20,22 @@ public class MulAgent implements Agent {
     String firstTopicName;
 
     // Most recent value received from first topic
-    private Double firstInputVal;
+    private double firstInputVal;
 
     // Name of the second topic (right operand of multiplication)
     String secondTopicName;
 
     // Most recent value received from second topic
-    private Double secondInputVal;
+    private double secondInputVal;
 
     // Output topic where the product is published
     String outputTopicName;
 
+    // Topic IDs of both inputs and the resolved output topic, so messages are routed without string lookups
+    int firstTopicId;
+    int secondTopicId;
+    Topic outputTopic;
+
     // Used to generate unique names for each agent instance
     static int counter = 1;
 
@@ -53,11 +59,16 @@ public class MulAgent implements Agent {
         counter++;
 
         // Subscribe this agent to both input topics
-        TopicManagerSingleton.get().getTopic(firstTopicName).subscribe(this);
-        TopicManagerSingleton.get().getTopic(secondTopicName).subscribe(this);
+        Topic firstTopic = TopicManagerSingleton.get().getTopic(firstTopicName);
+        Topic secondTopic = TopicManagerSingleton.get().getTopic(secondTopicName);
+        this.firstTopicId = firstTopic.id;
+        this.secondTopicId = secondTopic.id;
+        firstTopic.subscribe(this);
+        secondTopic.subscribe(this);
 
         // Register this agent as a publisher to the output topic
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     /**
@@ -83,20 +94,54 @@ public class MulAgent implements Agent {
      */
     @Override
     public void callback(String topic, Message msg) {
-        // Identify which topic the message came from and store its value
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    /**
+     * Identifies which topic the value came from and stores it, without publishing.
+     *
+     * @param topic The topic the value was received from
+     * @param value The numeric value
+     */
+    @Override
+    public void update(String topic, double value) {
         if (topic.equals(firstTopicName)) {
-            firstInputVal = msg.asDouble;
+            firstInputVal = value;
         }
         if (topic.equals(secondTopicName)) {
-            secondInputVal = msg.asDouble;
+            secondInputVal = value;
         }
+    }
 
-        // Ensure both values are valid before performing the operation
+    // Compares resolved IDs instead of topic names
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId == firstTopicId) {
+            firstInputVal = value;
+        }
+        if (topicId == secondTopicId) {
+            secondInputVal = value;
+        }
+    }
+
+    /**
+     * Ensures both values are valid before computing and publishing the product.
+     */
+    @Override
+    public void evaluate() {
         if (!Double.isNaN(firstInputVal) && !Double.isNaN(secondInputVal)) {
             double outputVal = firstInputVal * secondInputVal;
 
             // Publish the multiplication result to the output topic
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
@@ -1,12 +1,13 @@
 package project_biu.configs;
 
+import project_biu.graph.IndexedGraph;
 import project_biu.graph.Message;
 import java.util.*;
 
 /**
  * Represents a node in a directed graph structure.
  * Each node can store a message, have a name, and maintain a list of outgoing edges to other nodes.
- * This class supports cycle detection using depth-first search (DFS) and neighbor listing.
+ * This class supports cycle detection over the nodes reachable from it and neighbor listing.
  */
 public class Node {
 
@@ -52,36 +53,14 @@ public class Node {
     public void setMsg(Message msg) { this.msg = msg; }
 
     /**
-     * Detects whether the current node is part of a cycle in the graph.
-     * Uses depth-first search and a recursion stack to identify cycles.
+     * Detects whether a cycle can be reached from the current node.
+     * Indexes the reachable nodes and checks them in one linear pass, without recursion,
+     * so arbitrarily long chains do not overflow the stack.
      *
      * @return true if a cycle is found, false otherwise
      */
     public boolean hasCycles() {
-        return detectCycle(this, new HashSet<>(), new HashSet<>());
-    }
-
-    /**
-     * Recursive helper for cycle detection using DFS.
-     *
-     * @param node          the node currently being visited
-     * @param visitedNodes  set of nodes already visited
-     * @param currentStack  nodes currently in the DFS recursion stack
-     * @return true if a cycle is detected from this node
-     */
-    private boolean detectCycle(Node node, Set<Node> visitedNodes, Set<Node> currentStack) {
-        if (currentStack.contains(node)) return true; // Back edge found
-        if (visitedNodes.contains(node)) return false; // Already processed
-
-        visitedNodes.add(node);
-        currentStack.add(node);
-
-        for (Node neighbor : node.edges) {
-            if (detectCycle(neighbor, visitedNodes, currentStack)) return true;
-        }
-
-        currentStack.remove(node); // Backtrack
-        return false;
+        return IndexedGraph.of(List.of(this)).hasCycles();
     }
 
     /**
@@ -0,0 +1,20 @@
+package project_biu.configs;
+
+import java.util.function.DoubleBinaryOperator;
+
+/*
+ * Primitive double operators for BinOpAgent and the reduction agents.
+ * Being DoubleBinaryOperators, they compute on doubles without boxing either operand or the result.
+ */
+public final class Operators {
+
+    public static final DoubleBinaryOperator PLUS = (a, b) -> a + b;
+    public static final DoubleBinaryOperator MINUS = (a, b) -> a - b;
+    public static final DoubleBinaryOperator TIMES = (a, b) -> a * b;
+    public static final DoubleBinaryOperator DIVIDE = (a, b) -> a / b;
+    public static final DoubleBinaryOperator POW = Math::pow;
+    public static final DoubleBinaryOperator MIN = Math::min;
+    public static final DoubleBinaryOperator MAX = Math::max;
+
+    private Operators() {}
+}
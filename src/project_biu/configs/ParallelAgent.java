@@ -1,67 +1,180 @@
 package project_biu.configs;
 
 import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /*
  * This class acts as a concurrency-enabled proxy for an Agent.
- * It allows messages to be processed independently on a dedicated thread,
- * using a blocking queue to manage workload asynchronously.
+ * It allows messages to be processed independently of the publisher, either on a dedicated (platform or
+ * virtual) thread, or as a lightweight actor whose inbox is drained by the shared AgentScheduler pool.
+ * In every mode the wrapped agent is never run concurrently with itself.
  *
  * Components:
  * - agent: The actual agent doing the processing work.
- * - queue: Stores incoming messages until they're handled.
- * - stop: A boolean used to shut down the background thread cleanly.
+ * - inbox: Preallocated ring buffer holding (topic ID, value, sequence) events until they're handled.
+ *          Events carry the TopicManager ID of their topic, which is handed straight back to the agent.
+ *          With the CONFLATE policy it only carries wake-up signals, at most one queued at a time.
+ * - inputs: Per-agent topic table used when conflating; holds the latest unconsumed value of each topic.
+ * - changed: Lock-free stack of the inputs holding a value the worker has not taken yet (CONFLATE). Each input
+ *            is on it at most once, so any number of input topics can be pending without filling the inbox.
+ * - scheduled: The "drain task already submitted" flag (POOLED mode).
+ * - idleStrategy: What the worker thread does while the inbox is empty (THREAD and VIRTUAL modes).
+ * - stop / terminated: Shutdown flag and the latch the worker counts down once it has stopped.
  */
 public class ParallelAgent implements Agent {
 
+    // Maximum number of messages handled by one drain before yielding the worker to other agents
+    private static final int DRAIN_BATCH = 64;
+
+    // Pooled agents never own a thread to block, so they get some headroom before publishers have to wait
+    private static final int POOLED_MIN_CAPACITY = 64;
+
+    // Flag on an inbox event's topic ID: store the value in a ComputeAgent without evaluating (a transaction continues)
+    private static final int UPDATE_ONLY = 1 << 30;
+
+    // Bit pattern marking a conflation slot with no pending value; a NaN payload no real message carries
+    private static final long EMPTY = 0x7ff8_dead_beef_0001L;
+
+    // One input topic of the wrapped agent
+    private static final class Input {
+        final int topicId;
+        final AtomicLong latest = new AtomicLong(EMPTY); // Raw bits of the newest unconsumed value (CONFLATE)
+        Input next; // Link in the changed stack, published by the push's compare-and-set
+
+        Input(int topicId) {
+            this.topicId = topicId;
+        }
+    }
+
     Agent agent;
-    ArrayBlockingQueue<Message> queue;
-    private boolean stop = false;
+    private final AgentInbox inbox;
+    private volatile boolean stop = false;
+
+    private final ExecutionMode mode;
+    private final BackpressurePolicy policy;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    // Topics seen so far when conflating
+    private volatile Input[] inputs = new Input[0];
+
+    // Inputs given a value since the worker last took them, newest first, and whether a wake-up is queued
+    private final AtomicReference<Input> changed = new AtomicReference<>();
+    private final AtomicBoolean signalled = new AtomicBoolean(false);
+
+    // Events sitting in the inbox or being processed by the wrapped agent
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Messages that never reached the agent because a newer value replaced them or they were dropped
+    private final AtomicLong discarded = new AtomicLong();
+
+    // Exceptions the wrapped agent threw, and the most recent one; a failing agent keeps its worker running
+    private final AtomicLong failures = new AtomicLong();
+    private volatile RuntimeException lastFailure = null;
+
+    // Set while a conflated batch has fed inputs to a ComputeAgent that still needs evaluating
+    private boolean evaluationDue = false;
+
+    // Consumer side of the inbox, created once so draining allocates nothing
+    private final AgentInbox.Handler dispatcher;
 
     /*
      * Constructor for initializing a ParallelAgent with a defined capacity.
-     * Launches a background worker thread that processes messages pulled from the queue.
+     * Launches a background worker thread that processes messages pulled from the inbox.
      *
      * @param agent The core agent that handles message logic.
-     * @param capacity Maximum number of messages the queue can hold simultaneously.
+     * @param capacity Maximum number of messages the inbox can hold simultaneously.
      */
     public ParallelAgent(Agent agent , int capacity){
+        this(agent, capacity, ExecutionMode.THREAD);
+    }
+
+    /*
+     * Constructor for initializing a ParallelAgent in a given execution mode, with a blocking inbox.
+     *
+     * @param agent The core agent that handles message logic.
+     * @param capacity Maximum number of messages the inbox can hold simultaneously (rounded up to a power of two).
+     * @param mode How the wrapped agent is executed.
+     */
+    public ParallelAgent(Agent agent, int capacity, ExecutionMode mode){
+        this(agent, capacity, mode, BackpressurePolicy.BLOCK);
+    }
+
+    /*
+     * Constructor for initializing a ParallelAgent in a given execution mode and backpressure policy,
+     * with a worker that blocks while idle.
+     *
+     * @param agent The core agent that handles message logic.
+     * @param capacity Maximum number of messages the inbox can hold simultaneously (rounded up to a power of two).
+     * @param mode How the wrapped agent is executed.
+     * @param policy What happens to messages arriving faster than the agent handles them.
+     */
+    public ParallelAgent(Agent agent, int capacity, ExecutionMode mode, BackpressurePolicy policy){
+        this(agent, capacity, mode, policy, new IdleStrategy.Block());
+    }
+
+    /*
+     * Constructor for initializing a ParallelAgent in a given execution mode, backpressure policy and idle strategy.
+     * THREAD and VIRTUAL modes launch a dedicated platform or virtual worker thread; POOLED mode starts
+     * nothing and only submits a drain task to the shared pool when messages arrive.
+     *
+     * @param agent The core agent that handles message logic.
+     * @param capacity Maximum number of messages the inbox can hold simultaneously (rounded up to a power of two).
+     * @param mode How the wrapped agent is executed.
+     * @param policy What happens to messages arriving faster than the agent handles them.
+     * @param idleStrategy What the worker does while the inbox is empty; ignored in POOLED mode.
+     * @throws IllegalArgumentException if mode is COMPILED, PARALLEL, BYTECODE, LAZY or FIXED_POINT, which run whole configurations rather than single agents.
+     */
+    public ParallelAgent(Agent agent, int capacity, ExecutionMode mode, BackpressurePolicy policy, IdleStrategy idleStrategy){
+        if (mode.isCompiled()) {
+            throw new IllegalArgumentException(mode + " mode applies to a whole configuration, see EvaluationPlan");
+        }
         this.agent = agent;
-        this.queue = new ArrayBlockingQueue<Message>(capacity);
-        new Thread(new Runnable() {
+        this.mode = mode;
+        this.policy = policy;
+        if (mode == ExecutionMode.POOLED) {
+            capacity = Math.max(capacity, POOLED_MIN_CAPACITY);
+        }
+        if (policy == BackpressurePolicy.CONFLATE) {
+            // Holds at most one wake-up signal besides the one being handled, and the stop signal
+            this.inbox = new AgentInbox(Math.max(capacity, 4));
+            this.dispatcher = this::dispatchConflated;
+        } else {
+            this.inbox = new AgentInbox(capacity, policy == BackpressurePolicy.DROP_OLDEST);
+            this.dispatcher = this::dispatch;
+        }
+        if (mode == ExecutionMode.POOLED) {
+            return;
+        }
+        Runnable worker = new Runnable() {
             public void run() {
                 while(!stop){
-                    try{
-                        Message message = queue.take(); // Blocks when queue is empty
-
-                        // Try to extract topic and content using regular expression
-                        Pattern pattern = Pattern.compile("Topic:(.*?) Message:(.*)");
-                        Matcher matcher = pattern.matcher(message.asText);
-                        String topic;
-                        String originalMessage;
-                        if (matcher.matches()) {
-                            topic = matcher.group(1).trim();
-                            originalMessage = matcher.group(2).trim();
-                            agent.callback(topic,new Message(originalMessage));
-                        }
-                        else{
-                            topic = message.asText;
-                            if(topic.matches("stop")){
-                                stop=true;
-                            }
-                        }
-                    }
-                    catch(InterruptedException e){
-                        // Swallow the interruption and retry
+                    int handled = inbox.drain(dispatcher, DRAIN_BATCH);
+                    finishBatch();
+                    if (handled > 0) {
+                        idleStrategy.reset();
+                    } else {
+                        inbox.idle(idleStrategy); // Spin, yield or park until work arrives
                     }
                 }
+                terminated.countDown();
+                discardLate();
             }
-        }).start();
+        };
+        if (mode == ExecutionMode.VIRTUAL) {
+            Thread.ofVirtual().start(worker);
+        } else {
+            new Thread(worker).start();
+        }
     }
 
     @Override
@@ -75,41 +188,331 @@ public class ParallelAgent implements Agent {
     }
 
     /*
-     * Called when a message is received. Prepares it by embedding topic info
-     * and submits it to the processing queue for deferred handling.
+     * Called when a message is received by topic name; resolves the name to its topic ID once.
      *
      * @param topic The subject or label associated with the message.
      * @param msg The message body to be forwarded for processing.
      */
     @Override
     public void callback(String topic, Message msg) {
-        String newmsgString = "Topic:" + topic + " Message:" + msg.asText;
-        Message newMessage = new Message(newmsgString);
+        callback(TopicManagerSingleton.get().getTopic(topic).id, msg);
+    }
+
+    /*
+     * Called when a message is received. Writes its topic ID and numeric value into the inbox
+     * for deferred handling; neither the message nor the topic name is copied.
+     * When conflating, the value overwrites the topic's slot instead; a slot that held no pending value is
+     * pushed on the changed stack, and the worker is signalled unless a signal is already queued, so the
+     * inbox never fills and publishers never wait, however many input topics the agent has.
+     * In POOLED mode a drain task is then submitted to the shared pool unless one is already scheduled.
+     *
+     * @param topicId The TopicManager ID of the topic the message was published on.
+     * @param msg The message body to be forwarded for processing.
+     */
+    @Override
+    public void callback(int topicId, Message msg) {
+        if (stop) {
+            return; // Closed, nobody will consume it
+        }
+        if (policy == BackpressurePolicy.CONFLATE) {
+            int index = inputIndex(topicId); // May grow the table, read it afterwards
+            Input input = inputs[index];
+            long bits = Double.doubleToLongBits(msg.asDouble); // Canonical NaN, never equal to EMPTY
+            if (input.latest.getAndSet(bits) != EMPTY) {
+                discarded.incrementAndGet(); // Replaced a value the agent had not seen yet
+                return;
+            }
+            pending.incrementAndGet();
+            Input head;
+            do {
+                head = changed.get();
+                input.next = head;
+            } while (!changed.compareAndSet(head, input));
+            if (signalled.compareAndSet(false, true)) {
+                inbox.put(0, 0);
+            }
+        } else {
+            pending.incrementAndGet();
+            enqueue(topicId, msg.asDouble);
+        }
+        if (stop) {
+            discardLate(); // Raced with close(), the worker may be gone
+            return;
+        }
+        if (mode == ExecutionMode.POOLED) {
+            scheduleDrain();
+        }
+    }
+
+    /*
+     * Called with the messages of a transaction. For a ComputeAgent every message but the last is queued as
+     * an update-only event, so the agent evaluates once, after taking all the new inputs.
+     * Conflating agents already evaluate once per drained batch, so they take the messages one by one.
+     *
+     * @param topicIds The TopicManager IDs of the topics the messages were published on.
+     * @param msgs The messages, one per topic.
+     */
+    @Override
+    public void callbackAll(int[] topicIds, Message[] msgs) {
+        if (policy == BackpressurePolicy.CONFLATE || !(agent instanceof ComputeAgent)) {
+            Agent.super.callbackAll(topicIds, msgs);
+            return;
+        }
+        if (stop) {
+            return;
+        }
+        int last = topicIds.length - 1;
+        for (int i = 0; i <= last; i++) {
+            pending.incrementAndGet();
+            enqueue(i < last ? topicIds[i] | UPDATE_ONLY : topicIds[i], msgs[i].asDouble);
+        }
+        if (stop) {
+            discardLate();
+            return;
+        }
+        if (mode == ExecutionMode.POOLED) {
+            scheduleDrain();
+        }
+    }
+
+    /*
+     * Writes an event into the inbox, accounting for any older events a drop-oldest inbox discarded.
+     */
+    private void enqueue(int topicId, double value) {
+        int dropped = inbox.put(topicId, value);
+        if (dropped > 0) {
+            pending.addAndGet(-dropped);
+            discarded.addAndGet(dropped);
+        }
+    }
+
+    /*
+     * Hands one event from the inbox to the wrapped agent, or stops the worker on the stop signal.
+     * Only the numeric value travels through the inbox, so the agent receives a fresh numeric Message.
+     */
+    private void dispatch(int topicId, double value, long sequence) {
+        if (topicId == AgentInbox.STOP) {
+            stop = true;
+            return;
+        }
+        try {
+            if (stop) {
+                return;
+            }
+            if ((topicId & UPDATE_ONLY) != 0) {
+                ((ComputeAgent) agent).update(topicId & ~UPDATE_ONLY, value);
+            } else {
+                agent.callback(topicId, new Message(value));
+            }
+        } catch (RuntimeException ex) {
+            fail(ex);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    /*
+     * Handles a wake-up signal: takes the whole changed stack and the newest value of each input on it, in the
+     * order the inputs changed. The signal is cleared first, so an input pushed after the stack was taken
+     * queues a new one. A ComputeAgent only has the inputs stored here; finishBatch() evaluates it once
+     * after the whole batch. Other agents get a regular callback.
+     */
+    private void dispatchConflated(int signal, double ignored, long sequence) {
+        if (signal == AgentInbox.STOP) {
+            stop = true;
+            return;
+        }
+        signalled.set(false);
+        Input newest = changed.getAndSet(null);
+        Input oldest = null;
+        while (newest != null) { // Reverse the links before any input is released for another push
+            Input next = newest.next;
+            newest.next = oldest;
+            oldest = newest;
+            newest = next;
+        }
+        while (oldest != null) {
+            Input input = oldest;
+            oldest = input.next;
+            input.next = null;
+            double value = Double.longBitsToDouble(input.latest.getAndSet(EMPTY));
+            try {
+                if (stop) {
+                    continue;
+                }
+                if (agent instanceof ComputeAgent) {
+                    ((ComputeAgent) agent).update(input.topicId, value);
+                    evaluationDue = true;
+                } else {
+                    agent.callback(input.topicId, new Message(value));
+                }
+            } catch (RuntimeException ex) {
+                fail(ex);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    /*
+     * Runs after each drained batch: a ComputeAgent that received conflated inputs computes once.
+     */
+    private void finishBatch() {
+        if (!evaluationDue) {
+            return;
+        }
+        evaluationDue = false;
+        pending.incrementAndGet(); // Keep isIdle() false until the output has been published
         try {
-            queue.put(newMessage);
+            if (!stop) {
+                ((ComputeAgent) agent).evaluate();
+            }
+        } catch (RuntimeException ex) {
+            fail(ex);
+        } finally {
+            pending.decrementAndGet();
         }
-        catch (InterruptedException e) {
-            // Silently ignore interruption
+    }
+
+    /*
+     * Returns the index of a topic in the inputs table, registering it on first use.
+     * Agents have a handful of inputs, so scanning for the ID is cheaper than hashing.
+     */
+    private int inputIndex(int topicId) {
+        Input[] current = inputs;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].topicId == topicId) {
+                return i;
+            }
+        }
+        return registerInput(topicId);
+    }
+
+    // Copy-on-write registration; only happens the first time a topic delivers to this agent
+    private synchronized int registerInput(int topicId) {
+        Input[] current = inputs;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].topicId == topicId) {
+                return i;
+            }
         }
+        Input[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = new Input(topicId);
+        inputs = grown;
+        return current.length;
     }
 
     /*
-     * Gracefully shuts down this agent by sending a termination signal to the thread.
-     * Waits for the processing loop to acknowledge shutdown before releasing the wrapped agent.
+     * Submits a drain task to the shared pool if none is scheduled yet.
+     * The flag guarantees at most one drain per agent runs at a time.
+     */
+    private void scheduleDrain() {
+        if (scheduled.compareAndSet(false, true)) {
+            AgentScheduler.schedule(this::drain);
+        }
+    }
+
+    /*
+     * Runs on a pool worker: hands up to DRAIN_BATCH messages to the wrapped agent, each to completion.
+     * If messages remain afterwards, resubmits itself so other agents get a turn on this worker.
+     */
+    private void drain() {
+        inbox.drain(dispatcher, DRAIN_BATCH);
+        finishBatch();
+        if (stop) {
+            terminated.countDown();
+            discardLate();
+            return; // Leave the scheduled flag set so no further drain is ever submitted
+        }
+        scheduled.set(false);
+        // A publisher may have enqueued after our last poll but before the flag was cleared
+        if (!inbox.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /*
+     * Discards the events publishers racing with close() queued after the stop signal, which no worker will
+     * handle; dispatching them once stopped only balances the pending count, so isIdle() holds again.
+     * Does nothing until the worker has stopped: it runs this itself right after, and so does every publisher
+     * that finds the agent stopped after queuing, so no late event is missed. The lock keeps a single consumer.
+     */
+    private void discardLate() {
+        if (terminated.getCount() != 0) {
+            return;
+        }
+        synchronized (terminated) {
+            inbox.drain(dispatcher, Integer.MAX_VALUE);
+        }
+    }
+
+    /*
+     * Indicates whether every message handed to this agent has been fully processed.
+     *
+     * @return true if nothing is queued or being processed
+     */
+    public boolean isIdle() {
+        return pending.get() == 0;
+    }
+
+    /*
+     * @return the number of messages replaced by a newer value or dropped before reaching the agent
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /*
+     * Records an exception thrown by the wrapped agent; a failing agent must not take its worker down with it.
+     */
+    private void fail(RuntimeException ex) {
+        lastFailure = ex;
+        failures.incrementAndGet();
+    }
+
+    /*
+     * @return the number of messages the wrapped agent threw an exception on
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /*
+     * @return the most recent exception thrown by the wrapped agent, or null if it never failed
+     */
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    /*
+     * Gracefully shuts down this agent by sending a termination signal through the inbox.
+     * The signal is queued behind pending messages and wakes an idle worker; the caller then
+     * waits on a latch until the worker acknowledges it, before releasing the wrapped agent.
      */
     @Override
     public void close() {
+        enqueue(AgentInbox.STOP, Double.NaN);
+        if (mode == ExecutionMode.POOLED) {
+            scheduleDrain();
+        }
         try {
-            queue.put(new Message("stop"));
+            terminated.await();
         }
         catch (InterruptedException e) {
-            // Interruption ignored during shutdown
+            Thread.currentThread().interrupt();
         }
-        while(!stop){}
-
         agent.close();
-        agent.close(); // Called twice intentionally or possibly by mistake?
     }
 
     public Agent getAgent(){return agent;}
+
+    /*
+     * @return the execution mode this agent was deployed with
+     */
+    public ExecutionMode getMode(){return mode;}
+
+    /*
+     * @return the backpressure policy of this agent's inbox
+     */
+    public BackpressurePolicy getPolicy(){return policy;}
 }
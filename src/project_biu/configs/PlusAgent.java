@@ -1,18 +1,22 @@
 package project_biu.configs;
 
-import project_biu.graph.Agent;
+import project_biu.graph.ComputeAgent;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 
 // A basic arithmetic agent that adds two numbers from separate topics and outputs the result
-public class PlusAgent implements Agent {
+public class PlusAgent implements ComputeAgent {
 
     String name;                      // Unique agent name
     String firstTopicName;           // Name of the first input topic
-    private Double firstInputVal;    // Value received from the first topic
+    private double firstInputVal;    // Value received from the first topic
     String secondTopicName;          // Name of the second input topic
-    private Double secondInputVal;   // Value received from the second topic
+    private double secondInputVal;   // Value received from the second topic
     String outputTopicName;          // Name of the output topic
+    int firstTopicId;                // TopicManager ID of the first input topic
+    int secondTopicId;               // TopicManager ID of the second input topic
+    Topic outputTopic;               // Output topic, resolved once so publishing needs no lookup
     static int counter = 1;          // Counter to differentiate agent instances
 
     // Constructor sets up subscriptions and publishing channels
@@ -28,11 +32,16 @@ public class PlusAgent implements Agent {
         counter++;
 
         // Subscribe to both input topics
-        TopicManagerSingleton.get().getTopic(firstTopicName).subscribe(this);
-        TopicManagerSingleton.get().getTopic(secondTopicName).subscribe(this);
+        Topic firstTopic = TopicManagerSingleton.get().getTopic(firstTopicName);
+        Topic secondTopic = TopicManagerSingleton.get().getTopic(secondTopicName);
+        this.firstTopicId = firstTopic.id;
+        this.secondTopicId = secondTopic.id;
+        firstTopic.subscribe(this);
+        secondTopic.subscribe(this);
 
         // Register as a publisher for the output topic
-        TopicManagerSingleton.get().getTopic(outputTopicName).addPublisher(this);
+        this.outputTopic = TopicManagerSingleton.get().getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
     }
 
     @Override
@@ -48,20 +57,47 @@ public class PlusAgent implements Agent {
     // Handle incoming messages and perform addition when both inputs are available
     @Override
     public void callback(String topic, Message msg) {
-        // Update stored value based on topic
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    // Update stored value based on topic
+    @Override
+    public void update(String topic, double value) {
         if(topic.equals(firstTopicName)){
-            firstInputVal = msg.asDouble;
+            firstInputVal = value;
         }
         if(topic.equals(secondTopicName)){
-            secondInputVal = msg.asDouble;
+            secondInputVal = value;
         }
+    }
 
-        // Check if both inputs are available before calculating
+    // Compares resolved IDs instead of topic names
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId == firstTopicId) {
+            firstInputVal = value;
+        }
+        if (topicId == secondTopicId) {
+            secondInputVal = value;
+        }
+    }
+
+    // Check if both inputs are available before calculating
+    @Override
+    public void evaluate() {
         if (!Double.isNaN(firstInputVal) && !Double.isNaN(secondInputVal)) {
-            Double outputVal = firstInputVal + secondInputVal;
+            double outputVal = firstInputVal + secondInputVal;
 
             // Publish result to the output topic
-            TopicManagerSingleton.get().getTopic(outputTopicName).publish(new Message(outputVal));
+            outputTopic.publish(new Message(outputVal));
         }
     }
 
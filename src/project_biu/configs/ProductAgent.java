@@ -0,0 +1,12 @@
+package project_biu.configs;
+
+/**
+ * Publishes the product of any number of input topics.
+ * Updating one input costs O(log k) for k inputs, see ReduceAgent.
+ */
+public class ProductAgent extends ReduceAgent {
+
+    public ProductAgent(String[] subs, String[] pubs) {
+        super(subs, pubs, "product", Operators.TIMES, 1);
+    }
+}
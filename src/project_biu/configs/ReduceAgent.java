@@ -0,0 +1,181 @@
+package project_biu.configs;
+
+import project_biu.graph.ComputeAgent;
+import project_biu.graph.Message;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * ReduceAgent combines any number of input topics with an associative and commutative operator
+ * (sum, product, min, max) and publishes the result to an output topic.
+ *
+ * The inputs are the leaves of a segment tree stored in one double array: leaf i lives at tree[k + i] and
+ * every inner node holds the operator applied to its two children, so tree[1] is the reduction of all k
+ * inputs. A new input value recomputes only the path from its leaf to the root, O(log k), instead of
+ * rescanning all k inputs; and unlike a running total updated with differences, the result is recomputed
+ * from the values themselves, so it does not drift.
+ *
+ * Like the binary agents, nothing is published until every input has a value.
+ * An input topic listed several times counts once per listing.
+ */
+public abstract class ReduceAgent implements ComputeAgent {
+    String name; // Unique name of this agent instance
+    String function; // Name of the reduction, for display
+    String[] inputTopicNames; // Input topic names, in leaf order
+    int[] inputTopicIds; // TopicManager IDs of the input topics, in leaf order
+    String outputTopicName; // Topic name where the result is published
+    Topic outputTopic; // Output topic, resolved once so publishing needs no lookup
+    final DoubleBinaryOperator operator;
+    final double identity; // Neutral value of the operator, held by leaves without a value
+    final int k; // Number of inputs
+    private final double[] tree;
+    private final boolean[] present; // Whether each input has a value
+    private int missing; // Number of inputs without a value
+    private final int[] firstLeaf; // By topic ID: the first leaf of that topic, or -1
+    private final int[] nextLeaf; // By leaf: the next leaf of the same topic, or -1
+    static int counter = 1; // Counter to generate unique agent names
+
+    /**
+     * @param subs The input topic names
+     * @param pubs A one-element array with the output topic name
+     * @param function Name of the reduction, used in the agent name
+     * @param operator An associative and commutative operator
+     * @param identity The operator's neutral value
+     * @throws IllegalArgumentException if there are no inputs
+     */
+    protected ReduceAgent(String[] subs, String[] pubs, String function, DoubleBinaryOperator operator, double identity) {
+        if (subs.length == 0) {
+            throw new IllegalArgumentException("A " + function + " needs at least one input");
+        }
+        this.inputTopicNames = Arrays.stream(subs).map(String::trim).toArray(String[]::new);
+        this.outputTopicName = pubs[0].trim();
+        this.function = function;
+        this.operator = operator;
+        this.identity = identity;
+        this.k = inputTopicNames.length;
+        this.tree = new double[2 * k];
+        this.present = new boolean[k];
+        this.missing = k;
+        Arrays.fill(tree, identity);
+
+        this.name = getClass().getSimpleName() + " " + counter;
+        counter++;
+
+        // Index the leaves by topic ID, then subscribe once to every distinct input topic
+        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
+        this.inputTopicIds = new int[k];
+        int maxId = 0;
+        for (int i = 0; i < k; i++) {
+            inputTopicIds[i] = tm.getTopic(inputTopicNames[i]).id;
+            maxId = Math.max(maxId, inputTopicIds[i]);
+        }
+        this.firstLeaf = new int[maxId + 1];
+        this.nextLeaf = new int[k];
+        Arrays.fill(firstLeaf, -1);
+        for (int i = k - 1; i >= 0; i--) {
+            nextLeaf[i] = firstLeaf[inputTopicIds[i]];
+            firstLeaf[inputTopicIds[i]] = i;
+        }
+        for (int i = 0; i < k; i++) {
+            if (firstLeaf[inputTopicIds[i]] == i) {
+                tm.getTopic(inputTopicIds[i]).subscribe(this);
+            }
+        }
+
+        // Declare intent to publish on output topic
+        this.outputTopic = tm.getTopic(outputTopicName);
+        outputTopic.addPublisher(this);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(tree, identity);
+        Arrays.fill(present, false);
+        missing = k;
+    }
+
+    @Override
+    public void callback(String topic, Message msg) {
+        update(topic, msg.asDouble);
+        evaluate();
+    }
+
+    // Same as above for a topic identified by its ID, which is how topics deliver messages
+    @Override
+    public void callback(int topicId, Message msg) {
+        update(topicId, msg.asDouble);
+        evaluate();
+    }
+
+    @Override
+    public void update(String topic, double value) {
+        update(TopicManagerSingleton.get().getTopic(topic).id, value);
+    }
+
+    // Sets every leaf of the topic and recomputes their paths to the root
+    @Override
+    public void update(int topicId, double value) {
+        if (topicId >= firstLeaf.length) {
+            return;
+        }
+        for (int leaf = firstLeaf[topicId]; leaf >= 0; leaf = nextLeaf[leaf]) {
+            set(leaf, value);
+        }
+    }
+
+    private void set(int leaf, double value) {
+        boolean has = !Double.isNaN(value);
+        if (has != present[leaf]) {
+            present[leaf] = has;
+            missing += has ? -1 : 1;
+        }
+        int i = k + leaf;
+        tree[i] = has ? value : identity;
+        for (i >>>= 1; i >= 1; i >>>= 1) {
+            tree[i] = operator.applyAsDouble(tree[2 * i], tree[2 * i + 1]);
+        }
+    }
+
+    // Publishes the reduction once every input has a value
+    @Override
+    public void evaluate() {
+        if (missing == 0) {
+            outputTopic.publish(new Message(finish(tree[1], k)));
+        }
+    }
+
+    /**
+     * Turns the reduction of all inputs into the published result; the reduction itself by default.
+     *
+     * @param reduced the operator applied to all inputs
+     * @param count the number of inputs
+     * @return the value to publish
+     */
+    protected double finish(double reduced, int count) {
+        return reduced;
+    }
+
+    @Override
+    public void close() {}
+
+    // Getters for the formula and topic names
+    public String getFormula() {
+        return outputTopicName + " = " + function + "(" + String.join(", ", inputTopicNames) + ")";
+    }
+
+    public String[] getInputTopicNames() {
+        return inputTopicNames.clone();
+    }
+
+    public String getOutputTopicName() {
+        return outputTopicName;
+    }
+}
@@ -0,0 +1,12 @@
+package project_biu.configs;
+
+/**
+ * Publishes the sum of any number of input topics.
+ * Updating one input costs O(log k) for k inputs, see ReduceAgent.
+ */
+public class SumAgent extends ReduceAgent {
+
+    public SumAgent(String[] subs, String[] pubs) {
+        super(subs, pubs, "sum", Operators.PLUS, 0);
+    }
+}
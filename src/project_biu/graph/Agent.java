@@ -8,11 +8,23 @@ package project_biu.graph;
  * - getName(): Returns the identifier assigned to this agent.
  * - reset(): Clears or reinitializes the agent’s internal state.
  * - callback(String topic, Message msg): Handles a message associated with a specific topic.
+ * - callback(int topicId, Message msg): Same, with the topic identified by its TopicManager ID. Topics deliver
+ *   through this method; agents that resolved their input IDs up front override it to skip name lookups.
+ * - callbackAll(int[] topicIds, Message[] msgs): Handles several messages published together in one transaction.
+ *   By default they are handled one by one; agents that can apply them all before reacting override it.
  * - close(): Carries out any cleanup tasks before the agent is terminated.
  */
 public interface Agent {
     String getName();                         // Returns the agent's name
     void reset();                             // Resets the agent's state
     void callback(String topic, Message msg); // Handles a message from a given topic
+    default void callback(int topicId, Message msg) { // Handles a message from the topic with the given ID
+        callback(TopicManagerSingleton.get().getTopic(topicId).name, msg);
+    }
+    default void callbackAll(int[] topicIds, Message[] msgs) { // Handles messages published in one transaction
+        for (int i = 0; i < topicIds.length; i++) {
+            callback(topicIds[i], msgs[i]);
+        }
+    }
     void close();                             // Finalizes and releases agent resources
 }
@@ -0,0 +1,355 @@
+package project_biu.graph;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of non-negative ints compressed the way Roaring bitmaps are: values are grouped by their high 16 bits,
+ * and each group is stored in the cheapest of three containers.
+ * - array container: the low 16 bits of the values, sorted, in a char[]; used up to 4096 values (8 KB).
+ * - bitmap container: a long[1024] with one bit per possible low 16 bits (8 KB), for denser groups.
+ * - run container: an int[] of runs of consecutive values, each packed as start << 16 | (length - 1),
+ *   sorted; only created by optimize(), for groups that are mostly ranges.
+ * Groups are kept sorted by their high bits, so lookups are a binary search over the groups followed by
+ * a binary search or a bit test in one container, and iteration yields values in ascending order.
+ *
+ * Sets are filled by the classes of this package (add, or, then optimize once complete) and read-only
+ * for everyone else.
+ */
+public final class CompressedBitSet {
+
+    static final CompressedBitSet EMPTY = new CompressedBitSet();
+
+    // Largest array container; one more value and a bitmap (1024 longs) is smaller
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[0];           // High 16 bits of each group, ascending
+    private Object[] containers = new Object[0]; // Per group: char[] (array), long[] (bitmap) or int[] (runs)
+    private int[] cardinalities = new int[0];    // Per group: number of values
+    private int groups = 0;
+
+    /**
+     * Adds a value.
+     *
+     * @param value a non-negative int
+     */
+    void add(int value) {
+        char key = (char) (value >>> 16);
+        int g = Arrays.binarySearch(keys, 0, groups, key);
+        if (g < 0) {
+            insertGroup(-g - 1, key, new char[]{(char) value}, 1);
+        } else {
+            addLow(g, (char) value);
+        }
+    }
+
+    /**
+     * Adds every value of another set, group by group.
+     *
+     * @param other the set to add
+     */
+    void or(CompressedBitSet other) {
+        if (other == this) {
+            return;
+        }
+        for (int j = 0; j < other.groups; j++) {
+            int g = Arrays.binarySearch(keys, 0, groups, other.keys[j]);
+            if (g < 0) {
+                // Copied, since this set may be added to later and the other one may not change
+                insertGroup(-g - 1, other.keys[j], copy(other.containers[j]), other.cardinalities[j]);
+            } else {
+                orGroup(g, other.containers[j], other.cardinalities[j]);
+            }
+        }
+    }
+
+    /**
+     * Stores every group in its smallest container, and trims arrays to their size. Called once a set is complete.
+     */
+    void optimize() {
+        for (int g = 0; g < groups; g++) {
+            char[] values = values(containers[g], cardinalities[g]);
+            int runs = 0;
+            for (int k = 0; k < values.length; k++) {
+                if (k == 0 || values[k] != values[k - 1] + 1) {
+                    runs++;
+                }
+            }
+            long arrayBytes = values.length <= ARRAY_LIMIT ? 2L * values.length : Long.MAX_VALUE;
+            long bitmapBytes = 8192;
+            long runBytes = 4L * runs;
+            if (runBytes < Math.min(arrayBytes, bitmapBytes)) {
+                containers[g] = toRuns(values, runs);
+            } else if (arrayBytes <= bitmapBytes) {
+                containers[g] = values; // The container itself when it has no spare room
+            } else if (!(containers[g] instanceof long[])) {
+                containers[g] = toBitmap(values, values.length);
+            }
+        }
+        if (keys.length > groups) {
+            keys = Arrays.copyOf(keys, groups);
+            containers = Arrays.copyOf(containers, groups);
+            cardinalities = Arrays.copyOf(cardinalities, groups);
+        }
+    }
+
+    /**
+     * @return whether the set holds the value
+     */
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int g = Arrays.binarySearch(keys, 0, groups, (char) (value >>> 16));
+        if (g < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object container = containers[g];
+        if (container instanceof long[] bits) {
+            return (bits[low >>> 6] & (1L << low)) != 0;
+        }
+        if (container instanceof int[] runs) {
+            // Last run starting at or before low
+            int lo = 0;
+            int hi = runs.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (runs[mid] >>> 16 <= low) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            int start = runs[lo] >>> 16;
+            return start <= low && low <= start + (runs[lo] & 0xFFFF);
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinalities[g], low) >= 0;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int g = 0; g < groups; g++) {
+            total += cardinalities[g];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return groups == 0;
+    }
+
+    /**
+     * Calls an action for every value, in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int g = 0; g < groups; g++) {
+            int high = keys[g] << 16;
+            if (containers[g] instanceof long[] bits) {
+                for (int w = 0; w < bits.length; w++) {
+                    for (long word = bits[w]; word != 0; word &= word - 1) {
+                        action.accept(high | ((w << 6) + Long.numberOfTrailingZeros(word)));
+                    }
+                }
+            } else if (containers[g] instanceof int[] runs) {
+                for (int run : runs) {
+                    int start = run >>> 16;
+                    for (int v = start; v <= start + (run & 0xFFFF); v++) {
+                        action.accept(high | v);
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[g];
+                for (int k = 0; k < cardinalities[g]; k++) {
+                    action.accept(high | array[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the values, ascending
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] n = {0};
+        forEach(v -> values[n[0]++] = v);
+        return values;
+    }
+
+    /**
+     * @return an estimate of the memory the set takes, in bytes
+     */
+    public long sizeInBytes() {
+        long bytes = 48L + keys.length * 10L;
+        for (int g = 0; g < groups; g++) {
+            Object container = containers[g];
+            bytes += 16 + (container instanceof long[] bits ? bits.length * 8L
+                    : container instanceof int[] runs ? runs.length * 4L : ((char[]) container).length * 2L);
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private void addLow(int g, char low) {
+        if (containers[g] instanceof int[] runs) {
+            containers[g] = expand(runs, cardinalities[g]);
+        }
+        if (containers[g] instanceof long[] bits) {
+            long bit = 1L << low;
+            if ((bits[low >>> 6] & bit) == 0) {
+                bits[low >>> 6] |= bit;
+                cardinalities[g]++;
+            }
+            return;
+        }
+        char[] array = (char[]) containers[g];
+        int n = cardinalities[g];
+        int pos = Arrays.binarySearch(array, 0, n, low);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (n == ARRAY_LIMIT) {
+            long[] bits = toBitmap(array, n);
+            bits[low >>> 6] |= 1L << low;
+            containers[g] = bits;
+        } else {
+            if (n == array.length) {
+                array = Arrays.copyOf(array, Math.min(ARRAY_LIMIT, n * 2));
+                containers[g] = array;
+            }
+            System.arraycopy(array, pos, array, pos + 1, n - pos);
+            array[pos] = low;
+        }
+        cardinalities[g]++;
+    }
+
+    // Adds the values of another set's container to group g
+    private void orGroup(int g, Object container, int n) {
+        if (container instanceof long[] other) {
+            long[] bits = containers[g] instanceof long[] own ? own : toBitmap(values(containers[g], cardinalities[g]), cardinalities[g]);
+            int total = 0;
+            for (int w = 0; w < bits.length; w++) {
+                bits[w] |= other[w];
+                total += Long.bitCount(bits[w]);
+            }
+            containers[g] = bits;
+            cardinalities[g] = total;
+            return;
+        }
+        char[] values = values(container, n);
+        if (n <= 8 || containers[g] instanceof long[]) {
+            for (char low : values) {
+                addLow(g, low); // A few values, or a bitmap: no need to merge
+            }
+            return;
+        }
+        char[] own = values(containers[g], cardinalities[g]);
+        char[] merged = new char[own.length + n];
+        int i = 0;
+        int j = 0;
+        int m = 0;
+        while (i < own.length && j < n) {
+            if (own[i] < values[j]) {
+                merged[m++] = own[i++];
+            } else if (values[j] < own[i]) {
+                merged[m++] = values[j++];
+            } else {
+                merged[m++] = own[i++];
+                j++;
+            }
+        }
+        while (i < own.length) {
+            merged[m++] = own[i++];
+        }
+        while (j < n) {
+            merged[m++] = values[j++];
+        }
+        containers[g] = m > ARRAY_LIMIT ? toBitmap(merged, m) : merged;
+        cardinalities[g] = m;
+    }
+
+    private void insertGroup(int g, char key, Object container, int cardinality) {
+        if (groups == keys.length) {
+            int capacity = Math.max(1, groups * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, g, keys, g + 1, groups - g);
+        System.arraycopy(containers, g, containers, g + 1, groups - g);
+        System.arraycopy(cardinalities, g, cardinalities, g + 1, groups - g);
+        keys[g] = key;
+        containers[g] = container;
+        cardinalities[g] = cardinality;
+        groups++;
+    }
+
+    // The values of an array or run container, sorted, in an array of exactly their number
+    private static char[] values(Object container, int n) {
+        if (container instanceof char[] array) {
+            return array.length == n ? array : Arrays.copyOf(array, n);
+        }
+        char[] values = new char[n];
+        int k = 0;
+        if (container instanceof int[] runs) {
+            for (int run : runs) {
+                int start = run >>> 16;
+                for (int v = start; v <= start + (run & 0xFFFF); v++) {
+                    values[k++] = (char) v;
+                }
+            }
+        } else {
+            long[] bits = (long[]) container;
+            for (int w = 0; w < bits.length; w++) {
+                for (long word = bits[w]; word != 0; word &= word - 1) {
+                    values[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+        return values;
+    }
+
+    // A run container as an array or bitmap container, to add values to
+    private static Object expand(int[] runs, int n) {
+        char[] values = values(runs, n);
+        return n > ARRAY_LIMIT ? toBitmap(values, n) : Arrays.copyOf(values, Math.min(ARRAY_LIMIT, n + 1));
+    }
+
+    private static int[] toRuns(char[] values, int count) {
+        int[] runs = new int[count];
+        int r = -1;
+        for (int k = 0; k < values.length; k++) {
+            if (k == 0 || values[k] != values[k - 1] + 1) {
+                runs[++r] = values[k] << 16;
+            } else {
+                runs[r]++;
+            }
+        }
+        return runs;
+    }
+
+    private static long[] toBitmap(char[] array, int n) {
+        long[] bits = new long[1024];
+        for (int k = 0; k < n; k++) {
+            bits[array[k] >>> 6] |= 1L << array[k];
+        }
+        return bits;
+    }
+
+    private static Object copy(Object container) {
+        if (container instanceof long[] bits) {
+            return bits.clone();
+        }
+        // Runs are never modified, but expanded into a new container before adding to them
+        return container instanceof int[] ? container : ((char[]) container).clone();
+    }
+}
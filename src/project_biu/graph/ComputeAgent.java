@@ -0,0 +1,28 @@
+package project_biu.graph;
+
+/*
+ * An agent whose output depends only on the latest value of each of its input topics.
+ * Handling an input and evaluating the output are separate steps, so a caller holding several
+ * fresh inputs can feed them all and then compute (and publish) once.
+ *
+ * Contract:
+ * - update(String topic, double value): Stores the latest value of one input without publishing anything.
+ * - update(int topicId, double value): Same, with the input identified by its TopicManager ID.
+ * - evaluate(): Computes from the stored inputs and publishes the result if all inputs are available.
+ * - callback(topic, msg) behaves as update(topic, msg.asDouble) followed by evaluate().
+ * - callbackAll(topicIds, msgs) updates every input it was given, then evaluates once.
+ */
+public interface ComputeAgent extends Agent {
+    void update(String topic, double value); // Records the latest value received on an input topic
+    default void update(int topicId, double value) { // Records the latest value received on the topic with this ID
+        update(TopicManagerSingleton.get().getTopic(topicId).name, value);
+    }
+    void evaluate();                          // Computes and publishes the output from the stored inputs
+    @Override
+    default void callbackAll(int[] topicIds, Message[] msgs) { // Applies a whole transaction, then computes once
+        for (int i = 0; i < topicIds.length; i++) {
+            update(topicIds[i], msgs[i].asDouble);
+        }
+        evaluate();
+    }
+}
@@ -3,9 +3,10 @@ package project_biu.graph;
 import project_biu.configs.Node;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
-// A graph data structure implemented by extending ArrayList<Node>
+// A graph data structure implemented by extending ArrayList<Node>; built and analyzed through an IndexedGraph
 public class Graph extends ArrayList<Node> {
 
     // Constructor initializes the graph as an empty list
@@ -13,53 +14,37 @@ public class Graph extends ArrayList<Node> {
         super();
     }
 
-    // Checks if any node in the graph is part of a cycle
+    // Checks if any node in the graph is part of a cycle, in one linear pass over the nodes and edges
     public boolean hasCycles() {
-        for (Node node : this) {
-            if (node.hasCycles()) {
-                return true; // Cycle found
-            }
-        }
-        return false; // No cycles detected
+        return IndexedGraph.of(this).hasCycles();
     }
 
     // Builds the graph structure based on topic-agent relationships
     public void createFromTopics() {
-        Node topicNode;
-        Node agentSubNode;
-        Node agentPubNode;
-
-        // Access topics from the TopicManager
-        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
-        Collection<Topic> topics = tm.getTopics();
-
-        // Iterate over each topic to build connections
-        for (Topic topic : topics) {
-            topicNode = getNodeByName("T" + topic.name); // Create/lookup topic node
-
-            // Add edges from topic to each subscriber agent
-            for (Agent sub : topic.subs) {
-                agentSubNode = getNodeByName("A" + sub.getName());
-                topicNode.addEdge(agentSubNode);
-            }
+        createFrom(IndexedGraph.fromTopics());
+    }
 
-            // Add edges from each publishing agent to the topic
-            for (Agent pub : topic.pubs) {
-                agentPubNode = getNodeByName("A" + pub.getName());
-                agentPubNode.addEdge(topicNode);
+    // Same as above from an index already built, e.g. one that was also analyzed
+    public void createFrom(IndexedGraph index) {
+        // Reuse the nodes already in the graph, looked up by name once instead of by a scan per lookup
+        Map<String, Node> existing = new HashMap<>();
+        for (Node node : this) {
+            existing.putIfAbsent(node.getName(), node);
+        }
+        Node[] nodes = new Node[index.size()];
+        for (int v = 0; v < nodes.length; v++) {
+            nodes[v] = existing.get(index.name(v));
+            if (nodes[v] == null) {
+                nodes[v] = new Node(index.name(v)); // Create new node if not found
+                this.add(nodes[v]);
             }
         }
-    }
 
-    // Retrieves a node by name or creates and adds it if not found
-    private Node getNodeByName(String name) {
-        for (Node node : this) {
-            if (node.getName().equals(name)) {
-                return node; // Return existing node
+        // Add edges from topics to their subscribers and from publishers to their topics
+        for (int v = 0; v < nodes.length; v++) {
+            for (int k = index.edgeStart(v); k < index.edgeEnd(v); k++) {
+                nodes[v].addEdge(nodes[index.target(k)]);
             }
         }
-        Node newNode = new Node(name); // Create new node if not found
-        this.add(newNode);             // Add it to the graph
-        return newNode;                // Return the new node
     }
 }
@@ -0,0 +1,239 @@
+package project_biu.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Structure of an IndexedGraph, computed once in O(V + E) without recursion:
+ * - Strongly connected components (Tarjan's algorithm, with an explicit stack of nodes and edge positions).
+ *   Tarjan completes components in reverse topological order, so they are numbered backwards, which makes
+ *   component numbers a topological order of the condensed graph (every edge between two components goes
+ *   from a lower to a higher number).
+ * - A topological order of the nodes: nodes sorted by component. For an acyclic graph it is a plain
+ *   topological order; otherwise the members of a cycle are adjacent, in no particular order.
+ * - The depth of each node: the length of the longest path reaching its component in the condensed graph,
+ *   so nodes without predecessors have depth 0, and nodes of a cycle share one depth.
+ */
+public final class GraphAnalysis {
+
+    private final IndexedGraph graph;
+    private final int[] component;
+    private final int[] componentSize;
+    private final boolean[] selfLoop; // Per component: one of its nodes has an edge to itself
+    private final int[] order;
+    private final int[] depth;
+
+    GraphAnalysis(IndexedGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        this.component = new int[n];
+        int count = tarjan();
+        this.componentSize = new int[count];
+        this.selfLoop = new boolean[count];
+        for (int v = 0; v < n; v++) {
+            componentSize[component[v]]++;
+            for (int k = graph.edgeStart(v); k < graph.edgeEnd(v); k++) {
+                if (graph.target(k) == v) {
+                    selfLoop[component[v]] = true;
+                }
+            }
+        }
+
+        // Nodes by component, by counting sort
+        int[] start = new int[count + 1];
+        for (int v = 0; v < n; v++) {
+            start[component[v] + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            start[c + 1] += start[c];
+        }
+        this.order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[start[component[v]]++] = v;
+        }
+
+        // Longest path per component, relaxing edges in topological order
+        int[] componentDepth = new int[count];
+        for (int v : order) {
+            int d = componentDepth[component[v]] + 1;
+            for (int k = graph.edgeStart(v); k < graph.edgeEnd(v); k++) {
+                int c = component[graph.target(k)];
+                if (c != component[v] && componentDepth[c] < d) {
+                    componentDepth[c] = d;
+                }
+            }
+        }
+        this.depth = new int[n];
+        for (int v = 0; v < n; v++) {
+            depth[v] = componentDepth[component[v]];
+        }
+    }
+
+    // Fills component[] with reverse completion order numbers; returns the number of components
+    private int tarjan() {
+        int n = graph.size();
+        int[] index = new int[n];   // Discovery number + 1; 0 while unvisited
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] members = new int[n]; // Tarjan's stack of nodes whose component is still open
+        int memberTop = 0;
+        int[] calls = new int[n];   // The depth-first search path, instead of recursion
+        int[] nextEdge = new int[n]; // Per node on the path: the next edge to explore
+        int counter = 0;
+        int completed = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != 0) {
+                continue;
+            }
+            int callTop = 0;
+            calls[callTop++] = root;
+            index[root] = low[root] = ++counter;
+            nextEdge[root] = graph.edgeStart(root);
+            members[memberTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int v = calls[callTop - 1];
+                if (nextEdge[v] < graph.edgeEnd(v)) {
+                    int w = graph.target(nextEdge[v]++);
+                    if (index[w] == 0) {
+                        // Descend into w
+                        index[w] = low[w] = ++counter;
+                        nextEdge[w] = graph.edgeStart(w);
+                        members[memberTop++] = w;
+                        onStack[w] = true;
+                        calls[callTop++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+
+                // All edges of v explored: close its component if it is the root, then return to the caller
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = members[--memberTop];
+                        onStack[w] = false;
+                        component[w] = completed;
+                    } while (w != v);
+                    completed++;
+                }
+                callTop--;
+                if (callTop > 0) {
+                    int caller = calls[callTop - 1];
+                    low[caller] = Math.min(low[caller], low[v]);
+                }
+            }
+        }
+
+        // Renumber so that components come in topological order
+        for (int v = 0; v < n; v++) {
+            component[v] = completed - 1 - component[v];
+        }
+        return completed;
+    }
+
+    /**
+     * @return the number of strongly connected components
+     */
+    public int componentCount() {
+        return componentSize.length;
+    }
+
+    /**
+     * @return the component of a node; components are numbered in topological order
+     */
+    public int component(int node) {
+        return component[node];
+    }
+
+    /**
+     * @return whether a node lies on a cycle: its component has several nodes or it has an edge to itself
+     */
+    public boolean isCyclic(int node) {
+        int c = component[node];
+        return componentSize[c] > 1 || selfLoop[c];
+    }
+
+    /**
+     * @return true if the graph has a directed cycle
+     */
+    public boolean hasCycles() {
+        for (int c = 0; c < componentSize.length; c++) {
+            if (componentSize[c] > 1 || selfLoop[c]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the node IDs of every component forming a cycle, in topological order of the components
+     */
+    public List<int[]> cycles() {
+        List<int[]> cycles = new ArrayList<>();
+        int from = 0;
+        for (int c = 0; c < componentSize.length; c++) {
+            if (componentSize[c] > 1 || selfLoop[c]) {
+                cycles.add(Arrays.copyOfRange(order, from, from + componentSize[c]));
+            }
+            from += componentSize[c];
+        }
+        return cycles;
+    }
+
+    /**
+     * @return all node IDs, every node after the nodes it can be reached from (except within a cycle)
+     */
+    public int[] topologicalOrder() {
+        return order.clone();
+    }
+
+    /**
+     * @return the length of the longest path reaching a node, counting a cycle as a single step
+     */
+    public int depth(int node) {
+        return depth[node];
+    }
+
+    /**
+     * @return the largest depth of any node, or -1 for an empty graph
+     */
+    public int maxDepth() {
+        int max = -1;
+        for (int d : depth) {
+            max = Math.max(max, d);
+        }
+        return max;
+    }
+
+    /**
+     * @return the analyzed graph, to map node IDs back to names
+     */
+    public IndexedGraph getGraph() {
+        return graph;
+    }
+
+    // Summary such as "9 nodes, depth 4, no cycles" or "5 nodes, depth 2, cycles: [TA, Aplus, TB]"
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(graph.size()).append(" nodes, depth ").append(maxDepth());
+        List<int[]> cycles = cycles();
+        if (cycles.isEmpty()) {
+            return sb.append(", no cycles").toString();
+        }
+        sb.append(", cycles:");
+        for (int[] cycle : cycles) {
+            sb.append(" [");
+            for (int i = 0; i < cycle.length; i++) {
+                sb.append(i > 0 ? ", " : "").append(graph.name(cycle[i]));
+            }
+            sb.append("]");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,303 @@
+package project_biu.graph;
+
+import project_biu.configs.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directed graph stored as compressed sparse rows: nodes are dense integer IDs, and the targets of the edges
+ * leaving node v are targets[edgeStart[v]] up to targets[edgeStart[v + 1]], in the order they were added.
+ * A name-to-ID map, built on the first lookup by name, finds nodes in constant time. Apart from the names,
+ * the whole structure is two int arrays, instead of one Node object and one edge list per node.
+ *
+ * Node objects, for code working on Graph's representation, are only created when asked for (see nodes()).
+ * Graphs are built through a Builder, or from the topics and agents of the TopicManager with fromTopics(),
+ * and are immutable once built.
+ */
+public final class IndexedGraph {
+
+    private final String[] names;
+    private final int topicCount; // For graphs of topics: names are stored without the "T" / "A" prefix; -1 otherwise
+    private Map<String, Integer> ids; // Created on the first lookup by name
+    private final int[] edgeStart;
+    private final int[] targets;
+    private List<Node> nodes = null; // Node view, created on first use
+
+    private IndexedGraph(String[] names, int topicCount, int[] edgeStart, int[] targets) {
+        this.names = names;
+        this.topicCount = topicCount;
+        this.edgeStart = edgeStart;
+        this.targets = targets;
+    }
+
+    /**
+     * Collects nodes and edges, then lays the edges out by source in one counting pass.
+     */
+    public static final class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private int edgeCount = 0;
+
+        /**
+         * @param name a node name
+         * @return the ID of the node with that name, added to the graph if it is new
+         */
+        public int node(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        /**
+         * Adds a node without checking whether the name is taken, for callers whose names are unique anyway.
+         * Nodes added this way are not found by node().
+         *
+         * @param name a node name not used before
+         * @return the ID of the new node
+         */
+        public int addNode(String name) {
+            names.add(name);
+            return names.size() - 1;
+        }
+
+        /**
+         * Adds a directed edge between two nodes returned by node().
+         */
+        public void edge(int source, int target) {
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+            }
+            from[edgeCount] = source;
+            to[edgeCount] = target;
+            edgeCount++;
+        }
+
+        public IndexedGraph build() {
+            return build(-1);
+        }
+
+        private IndexedGraph build(int topicCount) {
+            int n = names.size();
+            int[] edgeStart = new int[n + 1];
+            for (int k = 0; k < edgeCount; k++) {
+                edgeStart[from[k] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                edgeStart[v + 1] += edgeStart[v];
+            }
+            int[] targets = new int[edgeCount];
+            int[] fill = Arrays.copyOf(edgeStart, n);
+            for (int k = 0; k < edgeCount; k++) {
+                targets[fill[from[k]]++] = to[k];
+            }
+            return new IndexedGraph(names.toArray(new String[0]), topicCount, edgeStart, targets);
+        }
+    }
+
+    /**
+     * Builds the graph of the current topics: a node "T" + name per topic and "A" + name per agent, with an
+     * edge from every topic to each of its subscribers and from every publisher to the topic.
+     * Topic nodes come first, with the topic's ID as node ID, then agent nodes in the order they are met;
+     * edges keep the subscription order.
+     *
+     * @return the graph
+     */
+    public static IndexedGraph fromTopics() {
+        TopicManagerSingleton.TopicManager tm = TopicManagerSingleton.get();
+        int topicCount = tm.getTopicCount();
+        Builder b = new Builder();
+        for (int t = 0; t < topicCount; t++) {
+            b.addNode(tm.getTopic(t).name); // Node ID = topic ID; the "T" prefix is added by name()
+        }
+        Map<String, Integer> agentNodes = new HashMap<>(); // Agents of the same name share a node
+        for (int t = 0; t < topicCount; t++) {
+            Topic topic = tm.getTopic(t);
+            for (Agent sub : topic.subs) {
+                b.edge(t, agentNode(b, agentNodes, sub));
+            }
+            for (Agent pub : topic.pubs) {
+                b.edge(agentNode(b, agentNodes, pub), t);
+            }
+        }
+        return b.build(topicCount);
+    }
+
+    private static int agentNode(Builder b, Map<String, Integer> agentNodes, Agent agent) {
+        Integer id = agentNodes.get(agent.getName());
+        if (id == null) {
+            id = b.addNode(agent.getName());
+            agentNodes.put(agent.getName(), id);
+        }
+        return id;
+    }
+
+    /**
+     * Indexes a graph of Node objects: the given nodes and every node reachable from them, told apart by
+     * identity rather than by name.
+     *
+     * @param nodes the nodes to start from
+     * @return the graph, whose IDs follow the order in which nodes were first met
+     */
+    public static IndexedGraph of(Collection<Node> nodes) {
+        Builder b = new Builder();
+        Map<Node, Integer> index = new IdentityHashMap<>();
+        List<Node> order = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (index.putIfAbsent(node, order.size()) == null) {
+                order.add(node);
+            }
+        }
+        for (int v = 0; v < order.size(); v++) {
+            for (Node target : order.get(v).getEdges()) {
+                Integer t = index.get(target);
+                if (t == null) {
+                    t = order.size();
+                    index.put(target, t);
+                    order.add(target);
+                }
+                b.edge(v, t);
+            }
+        }
+        for (Node node : order) {
+            b.addNode(node.getName()); // By position; a repeated name keeps its first ID in the name map
+        }
+        return b.build();
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param name a node name
+     * @return the node's ID, or -1 if there is no such node
+     */
+    public synchronized int id(String name) {
+        if (ids == null) {
+            ids = new HashMap<>(names.length * 2);
+            for (int v = 0; v < names.length; v++) {
+                ids.putIfAbsent(name(v), v);
+            }
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String name(int id) {
+        return topicCount < 0 ? names[id] : (id < topicCount ? "T" : "A") + names[id];
+    }
+
+    /**
+     * @return whether the node stands for a topic, in a graph built by fromTopics()
+     */
+    public boolean isTopic(int id) {
+        return id < topicCount;
+    }
+
+    /**
+     * Edges leaving a node are the positions edgeStart(v) up to edgeEnd(v), and target(k) is where edge k leads:
+     * <pre>
+     * for (int k = g.edgeStart(v); k &lt; g.edgeEnd(v); k++) { int w = g.target(k); ... }
+     * </pre>
+     */
+    public int edgeStart(int id) {
+        return edgeStart[id];
+    }
+
+    public int edgeEnd(int id) {
+        return edgeStart[id + 1];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * @return the IDs of the nodes a node has edges to, in insertion order
+     */
+    public int[] neighbours(int id) {
+        return Arrays.copyOfRange(targets, edgeStart[id], edgeStart[id + 1]);
+    }
+
+    /**
+     * Checks for a cycle with Kahn's algorithm: repeatedly removes nodes without incoming edges; whatever
+     * can't be removed lies on or behind a cycle. Linear in nodes and edges, and iterative, so deep graphs
+     * don't overflow the stack.
+     *
+     * @return true if the graph has a directed cycle
+     */
+    public boolean hasCycles() {
+        int n = names.length;
+        int[] indegree = new int[n];
+        for (int t : targets) {
+            indegree[t]++;
+        }
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (indegree[v] == 0) {
+                queue[tail++] = v;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int v = queue[head];
+            for (int k = edgeStart[v]; k < edgeStart[v + 1]; k++) {
+                if (--indegree[targets[k]] == 0) {
+                    queue[tail++] = targets[k];
+                }
+            }
+        }
+        return tail < n;
+    }
+
+    /**
+     * Computes the strongly connected components, a topological order and the depth of every node.
+     *
+     * @return the analysis, in O(V + E)
+     */
+    public GraphAnalysis analyze() {
+        return new GraphAnalysis(this);
+    }
+
+    /**
+     * @return one Node per ID, with its edges, created on the first call and shared by later ones
+     */
+    public synchronized List<Node> nodes() {
+        if (nodes == null) {
+            Node[] view = new Node[names.length];
+            for (int v = 0; v < view.length; v++) {
+                view[v] = new Node(name(v));
+            }
+            for (int v = 0; v < view.length; v++) {
+                for (int k = edgeStart[v]; k < edgeStart[v + 1]; k++) {
+                    view[v].addEdge(view[targets[k]]);
+                }
+            }
+            nodes = List.of(view);
+        }
+        return nodes;
+    }
+}
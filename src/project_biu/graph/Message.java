@@ -1,40 +1,46 @@
 package project_biu.graph;
 
 import java.util.Date;
+import java.util.Objects;
 
 /**
  * Represents a message exchanged between agents in the system.
  * A message can encapsulate data in multiple formats including text, binary (byte array), and numeric (double).
  * Additionally, each message includes a timestamp to indicate when it was created.
  *
- * The class provides constructors to automatically convert and store all relevant representations
- * of the input data, allowing agents to flexibly interpret the message according to their needs.
+ * The numeric value is always available directly through {@link #asDouble}. The text and byte views are
+ * only built the first time something asks for them, so numeric messages published by agents never pay
+ * for formatting a double into a string and parsing it back on every hop.
  */
 public class Message {
 
-    // The raw message data in byte format, useful for binary communication or encoding
-    public final byte[] data;
-
-    // The message represented as a plain string, suitable for logging or human-readable formats
-    public final String asText;
+    // Wall-clock and monotonic clock readings taken once, used to turn a monotonic timestamp into a Date
+    private static final long BASE_MILLIS = System.currentTimeMillis();
+    private static final long BASE_NANOS = System.nanoTime();
 
     // If the message content is numeric, it is parsed and stored here as a double.
     // If the input cannot be parsed as a number, this field will be set to NaN.
     public final double asDouble;
 
-    // Timestamp indicating when the message instance was created
-    public final Date date;
+    // Monotonic creation time of this message, as returned by System.nanoTime()
+    public final long timestamp;
+
+    // The message represented as a plain string, built lazily for numeric messages
+    private String asText;
+
+    // The raw message data in byte format, built lazily on first request
+    private byte[] data;
 
     /**
      * Constructs a Message from a given string input.
-     * Automatically stores the string as text, byte array, and attempts to parse it as a double.
+     * Stores the string as text and attempts to parse it as a double.
      * If parsing fails, the double field is set to NaN.
      *
      * @param asText the message content represented as a string
+     * @throws NullPointerException if asText is null
      */
     public Message(String asText) {
-        this.asText = new String(asText);      // Save original string
-        this.data = asText.getBytes();         // Convert to byte array for raw data usage
+        this.asText = Objects.requireNonNull(asText); // Strings are immutable, no defensive copy required
 
         double temp;
         try {
@@ -44,27 +50,68 @@ public class Message {
         }
 
         this.asDouble = temp;
-        this.date = new Date();                // Capture the current time as the creation timestamp
+        this.timestamp = System.nanoTime();    // Capture the current time as the creation timestamp
     }
 
     /**
      * Constructs a Message from a byte array.
-     * Internally converts the byte array to a string and delegates to the string constructor.
-     * This enables consistent behavior regardless of the input format.
+     * A copy of the bytes is kept, so later writes by the caller don't change a message its subscribers share,
+     * and they are decoded to text for numeric parsing.
      *
      * @param data the message data in byte array format
      */
     public Message(byte[] data) {
         this(new String(data)); // Convert to string and delegate to string constructor
+        this.data = data.clone();
     }
 
     /**
      * Constructs a Message from a numeric (double) input.
-     * Converts the number to a string for internal consistency and then stores it as text and byte array.
+     * Only the raw value and the timestamp are stored; the text and byte views are produced on demand.
      *
      * @param data the numeric content to be encapsulated in the message
      */
     public Message(double data) {
-        this(Double.toString(data)); // Convert to string and delegate to string constructor
+        this.asDouble = data;
+        this.timestamp = System.nanoTime();
+    }
+
+    /**
+     * Returns the message as a plain string, suitable for logging or human-readable formats.
+     * Numeric messages format their value the first time this is called.
+     *
+     * @return the text representation of this message
+     */
+    public String asText() {
+        String text = asText;
+        if (text == null) {
+            text = Double.toString(asDouble); // Benign race: every thread computes the same string
+            asText = text;
+        }
+        return text;
+    }
+
+    /**
+     * Returns the raw message data in byte format, useful for binary communication or encoding.
+     *
+     * @return the bytes of the text representation of this message
+     */
+    public byte[] getData() {
+        byte[] bytes = data;
+        if (bytes == null) {
+            bytes = asText().getBytes();
+            data = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the wall-clock time at which this message was created.
+     * Derived from the monotonic timestamp, so a Date is only allocated when asked for.
+     *
+     * @return the creation date of this message
+     */
+    public Date getDate() {
+        return new Date(BASE_MILLIS + (timestamp - BASE_NANOS) / 1_000_000L);
     }
 }
@@ -0,0 +1,143 @@
+package project_biu.graph;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether a value published on a topic is worth delivering, so that an agent recomputing the same
+ * output (an IncAgent fed the same value, a MulAgent with a zero input) does not set off its whole
+ * downstream cone again.
+ *
+ * A filter combines an optional change test against the topic's last delivered value with an optional
+ * minimum interval between deliveries:
+ * - EXACT: drops a value equal to the last one.
+ * - ABSOLUTE: drops a value within epsilon of the last one.
+ * - RELATIVE: drops a value within epsilon times the magnitude of the last one.
+ * - throttle: drops any value arriving less than the interval after the last delivered one. The dropped
+ *   value is lost, not delayed, so the topic may keep an older value until the next publish.
+ *
+ * Values are compared with the last delivered value, not the last published one, so a slow drift below
+ * epsilon is still delivered once it adds up. The first value on a topic always passes.
+ *
+ * In a config file a filter is set on the output topics of an agent with options on the class line,
+ * e.g. "project_biu.configs.MulAgent filter=abs epsilon=0.001 throttle=50".
+ */
+public final class OutputFilter {
+
+    public enum Change {
+        NONE,
+        EXACT,
+        ABSOLUTE,
+        RELATIVE
+    }
+
+    private final Change change;
+    private final double epsilon;
+    private final long intervalNanos;
+    private volatile long lastDelivered; // System.nanoTime() of the last delivered value, when throttling
+    private volatile boolean delivered = false;
+
+    // Statistics
+    private final LongAdder passed = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder savedDeliveries = new LongAdder();
+
+    /**
+     * @param change the change test
+     * @param epsilon the tolerance of ABSOLUTE and RELATIVE tests, ignored otherwise
+     * @param intervalMillis the minimum time between delivered values; 0 for no throttling
+     * @throws IllegalArgumentException if epsilon or the interval is negative
+     */
+    public OutputFilter(Change change, double epsilon, long intervalMillis) {
+        if (!(epsilon >= 0) || intervalMillis < 0) {
+            throw new IllegalArgumentException("Filter tolerance and interval must not be negative");
+        }
+        this.change = change;
+        this.epsilon = epsilon;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Creates the filter described by an agent's options: filter (exact, abs or rel), epsilon and throttle
+     * (in milliseconds).
+     *
+     * @param options the agent's options, by lower-case key
+     * @return the filter, or null if the options set none
+     * @throws IllegalArgumentException if an option value is invalid
+     */
+    public static OutputFilter fromOptions(Map<String, String> options) {
+        String filter = options.get("filter");
+        String epsilon = options.get("epsilon");
+        String throttle = options.get("throttle");
+        if (filter == null && throttle == null) {
+            return null;
+        }
+        Change change = switch (filter == null ? "none" : filter.trim().toLowerCase()) {
+            case "none" -> Change.NONE;
+            case "exact" -> Change.EXACT;
+            case "abs" -> Change.ABSOLUTE;
+            case "rel" -> Change.RELATIVE;
+            default -> throw new IllegalArgumentException("Unknown output filter: " + filter);
+        };
+        return new OutputFilter(change,
+                epsilon == null ? 0 : Double.parseDouble(epsilon),
+                throttle == null ? 0 : Long.parseLong(throttle.trim()));
+    }
+
+    /*
+     * Called by Topic.publish before delivering a value; previous is the topic's last delivered message and
+     * subscribers the number of agents a delivery would call, counted as saved when the value is dropped.
+     */
+    boolean accept(Message previous, double value, int subscribers) {
+        long now = intervalNanos > 0 ? System.nanoTime() : 0;
+        if (delivered && (unchanged(previous, value) || now - lastDelivered < intervalNanos)) {
+            suppressed.increment();
+            savedDeliveries.add(subscribers);
+            return false;
+        }
+        lastDelivered = now;
+        delivered = true;
+        passed.increment();
+        return true;
+    }
+
+    private boolean unchanged(Message previous, double value) {
+        if (previous == null || Double.isNaN(previous.asDouble) || Double.isNaN(value)) {
+            return false;
+        }
+        double last = previous.asDouble;
+        return switch (change) {
+            case NONE -> false;
+            case EXACT -> last == value;
+            case ABSOLUTE -> Math.abs(value - last) <= epsilon;
+            case RELATIVE -> Math.abs(value - last) <= epsilon * Math.abs(last);
+        };
+    }
+
+    /**
+     * @return the number of values delivered
+     */
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    /**
+     * @return the number of values dropped
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * @return the number of subscriber callbacks the dropped values would have made
+     */
+    public long getSavedDeliveries() {
+        return savedDeliveries.sum();
+    }
+
+    @Override
+    public String toString() {
+        return change.name().toLowerCase() + (change == Change.ABSOLUTE || change == Change.RELATIVE ? " " + epsilon : "")
+                + (intervalNanos > 0 ? " throttle " + intervalNanos / 1_000_000L + "ms" : "");
+    }
+}
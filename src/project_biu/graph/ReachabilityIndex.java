@@ -0,0 +1,193 @@
+package project_biu.graph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Precomputed answers to "which outputs does this node affect" and "which inputs feed this node", so that
+ * a query is a lookup instead of a search through the graph. Inputs are the nodes no edge leads to, outputs
+ * the nodes no edge leaves; in a graph of topics, the topics nobody publishes and nobody reads.
+ *
+ * The sets are computed once over the strongly connected components (see GraphAnalysis), with one set union per
+ * edge between components: the outputs reached from a component are its own outputs plus those reached from
+ * the components it leads to, taken in reverse topological order, and the inputs likewise in topological order.
+ * Sets are CompressedBitSets of node IDs, whose run containers store the ranges of IDs that topologically close
+ * nodes tend to reach in a few bytes. The nodes of a component share its sets, and a component whose set
+ * would equal the set of the one component it leads to (or comes from) reuses that set, so chains and
+ * diamonds of agents cost one set rather than one per node.
+ */
+public final class ReachabilityIndex {
+
+    private final GraphAnalysis analysis;
+    private final IndexedGraph graph;
+    private final CompressedBitSet[] outputs; // Per component: the outputs reachable from it
+    private final CompressedBitSet[] inputs;  // Per component: the inputs it is reachable from
+    private final boolean[] isInput;
+
+    /**
+     * Builds the index of an analyzed graph.
+     *
+     * @param analysis the graph's analysis
+     */
+    public ReachabilityIndex(GraphAnalysis analysis) {
+        this.analysis = analysis;
+        this.graph = analysis.getGraph();
+        int n = graph.size();
+        int count = analysis.componentCount();
+
+        // Incoming edges, in the same compressed form as the outgoing ones
+        int[] inStart = new int[n + 1];
+        for (int k = 0; k < graph.edgeCount(); k++) {
+            inStart[graph.target(k) + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inStart[v + 1] += inStart[v];
+        }
+        int[] sources = new int[graph.edgeCount()];
+        int[] fill = inStart.clone();
+        for (int v = 0; v < n; v++) {
+            for (int k = graph.edgeStart(v); k < graph.edgeEnd(v); k++) {
+                sources[fill[graph.target(k)]++] = v;
+            }
+        }
+        this.isInput = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            isInput[v] = inStart[v] == inStart[v + 1];
+        }
+
+        // Members of each component: the topological order is grouped by component
+        int[] order = analysis.topologicalOrder();
+        int[] memberStart = new int[count + 1];
+        for (int v = 0; v < n; v++) {
+            memberStart[analysis.component(v) + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            memberStart[c + 1] += memberStart[c];
+        }
+
+        int[] seen = new int[count]; // Component + 1 of the last one that took this component's set, to union it once
+        this.outputs = new CompressedBitSet[count];
+        for (int c = count - 1; c >= 0; c--) {
+            outputs[c] = combine(c, order, memberStart, outputs, seen, false, null, null);
+        }
+        Arrays.fill(seen, 0);
+        this.inputs = new CompressedBitSet[count];
+        for (int c = 0; c < count; c++) {
+            inputs[c] = combine(c, order, memberStart, inputs, seen, true, inStart, sources);
+        }
+    }
+
+    /*
+     * The set of a component: its own members that are ends (outputs, or inputs when backwards) plus the sets of
+     * its neighbour components, already computed. Returns a neighbour's set itself when it is the only one
+     * contributing anything.
+     */
+    private CompressedBitSet combine(int c, int[] order, int[] memberStart, CompressedBitSet[] sets, int[] seen,
+                                     boolean backwards, int[] inStart, int[] sources) {
+        CompressedBitSet only = null;
+        boolean single = true;
+        boolean ends = false;
+        for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+            int v = order[m];
+            int from = backwards ? inStart[v] : graph.edgeStart(v);
+            int to = backwards ? inStart[v + 1] : graph.edgeEnd(v);
+            ends |= from == to;
+            for (int k = from; k < to; k++) {
+                CompressedBitSet s = sets[analysis.component(backwards ? sources[k] : graph.target(k))];
+                if (s == sets[c] || s.isEmpty() || s == only) {
+                    continue; // Within the component (not computed yet, so null), nothing, or the same set again
+                }
+                if (only == null) {
+                    only = s;
+                } else {
+                    single = false;
+                }
+            }
+        }
+        if (!ends && single) {
+            return only != null ? only : CompressedBitSet.EMPTY;
+        }
+
+        CompressedBitSet set = new CompressedBitSet();
+        for (int m = memberStart[c]; m < memberStart[c + 1]; m++) {
+            int v = order[m];
+            int from = backwards ? inStart[v] : graph.edgeStart(v);
+            int to = backwards ? inStart[v + 1] : graph.edgeEnd(v);
+            if (from == to) {
+                set.add(v);
+            }
+            for (int k = from; k < to; k++) {
+                int other = analysis.component(backwards ? sources[k] : graph.target(k));
+                if (other != c && seen[other] != c + 1) {
+                    seen[other] = c + 1;
+                    set.or(sets[other]);
+                }
+            }
+        }
+        set.optimize();
+        return set;
+    }
+
+    /**
+     * Builds the analysis and the index of a graph.
+     *
+     * @param graph the graph
+     * @return the index
+     */
+    public static ReachabilityIndex of(IndexedGraph graph) {
+        return new ReachabilityIndex(graph.analyze());
+    }
+
+    /**
+     * @return the IDs of the outputs a path leads to from the node, including the node if it is an output
+     */
+    public CompressedBitSet outputsOf(int node) {
+        return outputs[analysis.component(node)];
+    }
+
+    /**
+     * @return the IDs of the inputs a path leads from to the node, including the node if it is an input
+     */
+    public CompressedBitSet inputsOf(int node) {
+        return inputs[analysis.component(node)];
+    }
+
+    /**
+     * @return whether no edge leads to the node
+     */
+    public boolean isInput(int node) {
+        return isInput[node];
+    }
+
+    /**
+     * @return whether no edge leaves the node
+     */
+    public boolean isOutput(int node) {
+        return graph.edgeStart(node) == graph.edgeEnd(node);
+    }
+
+    /**
+     * @return the indexed graph, to map node IDs to names and back
+     */
+    public IndexedGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return an estimate of the memory the sets take, in bytes, counting shared sets once
+     */
+    public long sizeInBytes() {
+        Set<CompressedBitSet> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        long bytes = 0;
+        for (CompressedBitSet[] sets : new CompressedBitSet[][]{outputs, inputs}) {
+            for (CompressedBitSet set : sets) {
+                if (distinct.add(set)) {
+                    bytes += set.sizeInBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+}
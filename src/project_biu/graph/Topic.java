@@ -1,37 +1,69 @@
 package project_biu.graph;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Represents a communication channel or topic in a publish-subscribe messaging model.
  * Agents can subscribe to a topic to receive messages, and other agents can publish messages to it.
  * This class maintains lists of both publishing and subscribing agents, and handles broadcasting of messages.
+ *
+ * Both lists are immutable arrays that are replaced as a whole whenever they change (copy-on-write).
+ * Publishing only reads the current array, so it takes no lock and is safe while other threads subscribe
+ * or unsubscribe; a publish that is already running keeps delivering to the array it started with.
+ *
+ * Topics with a very large number of subscribers deliver in parallel chunks on a ForkJoinPool of their own,
+ * above a threshold configurable per topic, so fan-outs never compete with the compiled plans for the common
+ * pool. Publishing is still synchronous: publish() returns once every subscriber has been called, and smaller
+ * fan-outs are delivered by a plain loop on the publishing thread.
  */
 public class Topic {
 
     // The unique name identifying this topic
     public final String name;
 
-    // A list of agents that are allowed to publish messages to this topic
-    List<Agent> pubs;
+    // Dense integer ID assigned by the TopicManager; index of this topic in its symbol table
+    public final int id;
 
-    // A list of agents that are subscribed to receive messages from this topic
-    List<Agent> subs;
+    private static final Agent[] NO_AGENTS = new Agent[0];
 
-    // Stores the last message published to the topic as plain text
-    private String lastMessage;
+    // Number of subscribers called by one fan-out task without splitting further
+    private static final int FAN_OUT_CHUNK = 256;
+
+    // Subscriber count from which publish() delivers in parallel, unless the topic sets another one
+    public static final int DEFAULT_PARALLEL_FAN_OUT = 4 * FAN_OUT_CHUNK;
+
+    // Subscriber count from which this topic's publish() delivers in parallel
+    private volatile int parallelFanOutThreshold = DEFAULT_PARALLEL_FAN_OUT;
+
+    // The agents that are allowed to publish messages to this topic; never modified in place
+    volatile Agent[] pubs;
+
+    // The agents that are subscribed to receive messages from this topic; never modified in place
+    volatile Agent[] subs;
+
+    // Stores the last message published to the topic; its text is only built when read
+    private volatile Message lastMessage;
+
+    // Drops published values not worth delivering; null delivers everything
+    private volatile OutputFilter filter = null;
+
+    // Runs before the last message is read, so a lazily evaluated producer can bring it up to date
+    private volatile Runnable readHook = null;
 
     /**
      * Creates a new topic instance with a specific name.
      * Initializes internal structures to track agents that publish or subscribe to this topic.
      *
      * @param name The identifier name of the topic
+     * @param id   The integer ID the TopicManager assigned to the name
      */
-    Topic(String name) {
+    Topic(String name, int id) {
         this.name = name;
-        this.pubs = new ArrayList<>();
-        this.subs = new ArrayList<>();
+        this.id = id;
+        this.pubs = NO_AGENTS;
+        this.subs = NO_AGENTS;
     }
 
     /**
@@ -40,8 +72,8 @@ public class Topic {
      *
      * @param a The agent that wishes to subscribe to this topic
      */
-    public void subscribe(Agent a) {
-        this.subs.add(a);
+    public synchronized void subscribe(Agent a) {
+        this.subs = append(this.subs, a);
     }
 
     /**
@@ -50,21 +82,149 @@ public class Topic {
      *
      * @param a The agent to be unsubscribed from this topic
      */
-    public void unsubscribe(Agent a) {
-        this.subs.remove(a);
+    public synchronized void unsubscribe(Agent a) {
+        this.subs = remove(this.subs, a);
+    }
+
+    /**
+     * Replaces every subscription of one agent with another, keeping its position in the delivery order.
+     * Used when an agent that subscribed itself is wrapped by a proxy which should receive its messages instead.
+     *
+     * @param a           The currently subscribed agent
+     * @param replacement The agent that takes over its subscriptions
+     */
+    public synchronized void replaceSubscriber(Agent a, Agent replacement) {
+        Agent[] updated = this.subs.clone();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == a) {
+                updated[i] = replacement;
+            }
+        }
+        this.subs = updated;
     }
 
     /**
      * Broadcasts a message to all subscribed agents.
-     * Each subscriber's callback method is called with the topic name and the message.
-     * Also stores the text of the last message for record-keeping or future reference.
+     * Each subscriber's callback method is called with the topic ID and the message.
+     * Also keeps the last message for record-keeping or future reference.
+     * When the topic has an output filter that drops the message, nothing is delivered or kept.
      *
      * @param m The message to be delivered to all subscribers
+     * @return false if the topic's output filter dropped the message
+     */
+    public boolean publish(Message m) {
+        Agent[] current = this.subs; // Single volatile read; later (un)subscriptions don't affect this delivery
+        if (!offer(m, current.length)) {
+            return false;
+        }
+        if (current.length >= parallelFanOutThreshold) {
+            FanOutPool.POOL.invoke(new FanOut(current, 0, current.length, m));
+            return true;
+        }
+        for (int i = 0; i < current.length; i++) {
+            current[i].callback(id, m); // Notify each subscribed agent
+        }
+        return true;
+    }
+
+    /**
+     * Sets the filter deciding which published values this topic delivers.
+     * The filter also applies to the values of a TopicManager.publishAll transaction.
+     *
+     * @param filter the filter, or null to deliver every value
      */
-    public void publish(Message m) {
-        lastMessage = m.asText; // Store the message for future reference
-        for (Agent a : this.subs) {
-            a.callback(name, m); // Notify each subscribed agent
+    public void setFilter(OutputFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the topic's output filter, or null if it has none
+     */
+    public OutputFilter getFilter() {
+        return filter;
+    }
+
+    // Holds the pool parallel fan-outs run on, created by the first one
+    private static final class FanOutPool {
+        static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    // Delivers a message to a range of subscribers, splitting it in halves down to FAN_OUT_CHUNK subscribers
+    @SuppressWarnings("serial") // Never serialized; RecursiveAction is only Serializable by inheritance
+    private final class FanOut extends RecursiveAction {
+        private final Agent[] agents;
+        private final int lo;
+        private final int hi;
+        private final Message m;
+
+        FanOut(Agent[] agents, int lo, int hi, Message m) {
+            this.agents = agents;
+            this.lo = lo;
+            this.hi = hi;
+            this.m = m;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= FAN_OUT_CHUNK) {
+                for (int i = lo; i < hi; i++) {
+                    agents[i].callback(id, m);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new FanOut(agents, lo, mid, m), new FanOut(agents, mid, hi, m));
+        }
+    }
+
+    /**
+     * Sets the number of subscribers from which this topic delivers a message in parallel.
+     * Subscribers of such a topic may be called concurrently from several pool threads.
+     * Topics start with DEFAULT_PARALLEL_FAN_OUT, so TopicManager.clear() resets every threshold.
+     *
+     * @param threshold the smallest fan-out delivered in parallel; Integer.MAX_VALUE turns parallel delivery off
+     */
+    public void setParallelFanOutThreshold(int threshold) {
+        parallelFanOutThreshold = threshold;
+    }
+
+    /**
+     * @return the number of subscribers from which this topic delivers a message in parallel
+     */
+    public int getParallelFanOutThreshold() {
+        return parallelFanOutThreshold;
+    }
+
+    /*
+     * Keeps a message as the topic's latest, for future reference, unless the output filter drops it; does not
+     * deliver it. Shared by publish() and TopicManager.publishAll, which delivers the messages of a transaction
+     * itself once every topic in it holds its new value. subscribers is the number of agents a delivery calls.
+     */
+    boolean offer(Message m, int subscribers) {
+        OutputFilter f = filter;
+        if (f != null && !f.accept(lastMessage, m.asDouble, subscribers)) {
+            return false;
+        }
+        lastMessage = m;
+        return true;
+    }
+
+    /**
+     * Sets code to run before every read of the topic's last message, letting a producer that evaluates
+     * lazily (see EvaluationPlan.setLazy) compute the value only when someone asks for it.
+     * The hook typically publishes the up-to-date value on this topic.
+     *
+     * @param hook the code to run, or null for plain reads
+     */
+    public void setReadHook(Runnable hook) {
+        this.readHook = hook;
+    }
+
+    // Lets a lazy producer update the topic before a read
+    private void beforeRead() {
+        Runnable hook = readHook;
+        if (hook != null) {
+            hook.run();
         }
     }
 
@@ -74,8 +234,8 @@ public class Topic {
      *
      * @param a The agent to be registered as a publisher
      */
-    public void addPublisher(Agent a) {
-        this.pubs.add(a);
+    public synchronized void addPublisher(Agent a) {
+        this.pubs = append(this.pubs, a);
     }
 
     /**
@@ -84,8 +244,42 @@ public class Topic {
      *
      * @param a The agent to be removed from the list of publishers
      */
-    public void removePublisher(Agent a) {
-        this.pubs.remove(a);
+    public synchronized void removePublisher(Agent a) {
+        this.pubs = remove(this.pubs, a);
+    }
+
+    // Returns a copy of the array with the agent added at the end
+    private static Agent[] append(Agent[] agents, Agent a) {
+        Agent[] grown = Arrays.copyOf(agents, agents.length + 1);
+        grown[agents.length] = a;
+        return grown;
+    }
+
+    // Returns a copy of the array without the first occurrence of the agent (as List.remove did)
+    private static Agent[] remove(Agent[] agents, Agent a) {
+        for (int i = 0; i < agents.length; i++) {
+            if (agents[i].equals(a)) {
+                Agent[] shrunk = new Agent[agents.length - 1];
+                System.arraycopy(agents, 0, shrunk, 0, i);
+                System.arraycopy(agents, i + 1, shrunk, i, agents.length - i - 1);
+                return shrunk;
+            }
+        }
+        return agents;
+    }
+
+    /**
+     * @return a copy of the agents currently subscribed to this topic
+     */
+    public Agent[] getSubscribers() {
+        return subs.clone();
+    }
+
+    /**
+     * @return a copy of the agents registered as publishers of this topic
+     */
+    public Agent[] getPublishers() {
+        return pubs.clone();
     }
 
     /**
@@ -95,6 +289,18 @@ public class Topic {
      * @return A string representing the last message published on this topic
      */
     public String getLastMessage() {
+        beforeRead();
+        Message m = lastMessage;
+        return m != null ? m.asText() : null;
+    }
+
+    /**
+     * Retrieves the most recently published message itself, giving direct access to its numeric value.
+     *
+     * @return the last message published on this topic, or null if nothing was published yet
+     */
+    public Message getLastMessageObject() {
+        beforeRead();
         return lastMessage;
     }
 }
@@ -1,5 +1,10 @@
 package project_biu.graph;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Collection;
 
@@ -26,6 +31,9 @@ public class TopicManagerSingleton {
      * TopicManager is a static inner class responsible for managing a collection of Topic objects.
      * It uses a thread-safe data structure (ConcurrentHashMap) to allow concurrent access and updates,
      * ensuring that the system behaves correctly even when accessed by multiple threads.
+     *
+     * It also acts as a symbol table: every topic is given a dense integer ID (0, 1, 2, ...) when it is
+     * created, so agents can resolve names once at deploy time and then identify topics by index.
      */
     public static class TopicManager {
 
@@ -35,6 +43,12 @@ public class TopicManagerSingleton {
         // A thread-safe map storing topics by their names
         ConcurrentHashMap<String, Topic> topicMap;
 
+        // Topics indexed by their ID; replaced (never modified in place) when it has to grow
+        private volatile Topic[] topicsById;
+
+        // The ID the next created topic receives
+        private int nextId;
+
         /**
          * Private constructor to enforce the singleton pattern.
          * Prevents external classes from creating multiple instances of TopicManager.
@@ -42,6 +56,8 @@ public class TopicManagerSingleton {
          */
         private TopicManager() {
             topicMap = new ConcurrentHashMap<>();
+            topicsById = new Topic[16];
+            nextId = 0;
         }
 
         /**
@@ -55,12 +71,98 @@ public class TopicManagerSingleton {
         public Topic getTopic(String topicName) {
             Topic topic = topicMap.get(topicName);
             if (topic == null) {
-                topic = new Topic(topicName);
-                topicMap.put(topicName, topic);
+                topic = createTopic(topicName);
+            }
+            return topic;
+        }
+
+        // Creates a topic under the lock, so two threads asking for the same new name get one topic and one ID
+        private synchronized Topic createTopic(String topicName) {
+            Topic topic = topicMap.get(topicName);
+            if (topic != null) {
+                return topic;
+            }
+            topic = new Topic(topicName, nextId);
+            Topic[] byId = topicsById;
+            if (nextId == byId.length) {
+                byId = Arrays.copyOf(byId, byId.length * 2);
+            }
+            byId[nextId] = topic;
+            topicsById = byId; // Volatile write publishes the new slot to lock-free readers
+            nextId++;
+            topicMap.put(topicName, topic);
+            return topic;
+        }
+
+        /**
+         * Retrieves a topic by the integer ID it was given when created.
+         * This is a plain array access, meant for hot paths that resolved the ID beforehand.
+         *
+         * @param id the topic's ID, as found in Topic.id
+         * @return the Topic with that ID
+         * @throws IndexOutOfBoundsException if no topic has that ID
+         */
+        public Topic getTopic(int id) {
+            Topic topic = topicsById[id];
+            if (topic == null) {
+                throw new IndexOutOfBoundsException("No topic with ID " + id);
             }
             return topic;
         }
 
+        /**
+         * @return the number of topics created so far; valid IDs range from 0 to this value minus one
+         */
+        public synchronized int getTopicCount() {
+            return nextId;
+        }
+
+        /**
+         * Publishes several topic values as one transaction, so agents never react to a mix of old and new inputs.
+         * Every topic first takes its new value, then each subscriber receives all the messages of the topics
+         * it subscribes to in a single callbackAll call; a ComputeAgent applies them all and evaluates once.
+         *
+         * Agents subscribed directly to the published topics therefore evaluate exactly once. Further downstream,
+         * an agent fed by two changed branches is only guaranteed a single evaluation when the configuration runs
+         * in COMPILED mode, where the plan applies the whole transaction in one pass in topological order.
+         *
+         * A value dropped by its topic's output filter is left out of the transaction, as publish would drop it.
+         *
+         * @param messages the message to publish on each topic, by topic name, delivered in iteration order
+         */
+        public void publishAll(Map<String, Message> messages) {
+            Topic[] topics = new Topic[messages.size()];
+            Message[] msgs = new Message[topics.length];
+            int k = 0;
+            for (Map.Entry<String, Message> entry : messages.entrySet()) {
+                Topic topic = getTopic(entry.getKey());
+                if (topic.offer(entry.getValue(), topic.subs.length)) {
+                    topics[k] = topic;
+                    msgs[k] = entry.getValue();
+                    k++;
+                }
+            }
+
+            // Group the deliveries by subscriber, in the order subscribers are first met
+            Map<Agent, List<Integer>> deliveries = new LinkedHashMap<>();
+            for (int i = 0; i < k; i++) {
+                for (Agent a : topics[i].subs) {
+                    deliveries.computeIfAbsent(a, key -> new ArrayList<>()).add(i);
+                }
+            }
+
+            for (Map.Entry<Agent, List<Integer>> delivery : deliveries.entrySet()) {
+                List<Integer> indexes = delivery.getValue();
+                int[] topicIds = new int[indexes.size()];
+                Message[] agentMsgs = new Message[indexes.size()];
+                for (int j = 0; j < topicIds.length; j++) {
+                    topicIds[j] = topics[indexes.get(j)].id;
+                    agentMsgs[j] = msgs[indexes.get(j)];
+                }
+                delivery.getKey().callbackAll(topicIds, agentMsgs);
+            }
+        }
+
         /**
          * Provides access to all topics currently managed by this TopicManager.
          * This method returns a collection view of the topics, which can be used for
@@ -75,9 +177,12 @@ public class TopicManagerSingleton {
         /**
          * Removes all topics from the TopicManager.
          * This can be useful for resetting the system state during testing or reinitialization.
+         * IDs start again from 0, so IDs resolved before clearing must not be used afterwards.
          */
-        public void clear() {
+        public synchronized void clear() {
             topicMap.clear();
+            topicsById = new Topic[16];
+            nextId = 0;
         }
     }
 }
@@ -5,14 +5,23 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import project_biu.graph.TopicManagerSingleton;
 import project_biu.view.HtmlGraphWriter;
 
+import project_biu.configs.ConfigOptimizer;
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.FixedPoint;
 import project_biu.configs.GenericConfig;
+import project_biu.configs.IdleStrategy;
 import project_biu.graph.Graph;
+import project_biu.graph.GraphAnalysis;
+import project_biu.graph.IndexedGraph;
+import project_biu.graph.ReachabilityIndex;
 import project_biu.server.RequestParser.RequestInfo;
 
 /**
@@ -22,6 +31,12 @@ import project_biu.server.RequestParser.RequestInfo;
 public class ConfLoader implements Servlet {
     static public GenericConfig gc = null;
 
+    // Which inputs feed and which outputs depend on each topic of the deployed configuration, for /impact
+    static public ReachabilityIndex impact = null;
+
+    // Execution mode used for uploaded configurations unless the request asks for another one via ?mode=
+    static public ExecutionMode defaultMode = ExecutionMode.THREAD;
+
     /**
      * Processes an incoming POST request containing a configuration file.
      * Parses file content, updates internal state, creates graph structure, and sends a visual HTML response.
@@ -73,14 +88,50 @@ public class ConfLoader implements Servlet {
         if (filePath != null) {
             // Reset environment and create a new configuration instance
             gc = new GenericConfig();
+            impact = null;
             TopicManagerSingleton.get().clear();
             gc.setConfFile("temp_config");
+            ExecutionMode mode = resolveMode(requestInfo.getParameters().get("mode"));
+            gc.setExecutionMode(mode);
+            String idle = requestInfo.getParameters().get("idle");
+            if (idle != null) {
+                try {
+                    gc.setIdleStrategy(IdleStrategy.forName(idle));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage() + ", using the default");
+                }
+            }
+            // ?tolerance=, ?iterations= and ?damping= tune how FIXED_POINT solves feedback loops
+            try {
+                gc.setFixedPoint(FixedPoint.fromOptions(requestInfo.getParameters()));
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage() + ", using the default");
+            }
+            // ?optimize=true drops duplicated agents; every topic stays observable in the UI
+            ConfigOptimizer optimizer = null;
+            if ("true".equalsIgnoreCase(requestInfo.getParameters().get("optimize"))) {
+                optimizer = new ConfigOptimizer();
+                gc.setOptimizer(optimizer);
+            }
+            // ?fusion=true runs agents fed by a single producer on that producer's worker
+            if ("true".equalsIgnoreCase(requestInfo.getParameters().get("fusion"))) {
+                gc.setFusion(true);
+            }
 
             try {
                 gc.create(); // Apply the configuration to build agents/topics
+                IndexedGraph topology = IndexedGraph.fromTopics();
+                GraphAnalysis analysis = topology.analyze();
+                List<String> report = report(analysis, mode);
+                if (optimizer != null) {
+                    for (String change : optimizer.getReport()) {
+                        report.add("Optimizer " + change);
+                    }
+                }
+                impact = new ReachabilityIndex(analysis);
                 Graph configGraph = new Graph();
-                configGraph.createFromTopics(); // Generate the graph from system structure
-                String graphHtml = HtmlGraphWriter.getGraphHTML(configGraph);
+                configGraph.createFrom(topology); // Generate the graph from system structure
+                String graphHtml = HtmlGraphWriter.getGraphHTML(configGraph, report);
 
                 // Prepare and send an HTTP response containing the graph visualization
                 String httpResponse = "HTTP/1.1 200 OK\r\n" +
@@ -121,6 +172,43 @@ public class ConfLoader implements Servlet {
         // Nothing to release
     }
 
+    /**
+     * Chooses the execution mode for a deployment from the optional "mode" request parameter.
+     *
+     * @param requested the requested mode name (case-insensitive), may be null
+     * @return the matching mode, or the default mode if none or an unknown one was requested
+     */
+    private ExecutionMode resolveMode(String requested) {
+        if (requested == null) {
+            return defaultMode;
+        }
+        try {
+            return ExecutionMode.valueOf(requested.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown execution mode: " + requested + ", using " + defaultMode);
+            return defaultMode;
+        }
+    }
+
+    /**
+     * Describes the structure of the deployed configuration for the response page: its depth, which is the
+     * number of stages a value crosses from an input to the farthest output, and the topics and agents of each
+     * feedback loop, with a warning when the loop is not solved, since its agents then keep recomputing each other.
+     *
+     * @param analysis the analysis of the deployed topics and agents
+     * @param mode     the execution mode the configuration was deployed in
+     * @return the lines to show under the graph
+     */
+    private List<String> report(GraphAnalysis analysis, ExecutionMode mode) {
+        List<String> lines = new ArrayList<>();
+        lines.add("Configuration: " + analysis);
+        if (analysis.hasCycles() && mode != ExecutionMode.FIXED_POINT) {
+            lines.add("Warning: feedback loops are recomputed for as long as their values change;"
+                    + " deploy with mode=fixed_point to solve them once per update");
+        }
+        return lines;
+    }
+
     /**
      * Builds an HTTP error response containing an embedded HTML page.
      *
@@ -64,8 +64,8 @@ public class FeaturesHandler implements Servlet {
         htmlTable.append("<tr><th>Agent</th><th>Equation</th><th>Result</th></tr>"); // Table columns
 
         for (Agent agent : agents) {
-            if (agent instanceof ParallelAgent) {
-                Agent a = ((ParallelAgent) agent).getAgent();
+            Agent a = GenericConfig.unwrap(agent);
+            if (a != agent) { // A deployed wrapper (ParallelAgent or compiled plan proxy)
 
                 switch (a) {
                     case IncAgent incAgent -> {
@@ -132,6 +132,24 @@ public class FeaturesHandler implements Servlet {
                         htmlTable.append("<td>").append(result).append("</td>");
                         htmlTable.append("</tr>");
                     }
+                    case ReduceAgent reduceAgent -> {
+                        htmlTable.append("<tr>");
+                        htmlTable.append("<td>").append(a.getName()).append("</td>");
+                        htmlTable.append("<td>").append(reduceAgent.getFormula()).append("</td>");
+                        String lastMessage = tm.getTopic(reduceAgent.getOutputTopicName()).getLastMessage();
+                        String result = (lastMessage != null) ? lastMessage : "Not Determined";
+                        htmlTable.append("<td>").append(result).append("</td>");
+                        htmlTable.append("</tr>");
+                    }
+                    case ExpressionAgent expressionAgent -> {
+                        htmlTable.append("<tr>");
+                        htmlTable.append("<td>").append(a.getName()).append("</td>");
+                        htmlTable.append("<td>").append(expressionAgent.getFormula()).append("</td>");
+                        String lastMessage = tm.getTopic(expressionAgent.getOutputTopicName()).getLastMessage();
+                        String result = (lastMessage != null) ? lastMessage : "Not Determined";
+                        htmlTable.append("<td>").append(result).append("</td>");
+                        htmlTable.append("</tr>");
+                    }
                     default -> {
                         // Skip unknown agent types
                     }
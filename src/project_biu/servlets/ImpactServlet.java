@@ -0,0 +1,86 @@
+package project_biu.servlets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import project_biu.graph.CompressedBitSet;
+import project_biu.graph.IndexedGraph;
+import project_biu.graph.ReachabilityIndex;
+import project_biu.server.RequestParser.RequestInfo;
+
+/**
+ * ImpactServlet answers dependency queries on the deployed configuration, for GET requests to "/impact".
+ * For the topic named by the "topic" parameter it returns, as JSON, the output topics its values reach and
+ * the input topics its values come from:
+ * <pre>
+ * GET /impact?topic=R1
+ * {"topic": "R1", "outputs": ["R3"], "inputs": ["A", "B"]}
+ * </pre>
+ * Answers come from the ReachabilityIndex ConfLoader builds when a configuration is deployed, so a query
+ * reads two precomputed sets instead of searching the graph.
+ */
+public class ImpactServlet implements Servlet {
+
+    /**
+     * Handles the HTTP GET request for "/impact".
+     *
+     * @param requestInfo contains the "topic" parameter
+     * @param toClient    the stream used to write the HTTP response
+     * @throws IOException if there's an issue writing to the client
+     */
+    @Override
+    public void handle(RequestInfo requestInfo, OutputStream toClient) throws IOException {
+        String topic = requestInfo.getParameters().get("topic");
+        ReachabilityIndex index = ConfLoader.impact;
+        String response;
+        if (index == null) {
+            response = respond("400 Bad Request", "{\"error\": \"No configuration loaded\"}");
+        } else {
+            IndexedGraph graph = index.getGraph();
+            int node = topic == null ? -1 : graph.id("T" + topic);
+            if (node < 0) {
+                response = respond("404 Not Found", "{\"error\": \"Unknown topic\"}");
+            } else {
+                response = respond("200 OK", "{\"topic\": " + quote(topic)
+                        + ", \"outputs\": " + topics(graph, index.outputsOf(node))
+                        + ", \"inputs\": " + topics(graph, index.inputsOf(node)) + "}");
+            }
+        }
+        toClient.write(response.getBytes(StandardCharsets.UTF_8));
+        toClient.flush();
+    }
+
+    /**
+     * Releases any resources associated with this servlet.
+     * Currently, there's nothing to clean up.
+     *
+     * @throws IOException never thrown in this implementation
+     */
+    @Override
+    public void close() throws IOException {
+        // Nothing to clean up
+    }
+
+    // JSON array of the names of the topics in a set of nodes
+    private static String topics(IndexedGraph graph, CompressedBitSet nodes) {
+        StringBuilder json = new StringBuilder("[");
+        nodes.forEach(v -> {
+            if (graph.isTopic(v)) {
+                json.append(json.length() > 1 ? ", " : "").append(quote(graph.name(v).substring(1)));
+            }
+        });
+        return json.append("]").toString();
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String respond(String status, String json) {
+        return "HTTP/1.1 " + status + "\r\n" +
+                "Content-Type: application/json\r\n" +
+                "Content-Length: " + json.getBytes(StandardCharsets.UTF_8).length + "\r\n" +
+                "\r\n" + json;
+    }
+}
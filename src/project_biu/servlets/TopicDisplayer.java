@@ -17,6 +17,9 @@ import project_biu.server.RequestParser.RequestInfo;
  */
 public class TopicDisplayer implements Servlet {
 
+    // Upper bound on how long a publish may take to propagate before the table is rendered anyway
+    private static final long SETTLE_TIMEOUT_MILLIS = 500;
+
     /**
      * Handles the HTTP GET request for "/publish".
      * It extracts the topic and message from the query parameters, posts the message to the topic,
@@ -45,6 +48,9 @@ public class TopicDisplayer implements Servlet {
                 // Publish the message to the corresponding topic
                 tm.getTopic(topic).publish(new Message(message));
 
+                // Agents run asynchronously; give the update a moment to propagate before rendering
+                ConfLoader.gc.awaitSettled(SETTLE_TIMEOUT_MILLIS);
+
                 // Build HTML table response showing all topics and their last published message
                 StringBuilder htmlResponse = new StringBuilder();
                 htmlResponse.append("<html>\n");
@@ -0,0 +1,77 @@
+package project_biu.tests;
+
+import project_biu.configs.ConfigOptimizer;
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.GenericConfig;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+public class ConfigOptimizerTest {
+
+    public static void testOptimizedConfigComputesTheSame(){
+        try{
+            Path conf=Files.createTempFile("optimize",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.PlusAgent\nA,B\nC\n"+
+                    "project_biu.configs.PlusAgent\nB,A\nC2\n"+       // Same sum, other order and output
+                    "project_biu.configs.MulAgent\nC2,C2\nD\n"+
+                    "project_biu.configs.MulAgent\nC,C\nD\n"+         // Duplicate of the previous one once C2 is merged
+                    "project_biu.configs.IncAgent\nK\nL\n"+           // K is constant
+                    "project_biu.configs.ExpressionAgent\nL,A\nM = L*2 + A\n"+
+                    "project_biu.configs.DivAgent\nC,Z\nQ\n");        // Nobody reads Q
+            for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.POOLED, ExecutionMode.COMPILED}){
+                TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+                tm.clear();
+                ConfigOptimizer optimizer=new ConfigOptimizer().setConstant("K",4).setObserved(Set.of("D","M"));
+                GenericConfig gc=new GenericConfig();
+                gc.setConfFile(conf.toString());
+                gc.setExecutionMode(mode);
+                gc.setOptimizer(optimizer);
+                gc.create();
+
+                List<String> report=optimizer.getReport();
+                if(report.size()!=4 || gc.getNumberOfAgents()!=3)
+                    System.out.println("optimizer should drop 4 of 7 agents, report: "+report+" (-10)");
+                if(tm.getTopic("L").getLastMessageObject()==null || tm.getTopic("L").getLastMessageObject().asDouble!=5)
+                    System.out.println("folded constant was not published (-10)");
+
+                tm.getTopic("A").publish(new Message(1));
+                tm.getTopic("B").publish(new Message(2));
+                gc.awaitSettled(1000);
+                if(tm.getTopic("D").getLastMessageObject()==null || tm.getTopic("D").getLastMessageObject().asDouble!=9)
+                    System.out.println("optimized configuration computed a wrong D in "+mode+" mode (-10)");
+                if(tm.getTopic("M").getLastMessageObject()==null || tm.getTopic("M").getLastMessageObject().asDouble!=11)
+                    System.out.println("optimized configuration computed a wrong M in "+mode+" mode (-10)");
+                gc.close();
+            }
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("optimized configuration failed to deploy: "+e.getMessage()+" (-10)");
+        }
+    }
+
+    public static void testNothingObservedIsRemoved(){
+        TopicManagerSingleton.get().clear();
+        ConfigOptimizer optimizer=new ConfigOptimizer();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/complex.conf");
+        gc.setOptimizer(optimizer);
+        try{gc.create();}
+        catch (Exception e) {}
+        if(!optimizer.getReport().isEmpty() || gc.getNumberOfAgents()!=5)
+            System.out.println("optimizer changed a configuration without duplicates: "+optimizer.getReport()+" (-10)");
+        gc.close();
+    }
+
+    public static void configOptimizerTestMain(){
+        testOptimizedConfigComputesTheSame();
+        testNothingObservedIsRemoved();
+        System.out.println("done");
+    }
+}
@@ -0,0 +1,400 @@
+package project_biu.tests;
+
+import project_biu.configs.BinOpAgent;
+import project_biu.configs.EvaluationPlan;
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.FixedPoint;
+import project_biu.configs.GenericConfig;
+import project_biu.configs.IncAgent;
+import project_biu.configs.ParallelAgent;
+import project_biu.configs.PlusAgent;
+import project_biu.graph.Agent;
+import project_biu.graph.Message;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class EvaluationPlanTest {
+
+    // Publishes the same random inputs in a mode and returns the final value of every topic
+    static Map<String,String> runComplex(ExecutionMode mode, long seed){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/complex.conf"); // relative to the project root
+        gc.setExecutionMode(mode);
+        try{gc.create();}
+        catch (Exception e) {}
+
+        Random r=new Random(seed);
+        String[] inputs={"A","B","D","E","H","J"};
+        for(int i=0;i<200;i++){
+            tm.getTopic(inputs[r.nextInt(inputs.length)]).publish(new Message(r.nextInt(20)-5));
+            gc.awaitSettled(1000);
+        }
+        Map<String,String> values=new HashMap<>();
+        for(Topic t : tm.getTopics())
+            values.put(t.name, t.getLastMessage());
+        gc.close();
+        return values;
+    }
+
+    public static void testCompiledMatchesPooled(){
+        Map<String,String> pooled=runComplex(ExecutionMode.POOLED, 42);
+        Map<String,String> compiled=runComplex(ExecutionMode.COMPILED, 42);
+        if(!pooled.equals(compiled))
+            System.out.println("compiled plan produced "+compiled+" instead of "+pooled+" (-20)");
+    }
+
+    public static void testOneEvaluationPerPublish(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/simple.conf");
+        gc.setExecutionMode(ExecutionMode.COMPILED);
+        try{gc.create();}
+        catch (Exception e) {}
+
+        ParallelAgentTest.CountAgent c=new ParallelAgentTest.CountAgent();
+        ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+        tm.getTopic("C").subscribe(c);
+        tm.getTopic("D").subscribe(d);
+
+        tm.getTopic("A").publish(new Message(3));
+        if(c.count!=0 || d.count!=0)
+            System.out.println("compiled plan published before all inputs were known (-10)");
+        tm.getTopic("B").publish(new Message(4));
+        if(c.count!=1 || d.count!=1 || d.last!=3+4+1)
+            System.out.println("compiled plan did not evaluate each agent exactly once (-10)");
+        tm.getTopic("C").publish(new Message(10)); // Publishing an intermediate topic only runs what follows it
+        if(d.last!=11 || tm.getTopic("C").getLastMessageObject().asDouble!=10)
+            System.out.println("compiled plan recomputed an agent upstream of the published topic (-10)");
+        gc.close();
+    }
+
+    public static void testCyclesFallBack(){
+        TopicManagerSingleton.get().clear();
+        try{
+            Path conf=Files.createTempFile("cycle",".conf");
+            Files.writeString(conf,"project_biu.configs.IncAgent\nA\nB\nproject_biu.configs.IncAgent\nB\nA\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            gc.setExecutionMode(ExecutionMode.COMPILED);
+            gc.create();
+            if(!(gc.getAgents().get(0) instanceof ParallelAgent))
+                System.out.println("a cyclic configuration should fall back to pooled agents (-10)");
+            gc.close();
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("a cyclic configuration failed to deploy in COMPILED mode (-10)");
+        }
+    }
+
+    public static void testOnlyDownstreamRecomputed(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        try{
+            // A diamond A -> B, C -> D next to an unrelated chain E -> F -> G
+            Path conf=Files.createTempFile("diamond",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.IncAgent\nA\nB\n"+
+                    "project_biu.configs.IncAgent\nA\nC\n"+
+                    "project_biu.configs.PlusAgent\nB,C\nD\n"+
+                    "project_biu.configs.IncAgent\nE\nF\n"+
+                    "project_biu.configs.IncAgent\nF\nG\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            gc.setExecutionMode(ExecutionMode.COMPILED);
+            gc.create();
+            EvaluationPlan plan=gc.getEvaluationPlan();
+
+            ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+            tm.getTopic("D").subscribe(d);
+            tm.getTopic("A").publish(new Message(1));
+            if(plan.getLastTouchedCount()!=3 || d.count!=1 || d.last!=4)
+                System.out.println("a diamond should be recomputed once per publish, touched "+plan.getLastTouchedCount()+" (-10)");
+            tm.getTopic("F").publish(new Message(1));
+            if(plan.getLastTouchedCount()!=1 || tm.getTopic("G").getLastMessageObject().asDouble!=2)
+                System.out.println("only the downstream cone should be recomputed, touched "+plan.getLastTouchedCount()+" (-10)");
+            tm.getTopic("G").publish(new Message(7)); // Nobody reads G
+            if(plan.getUpdateCount()!=2 || plan.getTotalTouchedCount()!=4)
+                System.out.println("wrong touched counters (-5)");
+            gc.close();
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("the diamond configuration failed to deploy (-10)");
+        }
+    }
+
+    // Runs random transactions on a wide generated configuration, sequentially or on a pool, and returns all topic values
+    static Map<String,String> runWide(ExecutionMode mode, ForkJoinPool pool){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        Map<String,String> values=new HashMap<>();
+        try{
+            int width=600;
+            StringBuilder sb=new StringBuilder();
+            String[] classes={"PlusAgent","MulAgent","DivAgent","ExponnentAgent"};
+            for(int l=1;l<=3;l++)
+                for(int i=0;i<width;i++)
+                    sb.append("project_biu.configs.").append(classes[(l+i)%4]).append("\n")
+                      .append("T").append(l-1).append("_").append(i).append(",T").append(l-1).append("_").append((i+1)%width).append("\n")
+                      .append("T").append(l).append("_").append(i).append("\n");
+            Path conf=Files.createTempFile("wide",".conf");
+            Files.writeString(conf,sb.toString());
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            gc.setExecutionMode(mode);
+            gc.create();
+            gc.getEvaluationPlan().setPool(pool);
+            if(gc.getEvaluationPlan().getLevelCount()!=3)
+                System.out.println("wide configuration should have 3 levels (-5)");
+
+            Random r=new Random(7);
+            for(int round=0;round<5;round++){
+                Map<String,Message> inputs=new LinkedHashMap<>();
+                for(int i=0;i<width;i++)
+                    if(r.nextInt(3)>0)
+                        inputs.put("T0_"+i,new Message(r.nextInt(7)-3));
+                tm.publishAll(inputs);
+            }
+            for(Topic t : tm.getTopics())
+                values.put(t.name, t.getLastMessage());
+            gc.close();
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("the wide configuration failed to deploy (-10)");
+        }
+        return values;
+    }
+
+    public static void testLevelParallelMatchesSequential(){
+        ForkJoinPool pool=new ForkJoinPool(4);
+        Map<String,String> sequential=runWide(ExecutionMode.COMPILED, null);
+        Map<String,String> parallel=runWide(ExecutionMode.COMPILED, pool);
+        pool.shutdown();
+        if(!sequential.equals(parallel))
+            System.out.println("level-parallel evaluation differs from sequential evaluation (-20)");
+    }
+
+    public static void testKernelMatchesInterpreter(){
+        Map<String,String> compiled=runComplex(ExecutionMode.COMPILED, 11);
+        Map<String,String> bytecode=runComplex(ExecutionMode.BYTECODE, 11);
+        if(!compiled.equals(bytecode))
+            System.out.println("generated kernel produced "+bytecode+" instead of "+compiled+" (-20)");
+        if(!runWide(ExecutionMode.COMPILED, null).equals(runWide(ExecutionMode.BYTECODE, null)))
+            System.out.println("generated kernel differs from the interpreter on a wide configuration (-20)");
+
+        // Custom operators, and a fan-out wide enough to mark its consumers through the plan
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        List<Agent> agents=new ArrayList<>();
+        agents.add(new BinOpAgent("minus","A","B","C",(x,y)->x-y));
+        for(int i=0;i<40;i++)
+            agents.add(new IncAgent(new String[]{"C"}, new String[]{"I"+i}));
+        EvaluationPlan plan=EvaluationPlan.compile(agents);
+        plan.deploy();
+        if(!plan.generateKernel() || !plan.hasKernel())
+            System.out.println("could not generate a kernel (-20)");
+        ParallelAgentTest.CountAgent last=new ParallelAgentTest.CountAgent();
+        tm.getTopic("I39").subscribe(last);
+        tm.getTopic("A").publish(new Message(10));
+        tm.getTopic("B").publish(new Message(3));
+        if(last.count!=1 || last.last!=8 || plan.getLastTouchedCount()!=41)
+            System.out.println("generated kernel evaluated the fan-out wrongly (-10)");
+        tm.getTopic("B").publish(new Message(0));
+        if(last.last!=11 || tm.getTopic("I0").getLastMessageObject().asDouble!=11)
+            System.out.println("generated kernel missed an update (-10)");
+
+        // 64 sums each read by 16 agents, the most marked inline: the sums' chunk must stay small enough to JIT
+        tm.clear();
+        agents.clear();
+        for(int i=0;i<64;i++){
+            agents.add(new PlusAgent(new String[]{"X"+i,"Y"}, new String[]{"P"+i}));
+            for(int j=0;j<16;j++)
+                agents.add(new IncAgent(new String[]{"P"+i}, new String[]{"Q"+i+"_"+j}));
+        }
+        plan=EvaluationPlan.compile(agents);
+        plan.deploy();
+        if(!plan.generateKernel() || plan.getKernelMethodSize()>8000)
+            System.out.println("generated kernel method of "+plan.getKernelMethodSize()+" bytes is too large to be compiled (-10)");
+        tm.getTopic("Y").publish(new Message(1));
+        for(int i=0;i<64;i++)
+            tm.getTopic("X"+i).publish(new Message(i));
+        if(tm.getTopic("Q63_15").getLastMessageObject().asDouble!=65 || tm.getTopic("Q0_0").getLastMessageObject().asDouble!=2)
+            System.out.println("generated kernel split in several methods evaluated wrongly (-10)");
+    }
+
+    // Publishes random inputs, reading every topic after every publish in eager mode and every n-th publish in lazy mode
+    static List<Map<String,String>> runReads(boolean lazy, int readEvery, long[] touched){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/complex.conf");
+        gc.setExecutionMode(lazy ? ExecutionMode.LAZY : ExecutionMode.COMPILED);
+        try{gc.create();}
+        catch (Exception e) {}
+
+        Random r=new Random(7);
+        String[] inputs={"A","B","D","E","H","J"};
+        List<Map<String,String>> reads=new ArrayList<>();
+        for(int i=1;i<=300;i++){
+            tm.getTopic(inputs[r.nextInt(inputs.length)]).publish(new Message(r.nextInt(20)-5));
+            if(i%readEvery==0){
+                Map<String,String> values=new HashMap<>();
+                for(Topic t : tm.getTopics())
+                    values.put(t.name, t.getLastMessage());
+                reads.add(values);
+            }
+        }
+        touched[0]=gc.getEvaluationPlan().getTotalTouchedCount();
+        gc.close();
+        return reads;
+    }
+
+    public static void testLazyMatchesEager(){
+        long[] eagerTouched=new long[1], lazyTouched=new long[1], rareTouched=new long[1];
+        List<Map<String,String>> eager=runReads(false, 1, eagerTouched);
+        List<Map<String,String>> lazy=runReads(true, 1, lazyTouched);
+        if(!eager.equals(lazy))
+            System.out.println("lazy plan read different values than the eager one (-20)");
+        runReads(true, 30, rareTouched);
+        if(rareTouched[0]*4>eagerTouched[0])
+            System.out.println("lazy plan read every 30 publishes recomputed "+rareTouched[0]+" operations, eager "+eagerTouched[0]+" (-10)");
+
+        // An output is only computed, and its subscribers called, when it is read
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/simple.conf");
+        gc.setExecutionMode(ExecutionMode.LAZY);
+        try{gc.create();}
+        catch (Exception e) {}
+        ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+        tm.getTopic("D").subscribe(d);
+        for(int i=0;i<10;i++){
+            tm.getTopic("A").publish(new Message(i));
+            tm.getTopic("B").publish(new Message(1));
+        }
+        if(d.count!=0 || gc.getEvaluationPlan().getTotalTouchedCount()!=0)
+            System.out.println("lazy plan computed before anything was read (-10)");
+        if(!"11.0".equals(tm.getTopic("D").getLastMessage()) || d.count!=1 || !"10.0".equals(tm.getTopic("C").getLastMessage()))
+            System.out.println("reading a lazy output returned "+tm.getTopic("D").getLastMessage()+" (-10)");
+        tm.getTopic("A").publish(new Message(0));
+        gc.getEvaluationPlan().setLazy(false);
+        if(d.count!=2 || d.last!=2)
+            System.out.println("leaving lazy mode should bring every output up to date (-5)");
+        gc.close();
+    }
+
+    public static void testLazyRereadIsFree(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        try{
+            Path conf=Files.createTempFile("chain",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.IncAgent\nA\nB\n"+
+                    "project_biu.configs.IncAgent\nB\nC\n"+
+                    "project_biu.configs.IncAgent\nC\nD\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            gc.setExecutionMode(ExecutionMode.LAZY);
+            gc.create();
+            EvaluationPlan plan=gc.getEvaluationPlan();
+
+            ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+            tm.getTopic("D").subscribe(d);
+            tm.getTopic("A").publish(new Message(1));
+            if(!"4.0".equals(tm.getTopic("D").getLastMessage()) || plan.getLastTouchedCount()!=3 || d.count!=1)
+                System.out.println("reading a lazy chain should compute it once, touched "+plan.getLastTouchedCount()+" (-10)");
+            for(int i=0;i<3;i++){
+                tm.getTopic("D").getLastMessage();
+                tm.getTopic("C").getLastMessage();
+            }
+            if(plan.getLastTouchedCount()!=0 || plan.getTotalTouchedCount()!=3 || d.count!=1)
+                System.out.println("reading an unchanged lazy output recomputed it, touched "+plan.getLastTouchedCount()+" (-10)");
+            gc.close();
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("the chain configuration failed to deploy (-10)");
+        }
+    }
+
+    // Deploys a configuration in FIXED_POINT mode and publishes A; returns the config, to inspect and close
+    static GenericConfig runFixedPoint(String conf, FixedPoint fixedPoint, double a) throws Exception {
+        TopicManagerSingleton.get().clear();
+        Path file=Files.createTempFile("loop",".conf");
+        Files.writeString(file,conf);
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile(file.toString());
+        gc.setExecutionMode(ExecutionMode.FIXED_POINT);
+        gc.setFixedPoint(fixedPoint);
+        gc.create();
+        Files.delete(file);
+        TopicManagerSingleton.get().getTopic("C").publish(new Message(0.5));
+        TopicManagerSingleton.get().getTopic("A").publish(new Message(a));
+        return gc;
+    }
+
+    public static void testFixedPoint(){
+        try{
+            // X = A + C*X converges to X = 2A; Y, downstream of the loop, is computed once from the result
+            String feedback="project_biu.configs.PlusAgent\nA,H\nX\nproject_biu.configs.MulAgent\nX,C\nH\n"
+                    +"project_biu.configs.IncAgent\nX\nY\n";
+            TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+            ParallelAgentTest.CountAgent x=new ParallelAgentTest.CountAgent();
+            GenericConfig gc=runFixedPoint(feedback, FixedPoint.DEFAULT, 0);
+            tm.getTopic("X").subscribe(x);
+            tm.getTopic("A").publish(new Message(3));
+            EvaluationPlan plan=gc.getEvaluationPlan();
+            if(plan==null || !plan.hasCycles() || gc.getAgents().get(0) instanceof ParallelAgent)
+                System.out.println("a configuration with a feedback loop should compile in FIXED_POINT mode (-10)");
+            else if(Math.abs(x.last-6)>1e-6 || Math.abs(Double.parseDouble(tm.getTopic("Y").getLastMessage())-7)>1e-6
+                    || plan.getUnconvergedCount()!=0 || plan.getLastIterationCount()<2)
+                System.out.println("feedback loop solved to X="+x.last+", Y="+tm.getTopic("Y").getLastMessage()+" (-10)");
+            else if(x.count!=1)
+                System.out.println("a solved loop should publish each value once per publish, published "+x.count+" (-5)");
+            gc.close();
+
+            // X = A - X oscillates between A and 0 without damping, and settles on A/2 with it
+            String oscillating="project_biu.configs.ExpressionAgent\nA,X\nX = A - X\n";
+            gc=runFixedPoint(oscillating, new FixedPoint(1e-12, 50, 1.0), 4);
+            if(gc.getEvaluationPlan().getUnconvergedCount()!=1 || gc.getEvaluationPlan().getLastIterationCount()!=50)
+                System.out.println("an oscillating loop should stop at the iteration cap (-5)");
+            gc.close();
+            gc=runFixedPoint(oscillating, new FixedPoint(1e-12, 50, 0.5), 4);
+            if(!"2.0".equals(tm.getTopic("X").getLastMessage()) || gc.getEvaluationPlan().getUnconvergedCount()!=0)
+                System.out.println("a damped loop should converge, got X="+tm.getTopic("X").getLastMessage()+" (-5)");
+            gc.close();
+        }
+        catch (Exception e) {
+            System.out.println("a cyclic configuration failed to deploy in FIXED_POINT mode: "+e+" (-10)");
+        }
+    }
+
+    public static void evaluationPlanTestMain(){
+        testCompiledMatchesPooled();
+        testOneEvaluationPerPublish();
+        testOnlyDownstreamRecomputed();
+        testLevelParallelMatchesSequential();
+        testKernelMatchesInterpreter();
+        testCyclesFallBack();
+        testLazyMatchesEager();
+        testLazyRereadIsFree();
+        testFixedPoint();
+        System.out.println("done");
+    }
+}
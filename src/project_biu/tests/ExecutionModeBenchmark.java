@@ -0,0 +1,129 @@
+package project_biu.tests;
+
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.GenericConfig;
+import project_biu.graph.Message;
+import project_biu.graph.Topic;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/*
+ * Compares the execution modes on a large generated configuration:
+ * a chain of IncAgents T0 -> T1 -> ... -> Tn, so a publish on T0 has to pass through every agent.
+ *
+ * For each mode it reports the live platform threads, the resident set size of the process (which includes
+ * native thread stacks), the heap in use (which includes virtual thread stacks) and the average time from
+ * publishing on T0 until Tn holds the expected value.
+ *
+ * Usage: java project_biu.tests.ExecutionModeBenchmark [agents] [rounds]
+ */
+public class ExecutionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Path conf = writeChainConfig(agents);
+        try {
+            System.out.printf("%-8s %10s %10s %10s %14s%n", "mode", "threads", "rss(MB)", "heap(MB)", "settle(ms)");
+            for (ExecutionMode mode : ExecutionMode.values()) {
+                runMode(mode, conf, agents, rounds);
+            }
+        } finally {
+            Files.deleteIfExists(conf);
+        }
+    }
+
+    // Deploys the chain in one mode, measures it, then shuts it down
+    private static void runMode(ExecutionMode mode, Path conf, int agents, int rounds) throws Exception {
+        TopicManagerSingleton.get().clear();
+        settleMemory();
+        long rssBefore = residentSetKb();
+        long heapBefore = usedHeap();
+
+        GenericConfig gc = new GenericConfig();
+        gc.setConfFile(conf.toString());
+        gc.setExecutionMode(mode);
+        gc.create();
+
+        Topic first = TopicManagerSingleton.get().getTopic("T0");
+        Topic last = TopicManagerSingleton.get().getTopic("T" + agents);
+
+        // Warm up once so every worker has run at least one message
+        publishAndWait(first, last, -1, agents);
+
+        long totalNanos = 0;
+        for (int r = 0; r < rounds; r++) {
+            totalNanos += publishAndWait(first, last, r, agents);
+        }
+
+        int threads = Thread.activeCount();
+        settleMemory();
+        long rssAfter = residentSetKb();
+        long rss = (rssBefore < 0 || rssAfter < 0) ? -1 : rssAfter - rssBefore;
+        long heap = usedHeap() - heapBefore;
+
+        System.out.printf("%-8s %10d %10s %10.1f %14.3f%n", mode, threads,
+                rss < 0 ? "n/a" : String.format("%.1f", rss / 1024.0),
+                heap / (1024.0 * 1024.0), totalNanos / (rounds * 1_000_000.0));
+
+        gc.close();
+    }
+
+    // Publishes a value on the first topic and spins until it has propagated to the last one
+    private static long publishAndWait(Topic first, Topic last, double value, int agents) {
+        double expected = value + agents;
+        long start = System.nanoTime();
+        first.publish(new Message(value));
+        while (true) {
+            Message m = last.getLastMessageObject();
+            if (m != null && m.asDouble == expected) {
+                return System.nanoTime() - start;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // Writes an n-agent IncAgent chain in the 3-line block format read by GenericConfig
+    private static Path writeChainConfig(int agents) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < agents; i++) {
+            sb.append("project_biu.configs.IncAgent\n")
+                    .append("T").append(i).append("\n")
+                    .append("T").append(i + 1).append("\n");
+        }
+        Path conf = Files.createTempFile("chain", ".conf");
+        Files.writeString(conf, sb.toString());
+        return conf;
+    }
+
+    private static void settleMemory() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Reads VmRSS from /proc on Linux, returns a negative value elsewhere
+    private static long residentSetKb() {
+        try {
+            List<String> status = Files.readAllLines(Path.of("/proc/self/status"));
+            for (String line : status) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Not available on this platform
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,92 @@
+package project_biu.tests;
+
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.Expression;
+import project_biu.configs.ExpressionAgent;
+import project_biu.configs.GenericConfig;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ExpressionAgentTest {
+
+    // Evaluates a formula over inputs A, B, C by publishing them, and returns the last value of out
+    static double eval(String formula, double a, double b, double c){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        ExpressionAgent agent=new ExpressionAgent(new String[]{"A","B","C"}, formula.split(","));
+        tm.getTopic("A").publish(new Message(a));
+        tm.getTopic("B").publish(new Message(b));
+        tm.getTopic("C").publish(new Message(c));
+        Message m=tm.getTopic("out").getLastMessageObject();
+        agent.close();
+        return m==null ? Double.NaN : m.asDouble;
+    }
+
+    public static void testFormulas(){
+        if(eval("out = (A*B + C) / 2", 2, 3, 4)!=5)
+            System.out.println("wrong result for (A*B + C) / 2 (-10)");
+        if(eval("out = -A^2 + B - C", 3, 1, 1)!=-9)
+            System.out.println("^ should bind tighter than unary minus (-10)");
+        if(eval("out = 2^B^C", 0, 3, 2)!=512)
+            System.out.println("^ should be right associative (-10)");
+        if(eval("out = A - (B - C) * 1.5e1", 1, 3, 2)!=-14)
+            System.out.println("wrong result with parentheses and exponent notation (-10)");
+        if(eval("out = A", 7, 0, 0)!=7)
+            System.out.println("a bare input should be copied to the output (-5)");
+        if(!Double.isNaN(eval("out = A / (B - C)", 1, 2, 2)))
+            System.out.println("dividing by zero should publish nothing (-10)");
+        for(String bad : new String[]{"out = A +", "out = (A", "out = A $ B", "A + B", "out = X", "out = 1 + 2"}){
+            try{
+                Expression.parse(bad, List.of("A","B"));
+                System.out.println("malformed formula accepted: "+bad+" (-5)");
+            }
+            catch (IllegalArgumentException e) {}
+        }
+    }
+
+    // Publishes random inputs to a configuration and returns the successive values of K
+    static List<String> runK(String conf, ExecutionMode mode){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile(conf);
+        gc.setExecutionMode(mode);
+        try{gc.create();}
+        catch (Exception e) {
+            System.out.println(conf+" failed to load in "+mode+" mode (-10)");
+        }
+        Random r=new Random(5);
+        String[] inputs={"A","B","D","E","H","J"};
+        List<String> values=new ArrayList<>();
+        for(String in : inputs){
+            tm.getTopic(in).publish(new Message(r.nextInt(9)+1));
+            gc.awaitSettled(1000);
+        }
+        for(int i=0;i<100;i++){
+            tm.getTopic(inputs[r.nextInt(inputs.length)]).publish(new Message(r.nextInt(9)+1));
+            gc.awaitSettled(1000);
+            values.add(tm.getTopic("K").getLastMessage());
+        }
+        gc.close();
+        return values;
+    }
+
+    public static void testMatchesAgentChain(){
+        List<String> chain=runK("config_files/complex.conf", ExecutionMode.POOLED);
+        for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.POOLED, ExecutionMode.COMPILED, ExecutionMode.BYTECODE}){
+            List<String> expression=runK("config_files/expression.conf", mode);
+            if(!chain.equals(expression))
+                System.out.println("expression agent in "+mode+" mode differs from the agent chain (-20)");
+        }
+    }
+
+    public static void expressionAgentTestMain(){
+        testFormulas();
+        testMatchesAgentChain();
+        System.out.println("done");
+    }
+}
@@ -1,10 +1,18 @@
 package project_biu.tests;
 
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.FusedAgent;
 import project_biu.configs.GenericConfig;
+import project_biu.configs.ParallelAgent;
 import project_biu.graph.Agent;
 import project_biu.graph.Message;
+import project_biu.graph.OutputFilter;
 import project_biu.graph.TopicManagerSingleton;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Random;
 
 public class GenericConfigTest {
@@ -202,4 +210,245 @@ public class GenericConfigTest {
         System.out.println("done");
 
     }
+    public static void testPooledAgents(){
+        TopicManagerSingleton.get().clear();
+        int c=Thread.activeCount();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile("config_files/simple.conf"); // relative to the project root
+        gc.setExecutionMode(ExecutionMode.POOLED);
+        try{gc.create();}
+        catch (Exception e) {}
+
+        if(Thread.activeCount()>c+Runtime.getRuntime().availableProcessors()){
+            System.out.println("pooled agents should not start a thread per agent (-10)");
+        }
+
+        double result[]={0.0};
+        TopicManagerSingleton.get().getTopic("D").subscribe(new Agent() {
+
+            @Override
+            public String getName() {
+                return "";
+            }
+
+            @Override
+            public void reset() {
+            }
+
+            @Override
+            public void callback(String topic, Message msg) {
+                result[0]=msg.asDouble;
+            }
+
+            @Override
+            public void close() {
+            }
+
+        });
+
+        TopicManagerSingleton.get().getTopic("A").publish(new Message(3));
+        TopicManagerSingleton.get().getTopic("B").publish(new Message(4));
+        gc.awaitSettled(1000);
+
+        if(result[0]!=3+4+1){
+            System.out.println("your pooled agents did not produce the desierd result (-10)");
+        }
+
+        gc.close();
+        System.out.println("done");
+    }
+
+    public static void testTransactionalPublish(){
+        for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.POOLED, ExecutionMode.COMPILED}){
+            TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+            tm.clear();
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile("config_files/abequation.conf"); // relative to the project root
+            gc.setExecutionMode(mode);
+            try{gc.create();}
+            catch (Exception e) {}
+
+            ParallelAgentTest.CountAgent c=new ParallelAgentTest.CountAgent();
+            ParallelAgentTest.CountAgent k=new ParallelAgentTest.CountAgent();
+            tm.getTopic("C").subscribe(c);
+            tm.getTopic("K").subscribe(k);
+
+            Map<String,Message> first=new LinkedHashMap<>();
+            first.put("A",new Message(2));
+            first.put("B",new Message(3));
+            first.put("E",new Message(2));
+            tm.publishAll(first);
+            gc.awaitSettled(1000);
+            Map<String,Message> second=new LinkedHashMap<>();
+            second.put("A",new Message(1));
+            second.put("B",new Message(1));
+            tm.publishAll(second);
+            gc.awaitSettled(1000);
+
+            // K = (A^E + B^E) + (E*A)*B
+            if(k.last!=1+1+2)
+                System.out.println("transaction in "+mode+" mode produced a wrong result (-10)");
+            if(c.count!=2)
+                System.out.println("an agent fed by a transaction evaluated "+c.count+" times instead of once per transaction in "+mode+" mode (-10)");
+            if(mode==ExecutionMode.COMPILED && (k.count!=2 || gc.getEvaluationPlan().getLastTouchedCount()!=8))
+                System.out.println("a compiled transaction should evaluate every agent exactly once (-10)");
+            gc.close();
+        }
+        System.out.println("done");
+    }
+
+    public static void testChainFusion(){
+        for(boolean fusion : new boolean[]{true,false}){
+            TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+            tm.clear();
+            int threads=Thread.activeCount();
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile("config_files/simple.conf"); // C is only read by the IncAgent
+            gc.setExecutionMode(ExecutionMode.THREAD);
+            gc.setFusion(fusion);
+            try{gc.create();}
+            catch (Exception e) {}
+
+            boolean fused=gc.getAgents().get(0) instanceof ParallelAgent && gc.getAgents().get(1) instanceof FusedAgent;
+            if(fusion && (!fused || Thread.activeCount()!=threads+1))
+                System.out.println("the IncAgent should run on the PlusAgent's worker (-10)");
+            if(!fusion && fused)
+                System.out.println("fusion should be possible to disable (-5)");
+
+            ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+            tm.getTopic("D").subscribe(d);
+            tm.getTopic("A").publish(new Message(3));
+            tm.getTopic("B").publish(new Message(4));
+            gc.awaitSettled(1000);
+            if(d.last!=3+4+1 || !"7.0".equals(tm.getTopic("C").getLastMessage()))
+                System.out.println("fused chain produced D="+d.last+", C="+tm.getTopic("C").getLastMessage()+" (-10)");
+            gc.close();
+        }
+        System.out.println("done");
+    }
+
+    public static void testOutputFilters(){
+        try{
+            Path conf=Files.createTempFile("filters",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.IncAgent filter=exact\nA\nB\n"+
+                    "project_biu.configs.MulAgent filter=abs epsilon=0.5\nB,Z\nC\n"+
+                    "project_biu.configs.IncAgent\nC\nD\n");
+            for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.POOLED, ExecutionMode.COMPILED, ExecutionMode.BYTECODE}){
+                TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+                tm.clear();
+                GenericConfig gc=new GenericConfig();
+                gc.setConfFile(conf.toString());
+                gc.setExecutionMode(mode);
+                gc.create();
+
+                ParallelAgentTest.CountAgent d=new ParallelAgentTest.CountAgent();
+                tm.getTopic("D").subscribe(d);
+                tm.getTopic("Z").publish(new Message(0.1));
+                for(double a : new double[]{1, 1, 1, 2, 4, 9}){ // B delivers 2, 3, 5, 10; C only 0.2 and 1.0
+                    tm.getTopic("A").publish(new Message(a));
+                    gc.awaitSettled(1000);
+                }
+                OutputFilter b=gc.getOutputFilters().get("B");
+                OutputFilter c=gc.getOutputFilters().get("C");
+                if(b==null || c==null || b.getSuppressed()!=2 || c.getSuppressed()!=2 || gc.getOutputFilters().size()!=2)
+                    System.out.println("output filters in "+mode+" mode dropped "+(b==null ? "-" : b.getSuppressed())+
+                            " and "+(c==null ? "-" : c.getSuppressed())+" values instead of 2 and 2 (-10)");
+                if(d.count!=2 || d.last!=2 || c.getSavedDeliveries()!=2)
+                    System.out.println("values dropped by a filter still reached the agents downstream in "+mode+" mode (-10)");
+                gc.close();
+            }
+
+            Files.writeString(conf,"project_biu.configs.IncAgent filter=approx\nA\nB\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            try{
+                gc.create();
+                System.out.println("an unknown output filter should be rejected (-5)");
+            }
+            catch (Exception e) {}
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("filtered configuration failed: "+e.getMessage()+" (-10)");
+        }
+
+        TopicManagerSingleton.get().clear();
+        OutputFilter throttle=new OutputFilter(OutputFilter.Change.NONE, 0, 60_000);
+        TopicManagerSingleton.get().getTopic("T").setFilter(throttle);
+        for(int i=0;i<5;i++)
+            TopicManagerSingleton.get().getTopic("T").publish(new Message(i));
+        if(throttle.getPassed()!=1 || !"0.0".equals(TopicManagerSingleton.get().getTopic("T").getLastMessage()))
+            System.out.println("a throttled topic should deliver once per interval (-5)");
+
+        // A transaction leaves out the values its topics' filters drop, and still delivers the others
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        OutputFilter exact=new OutputFilter(OutputFilter.Change.EXACT, 0, 0);
+        tm.getTopic("X").setFilter(exact);
+        ParallelAgentTest.CountAgent x=new ParallelAgentTest.CountAgent();
+        ParallelAgentTest.CountAgent y=new ParallelAgentTest.CountAgent();
+        tm.getTopic("X").subscribe(x);
+        tm.getTopic("Y").subscribe(y);
+        for(int i=1;i<=3;i++){
+            Map<String,Message> transaction=new LinkedHashMap<>();
+            transaction.put("X",new Message(i<3 ? 5 : 6));
+            transaction.put("Y",new Message(i));
+            tm.publishAll(transaction);
+        }
+        if(x.count!=2 || x.last!=6 || exact.getSuppressed()!=1 || y.count!=3 || y.last!=3)
+            System.out.println("publishAll bypassed a topic's output filter, delivered "+x.count+" of 3 values (-10)");
+        System.out.println("done");
+    }
+
+    // Deploys a configuration whose last agent has an invalid option; returns the error, or null if it deployed
+    static String deployInvalid(String option){
+        TopicManagerSingleton.get().clear();
+        int threads=Thread.activeCount();
+        try{
+            Path conf=Files.createTempFile("invalid",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.IncAgent\nA\nB\n"+
+                    "project_biu.configs.IncAgent "+option+"\nB\nC\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            gc.setExecutionMode(ExecutionMode.THREAD);
+            String error=null;
+            try{
+                gc.create();
+                gc.close();
+            }
+            catch (Exception e) {
+                error=e.getMessage();
+            }
+            Files.delete(conf);
+            if(error!=null && Thread.activeCount()!=threads)
+                System.out.println("a configuration rejected for "+option+" left "+(Thread.activeCount()-threads)+" threads running (-10)");
+            return error;
+        }
+        catch (Exception e) {
+            return "temporary configuration failed: "+e.getMessage();
+        }
+    }
+
+    public static void testInvalidWorkerOptions(){
+        String error=deployInvalid("inbox=sometimes");
+        if(!"Invalid inbox policy for: project_biu.configs.IncAgent inbox=sometimes".equals(error))
+            System.out.println("an invalid inbox policy was reported as: "+error+" (-5)");
+        if(deployInvalid("inbox=Conflate")!=null)
+            System.out.println("inbox policies should be case-insensitive (-5)");
+        error=deployInvalid("idle=nap");
+        if(!"Invalid idle strategy for: project_biu.configs.IncAgent idle=nap".equals(error))
+            System.out.println("an invalid idle strategy was reported as: "+error+" (-5)");
+        System.out.println("done");
+    }
+
+    // The checks that run from the project root on any machine; the ones above read files at fixed paths
+    public static void genericConfigTestMain(){
+        testPooledAgents();
+        testTransactionalPublish();
+        testChainFusion();
+        testOutputFilters();
+        testInvalidWorkerOptions();
+    }
 }
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 import project_biu.configs.BinOpAgent;
 import project_biu.configs.Config;
@@ -11,7 +13,10 @@ import project_biu.configs.MathExampleConfig;
 import project_biu.configs.Node;
 import project_biu.graph.Agent;
 import project_biu.graph.Graph;
+import project_biu.graph.GraphAnalysis;
+import project_biu.graph.IndexedGraph;
 import project_biu.graph.Message;
+import project_biu.graph.Topic;
 import project_biu.graph.TopicManagerSingleton;
 import project_biu.graph.TopicManagerSingleton.TopicManager;
 
@@ -160,10 +165,234 @@ public class GraphTest {
             System.out.println("Wrong result in hasCycles for topics graph with a cycle (-10)");
     }
 
+    public static void testIndexedGraph(){
+        TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        Config c=new MathExampleConfig();
+        try {
+            c.create();
+        }
+        catch (Exception e) {}
+
+        Graph g=new Graph();
+        g.createFromTopics();
+        IndexedGraph ig=IndexedGraph.fromTopics();
+        boolean same=ig.size()==g.size() && ig.edgeCount()==9;
+        for(int v=0;same && v<ig.size();v++){
+            Node node=g.get(v);
+            same=node.getName().equals(ig.name(v)) && ig.id(node.getName())==v && node.getEdges().size()==ig.edgeEnd(v)-ig.edgeStart(v);
+            for(int k=ig.edgeStart(v);same && k<ig.edgeEnd(v);k++)
+                same=node.getEdges().get(k-ig.edgeStart(v)).getName().equals(ig.name(ig.target(k)));
+        }
+        if(!same)
+            System.out.println("indexed graph differs from the graph created from topics (-10)");
+        if(ig.hasCycles() || ig.id("TR3")<0 || ig.id("missing")!=-1 || !ig.nodes().get(ig.id("Amul")).getName().equals("Amul"))
+            System.out.println("wrong lookups or cycle check on the indexed graph (-10)");
+
+        // A million-node chain, then closed into a cycle; deep enough to overflow a recursive search
+        int n=1_000_000;
+        IndexedGraph.Builder b=new IndexedGraph.Builder();
+        for(int i=0;i<n-1;i++)
+            b.edge(b.node("N"+i), b.node("N"+(i+1)));
+        IndexedGraph chain=b.build();
+        if(chain.size()!=n || chain.hasCycles() || chain.neighbours(chain.id("N5"))[0]!=chain.id("N6"))
+            System.out.println("wrong large indexed graph (-10)");
+        b.edge(chain.id("N"+(n-1)), chain.id("N0"));
+        if(!b.build().hasCycles())
+            System.out.println("missed the cycle closing a large indexed graph (-10)");
+
+        Graph deep=new Graph();
+        Node prev=null;
+        for(int i=0;i<100_000;i++){
+            Node node=new Node("N"+i);
+            if(prev!=null)
+                prev.addEdge(node);
+            deep.add(node);
+            prev=node;
+        }
+        if(deep.hasCycles())
+            System.out.println("wrong result in hasCycles for a deep graph without cycles (-10)");
+        prev.addEdge(deep.get(0));
+        if(!deep.hasCycles())
+            System.out.println("wrong result in hasCycles for a deep graph with a cycle (-10)");
+    }
+
+    public static void testGraphAnalysis(){
+        // Random graphs against a brute force closure: mutual reachability, edge order and longest paths
+        Random r=new Random(7);
+        boolean right=true;
+        for(int round=0;round<200 && right;round++){
+            int n=1+r.nextInt(25);
+            IndexedGraph.Builder b=new IndexedGraph.Builder();
+            for(int v=0;v<n;v++)
+                b.node("N"+v);
+            boolean[][] reach=new boolean[n][n];
+            int edges=r.nextInt(2*n+1);
+            for(int e=0;e<edges;e++){
+                int u=r.nextInt(n), v=r.nextInt(n);
+                b.edge(u,v);
+                reach[u][v]=true;
+            }
+            for(int k=0;k<n;k++)
+                for(int i=0;i<n;i++)
+                    for(int j=0;j<n;j++)
+                        reach[i][j]|=reach[i][k] && reach[k][j];
+            IndexedGraph g=b.build();
+            GraphAnalysis a=g.analyze();
+            int[] pos=new int[n];
+            int[] order=a.topologicalOrder();
+            for(int i=0;i<n;i++)
+                pos[order[i]]=i;
+            boolean cycles=false;
+            for(int u=0;u<n;u++){
+                cycles|=reach[u][u];
+                right&=a.isCyclic(u)==reach[u][u];
+                boolean reachedFromBelow=false;
+                for(int v=0;v<n;v++)
+                    right&=(a.component(u)==a.component(v))==(u==v || (reach[u][v] && reach[v][u]));
+                for(int v=0;v<n;v++){
+                    for(int k=g.edgeStart(v);k<g.edgeEnd(v);k++){
+                        int w=g.target(k); // An edge into u's component, which shares u's depth
+                        if(a.component(w)!=a.component(u) || a.component(v)==a.component(u))
+                            continue;
+                        right&=(w!=u || pos[v]<pos[u]) && a.component(v)<a.component(u) && a.depth(v)<a.depth(u);
+                        reachedFromBelow|=a.depth(v)==a.depth(u)-1;
+                    }
+                }
+                right&=a.depth(u)==0 || reachedFromBelow;
+            }
+            right&=a.hasCycles()==cycles && a.hasCycles()==g.hasCycles() && a.cycles().isEmpty()!=cycles;
+        }
+        if(!right)
+            System.out.println("wrong components, order or depths in the graph analysis (-10)");
+
+        TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        Config c=new MathExampleConfig();
+        try {
+            c.create();
+        }
+        catch (Exception e) {}
+        GraphAnalysis math=IndexedGraph.fromTopics().analyze();
+        IndexedGraph ig=math.getGraph();
+        if(math.hasCycles() || math.componentCount()!=ig.size() || math.depth(ig.id("TA"))!=0
+                || math.depth(ig.id("TR3"))!=4 || math.maxDepth()!=4)
+            System.out.println("wrong analysis of the math example (-10)");
+
+        // A million-node chain closed into a cycle: one component, found without recursion
+        int n=1_000_000;
+        IndexedGraph.Builder b=new IndexedGraph.Builder();
+        for(int i=0;i<n-1;i++)
+            b.edge(i==0 ? b.node("N0") : i, b.addNode("N"+(i+1)));
+        GraphAnalysis chain=b.build().analyze();
+        if(chain.componentCount()!=n || chain.maxDepth()!=n-1 || chain.topologicalOrder()[n-1]!=n-1)
+            System.out.println("wrong analysis of a large chain (-10)");
+        b.edge(n-1,0);
+        GraphAnalysis loop=b.build().analyze();
+        if(loop.componentCount()!=1 || loop.maxDepth()!=0 || loop.cycles().size()!=1 || loop.cycles().get(0).length!=n)
+            System.out.println("wrong analysis of a large cycle (-10)");
+    }
+
+    public static void testSubscriptionChurn(){
+        TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        ParallelAgentTest.CountAgent steady=new ParallelAgentTest.CountAgent();
+        tm.getTopic("X").subscribe(steady);
+
+        Thread publisher=new Thread(()->{
+            for(int i=1;i<=100000;i++)
+                tm.getTopic("X").publish(new Message(i));
+        });
+        boolean[] failed={false};
+        publisher.setUncaughtExceptionHandler((t,e)->failed[0]=true);
+        publisher.start();
+        while(publisher.isAlive()){
+            Agent churn=new ParallelAgentTest.CountAgent();
+            tm.getTopic("X").subscribe(churn);
+            tm.getTopic("X").unsubscribe(churn);
+        }
+        if(failed[0])
+            System.out.println("publishing failed while subscribers were changing (-10)");
+        if(steady.count!=100000)
+            System.out.println("a steady subscriber missed messages during subscription churn (-10)");
+    }
+
+    public static void testTopicIds(){
+        TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        String[] names={"A","B","C","D"};
+        for(int i=0;i<names.length;i++){
+            if(tm.getTopic(names[i]).id!=i || tm.getTopic(i)!=tm.getTopic(names[i]))
+                System.out.println("topic IDs are not dense or do not map back to their topics (-10)");
+        }
+        if(tm.getTopicCount()!=names.length)
+            System.out.println("wrong number of registered topics (-5)");
+
+        BinOpAgent plus=new BinOpAgent("plus","A","B","C",(x,y)->x+y);
+        ParallelAgentTest.CountAgent out=new ParallelAgentTest.CountAgent();
+        tm.getTopic("C").subscribe(out);
+        tm.getTopic("A").publish(new Message(2));
+        tm.getTopic("B").publish(new Message(3));
+        plus.callback("A",new Message(4)); // The by-name path must route to the same input
+        if(out.count!=2 || out.last!=7)
+            System.out.println("agent did not route topic IDs to the right inputs (-10)");
+    }
+
+    public static void testParallelFanOut(){
+        TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        int n=Topic.DEFAULT_PARALLEL_FAN_OUT*3;
+        ParallelAgentTest.CountAgent[] subs=new ParallelAgentTest.CountAgent[n];
+        for(int i=0;i<n;i++){
+            subs[i]=new ParallelAgentTest.CountAgent();
+            tm.getTopic("Wide").subscribe(subs[i]);
+        }
+        boolean[] common={false};
+        tm.getTopic("Wide").subscribe(new ParallelAgentTest.CountAgent(){
+            @Override
+            public void callback(String topic, Message msg){
+                if(Thread.currentThread() instanceof ForkJoinWorkerThread w && w.getPool()==ForkJoinPool.commonPool())
+                    common[0]=true;
+            }
+        });
+        for(int k=1;k<=10;k++)
+            tm.getTopic("Wide").publish(new Message(k));
+        for(ParallelAgentTest.CountAgent a : subs){
+            if(a.count!=10 || a.last!=10){
+                System.out.println("parallel fan-out did not deliver every message before publish returned (-10)");
+                break;
+            }
+        }
+        if(common[0])
+            System.out.println("parallel fan-out should not run on the common pool (-5)");
+
+        Thread[] caller={null};
+        tm.getTopic("Narrow").subscribe(new ParallelAgentTest.CountAgent(){
+            @Override
+            public void callback(String topic, Message msg){ caller[0]=Thread.currentThread(); }
+        });
+        tm.getTopic("Narrow").publish(new Message(1));
+        if(caller[0]!=Thread.currentThread())
+            System.out.println("small fan-outs should be delivered on the publishing thread (-5)");
+
+        // Thresholds are per topic, and topics created after clear() start from the default
+        tm.getTopic("Narrow").setParallelFanOutThreshold(1);
+        if(tm.getTopic("Wide").getParallelFanOutThreshold()!=Topic.DEFAULT_PARALLEL_FAN_OUT)
+            System.out.println("a topic's fan-out threshold should not change other topics (-5)");
+        tm.clear();
+        if(tm.getTopic("Narrow").getParallelFanOutThreshold()!=Topic.DEFAULT_PARALLEL_FAN_OUT)
+            System.out.println("clear() should reset fan-out thresholds (-5)");
+    }
+
     public static void graphTestMain(){
         testCycles();
         testBinGraph();
         testTopicsGraph();
+        testIndexedGraph();
+        testGraphAnalysis();
+        testSubscriptionChurn();
+        testTopicIds();
+        testParallelFanOut();
         System.out.println("done");
     }
 
@@ -0,0 +1,90 @@
+package project_biu.tests;
+
+import project_biu.configs.BinOpAgent;
+import project_biu.configs.EvaluationPlan;
+import project_biu.graph.Agent;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+ * Measures the speedup of level-parallel plan evaluation against the number of workers, on a wide
+ * generated graph: `width` input topics feeding `depth` levels of `width` BinOpAgents each, where agent i
+ * of a level combines agents i and i + 1 of the previous one. Every round publishes all inputs in one
+ * transaction, so each round recomputes the whole graph.
+ *
+ * The agents' operator burns a configurable number of iterations to stand in for a costly computation;
+ * with trivially cheap operators there is nothing worth spreading over cores.
+ *
+ * Usage: java project_biu.tests.LevelParallelBenchmark [width] [depth] [work] [rounds]
+ */
+public class LevelParallelBenchmark {
+
+    public static void main(String[] args) {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int work = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        TopicManagerSingleton.get().clear();
+        List<Agent> agents = new ArrayList<>();
+        for (int l = 1; l <= depth; l++) {
+            for (int i = 0; i < width; i++) {
+                agents.add(new BinOpAgent("L" + l + "_" + i, topic(l - 1, i), topic(l - 1, (i + 1) % width),
+                        topic(l, i), (x, y) -> burn(x, y, work)));
+            }
+        }
+        EvaluationPlan plan = EvaluationPlan.compile(agents);
+        plan.deploy();
+        System.out.printf("%d agents in %d levels, %d cores%n", plan.size(), plan.getLevelCount(),
+                Runtime.getRuntime().availableProcessors());
+
+        double sequential = measure(plan, null, width, rounds);
+        System.out.printf("%-10s %12s %10s%n", "workers", "round(ms)", "speedup");
+        System.out.printf("%-10s %12.3f %10.2f%n", "sequential", sequential, 1.0);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int workers = 1; workers <= cores; workers = workers < cores && workers * 2 > cores ? cores : workers * 2) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            double time = measure(plan, pool, width, rounds);
+            System.out.printf("%-10d %12.3f %10.2f%n", workers, time, sequential / time);
+            pool.shutdown();
+        }
+    }
+
+    // Average milliseconds per full recomputation of the plan on a pool (or sequentially for null)
+    private static double measure(EvaluationPlan plan, ForkJoinPool pool, int width, int rounds) {
+        plan.setPool(pool);
+        publishRound(width, -1); // Warm up
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            publishRound(width, r);
+        }
+        return (System.nanoTime() - start) / (rounds * 1_000_000.0);
+    }
+
+    private static void publishRound(int width, int round) {
+        Map<String, Message> inputs = new LinkedHashMap<>();
+        for (int i = 0; i < width; i++) {
+            inputs.put(topic(0, i), new Message(round + i * 0.001));
+        }
+        TopicManagerSingleton.get().publishAll(inputs);
+    }
+
+    private static String topic(int level, int index) {
+        return "T" + level + "_" + index;
+    }
+
+    // A deterministic computation costing roughly `work` floating point iterations
+    private static double burn(double x, double y, int work) {
+        double acc = x;
+        for (int k = 0; k < work; k++) {
+            acc = acc * 0.999 + y * 0.001;
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,105 @@
+package project_biu.tests;
+
+import project_biu.configs.BinOpAgent;
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.GenericConfig;
+import project_biu.configs.MemoCache;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class MemoCacheTest {
+
+    // Compares the cache with an LRU map on random operand pairs, many of them repeated
+    public static void testMatchesLruMap(){
+        int[] calls={0};
+        MemoCache cache=new MemoCache((a,b)->{calls[0]++; return a*31+b;}, 64);
+        Map<List<Double>,Double> lru=new LinkedHashMap<>(16,0.75f,true);
+        long hits=0, evictions=0;
+        Random r=new Random(11);
+        for(int i=0;i<20000;i++){
+            double a=r.nextInt(12), b=r.nextInt(i%2==0 ? 8 : 20);
+            List<Double> key=List.of(a,b);
+            if(lru.get(key)!=null)
+                hits++;
+            else{
+                if(lru.size()==64){
+                    lru.remove(lru.keySet().iterator().next());
+                    evictions++;
+                }
+                lru.put(key,a*31+b);
+            }
+            if(cache.applyAsDouble(a,b)!=a*31+b){
+                System.out.println("memoized operator returned a wrong result (-20)");
+                return;
+            }
+        }
+        if(cache.getHits()!=hits || cache.getEvictions()!=evictions || cache.getMisses()!=calls[0] || cache.size()!=64)
+            System.out.println("cache metrics "+cache+" differ from an LRU map: "+hits+" hits, "+evictions+" evictions (-10)");
+        if(cache.applyAsDouble(0.0,1)!=1 || cache.applyAsDouble(-0.0,1)!=1 || cache.applyAsDouble(Double.NaN,1)==cache.applyAsDouble(Double.NaN,1))
+            System.out.println("memoized operator should treat operands by their bits (-5)");
+        try{
+            new MemoCache((a,b)->a, 0);
+            System.out.println("a cache without capacity should be rejected (-5)");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    public static void testMemoizedAgents(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        BinOpAgent agent=new BinOpAgent("hypot","X","Y","H",Math::hypot);
+        agent.memoize(2);
+        for(double x : new double[]{3, 6, 3, 6, 3})
+            tm.getTopic("X").publish(new Message(x));
+        tm.getTopic("Y").publish(new Message(4));
+        tm.getTopic("X").publish(new Message(3));
+        if(!"5.0".equals(tm.getTopic("H").getLastMessage()) || agent.getMemoCache().getHits()!=1 || agent.getMemoCache().getMisses()!=1)
+            System.out.println("memoized BinOpAgent: "+agent.getMemoCache()+" (-10)");
+
+        try{
+            Path conf=Files.createTempFile("memo",".conf");
+            Files.writeString(conf,"project_biu.configs.ExponnentAgent memo=4\nA,B\nC\nproject_biu.configs.IncAgent\nC\nD\n");
+            for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.POOLED, ExecutionMode.COMPILED, ExecutionMode.BYTECODE}){
+                tm.clear();
+                GenericConfig gc=new GenericConfig();
+                gc.setConfFile(conf.toString());
+                gc.setExecutionMode(mode);
+                gc.create();
+                tm.getTopic("B").publish(new Message(0.5));
+                for(double a : new double[]{4, 9, 4, 9, 16}){
+                    tm.getTopic("A").publish(new Message(a));
+                    gc.awaitSettled(1000);
+                }
+                MemoCache cache=gc.getMemoCaches().size()==1 ? gc.getMemoCaches().values().iterator().next() : null;
+                if(!"5.0".equals(tm.getTopic("D").getLastMessage()) || cache==null || cache.getHits()!=2 || cache.getMisses()!=3)
+                    System.out.println("memoized ExponnentAgent in "+mode+" mode: "+cache+" (-10)");
+                gc.close();
+            }
+            Files.writeString(conf,"project_biu.configs.IncAgent memo=4\nA\nB\n");
+            GenericConfig gc=new GenericConfig();
+            gc.setConfFile(conf.toString());
+            try{
+                gc.create();
+                System.out.println("memoizing an agent that doesn't support it should be rejected (-5)");
+            }
+            catch (Exception e) {}
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("memoized configuration failed: "+e.getMessage()+" (-10)");
+        }
+    }
+
+    public static void memoCacheTestMain(){
+        testMatchesLruMap();
+        testMemoizedAgents();
+        System.out.println("done");
+    }
+}
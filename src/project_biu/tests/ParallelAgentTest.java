@@ -0,0 +1,195 @@
+package project_biu.tests;
+
+import project_biu.configs.BackpressurePolicy;
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.IdleStrategy;
+import project_biu.configs.ParallelAgent;
+import project_biu.configs.PlusAgent;
+import project_biu.graph.Agent;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+public class ParallelAgentTest {
+
+    public static class CountAgent implements Agent {
+
+        public volatile int count=0;
+        public volatile double last=Double.NaN;
+
+        @Override
+        public String getName() { return "Count Agent";}
+
+        @Override
+        public void reset() {}
+
+        @Override
+        public void callback(String topic, Message msg) {
+            count++;
+            last=msg.asDouble;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    public static void testAllModesDeliverEverything(){
+        for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.THREAD, ExecutionMode.VIRTUAL, ExecutionMode.POOLED}){
+            CountAgent ca=new CountAgent();
+            ParallelAgent pa=new ParallelAgent(ca, 1, mode);
+            for(int i=1;i<=1000;i++){
+                pa.callback("T", new Message(i));
+            }
+            pa.close();
+            if(ca.count!=1000 || ca.last!=1000)
+                System.out.println("ParallelAgent in "+mode+" mode lost or reordered messages (-10)");
+        }
+    }
+
+    public static void testConflatingInbox(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        PlusAgent plus=new PlusAgent(new String[]{"A","B"}, new String[]{"C"});
+        ParallelAgent pa=new ParallelAgent(plus, 1, ExecutionMode.POOLED, BackpressurePolicy.CONFLATE);
+        tm.getTopic("A").replaceSubscriber(plus, pa);
+        tm.getTopic("B").replaceSubscriber(plus, pa);
+        CountAgent out=new CountAgent();
+        tm.getTopic("C").subscribe(out);
+
+        for(int i=0;i<10000;i++){
+            tm.getTopic("A").publish(new Message(i));
+            tm.getTopic("B").publish(new Message(2*i));
+        }
+        while(!pa.isIdle()){
+            Thread.onSpinWait();
+        }
+        if(out.last!=9999+2*9999)
+            System.out.println("conflating inbox did not deliver the newest values (-10)");
+        System.out.println("conflated recomputes: "+out.count+" of 20000 messages, "+pa.getDiscardedCount()+" superseded");
+        pa.close();
+    }
+
+    public static void testConflatingFanIn(){
+        CountAgent slow=new CountAgent(){
+            @Override
+            public void callback(String topic, Message msg){
+                try{Thread.sleep(100);}
+                catch (InterruptedException e) {}
+                super.callback(topic, msg);
+            }
+        };
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        ParallelAgent pa=new ParallelAgent(slow, 1, ExecutionMode.THREAD, BackpressurePolicy.CONFLATE);
+        long worst=0;
+        for(int round=0;round<2;round++){
+            for(int i=0;i<10;i++){
+                long start=System.nanoTime();
+                pa.callback(tm.getTopic("In"+i).id, new Message(round*10+i));
+                worst=Math.max(worst, System.nanoTime()-start);
+            }
+        }
+        while(!pa.isIdle()){
+            Thread.onSpinWait();
+        }
+        if(worst>50_000_000L)
+            System.out.println("a publisher waited "+worst/1_000_000+" ms on a busy conflating agent with 10 inputs (-10)");
+        if(slow.count+pa.getDiscardedCount()!=20 || slow.count>11)
+            System.out.println("conflating agent with 10 inputs took "+slow.count+" values, "+pa.getDiscardedCount()+" superseded (-10)");
+        pa.close();
+    }
+
+    public static void testDropOldestInbox(){
+        CountAgent ca=new CountAgent();
+        ParallelAgent pa=new ParallelAgent(ca, 4, ExecutionMode.THREAD, BackpressurePolicy.DROP_OLDEST);
+        for(int i=1;i<=10000;i++){
+            pa.callback("T", new Message(i));
+        }
+        pa.close();
+        if(ca.last!=10000)
+            System.out.println("drop-oldest inbox lost the newest message (-10)");
+        if(ca.count+pa.getDiscardedCount()!=10000)
+            System.out.println("drop-oldest inbox miscounted dropped messages (-10)");
+    }
+
+    public static void testIdleStrategies(){
+        for(String name : new String[]{"busy_spin","spin_yield","backoff","block"}){
+            CountAgent ca=new CountAgent();
+            ParallelAgent pa=new ParallelAgent(ca, 1, ExecutionMode.THREAD, BackpressurePolicy.BLOCK, IdleStrategy.forName(name).get());
+            for(int i=1;i<=1000;i++){
+                pa.callback("T", new Message(i));
+            }
+            long start=System.currentTimeMillis();
+            pa.close();
+            if(ca.count!=1000)
+                System.out.println("worker with "+name+" idle strategy lost messages (-10)");
+            if(System.currentTimeMillis()-start>1000)
+                System.out.println("worker with "+name+" idle strategy was slow to shut down (-5)");
+        }
+    }
+
+    public static void testFailuresAreRecorded(){
+        for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.THREAD, ExecutionMode.POOLED}){
+            CountAgent ca=new CountAgent(){
+                @Override
+                public void callback(String topic, Message msg){
+                    if(msg.asDouble%10==0)
+                        throw new IllegalStateException("failed on "+msg.asDouble);
+                    super.callback(topic, msg);
+                }
+            };
+            ParallelAgent pa=new ParallelAgent(ca, 1, mode);
+            for(int i=1;i<=100;i++){
+                pa.callback("T", new Message(i));
+            }
+            pa.close();
+            if(ca.count!=90 || ca.last!=99)
+                System.out.println("a failing agent in "+mode+" mode stopped receiving messages (-10)");
+            if(pa.getFailureCount()!=10 || pa.getLastFailure()==null || !"failed on 100.0".equals(pa.getLastFailure().getMessage()))
+                System.out.println("ParallelAgent in "+mode+" mode did not record its agent's failures (-5)");
+        }
+    }
+
+    public static void testCloseWhilePublishing(){
+        for(BackpressurePolicy policy : new BackpressurePolicy[]{BackpressurePolicy.BLOCK, BackpressurePolicy.CONFLATE}){
+            for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.THREAD, ExecutionMode.POOLED}){
+                for(int round=0;round<20;round++){
+                    ParallelAgent pa=new ParallelAgent(new CountAgent(), 1, mode, policy);
+                    java.util.concurrent.atomic.AtomicBoolean done=new java.util.concurrent.atomic.AtomicBoolean();
+                    Thread[] publishers=new Thread[3];
+                    for(int t=0;t<publishers.length;t++){
+                        int topic=t;
+                        publishers[t]=new Thread(()->{
+                            for(int i=0;!done.get();i++)
+                                pa.callback(topic, new Message(i));
+                        });
+                        publishers[t].start();
+                    }
+                    try{
+                        Thread.sleep(1);
+                        pa.close();
+                        Thread.sleep(1); // Keep publishing to the closed agent for a while
+                        done.set(true);
+                        for(Thread t : publishers)
+                            t.join();
+                    }
+                    catch (InterruptedException e) {}
+                    if(!pa.isIdle()){
+                        System.out.println("a "+policy+" agent in "+mode+" mode published to while closing never became idle (-10)");
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public static void parallelAgentTestMain(){
+        testAllModesDeliverEverything();
+        testIdleStrategies();
+        testConflatingInbox();
+        testConflatingFanIn();
+        testDropOldestInbox();
+        testFailuresAreRecorded();
+        testCloseWhilePublishing();
+        System.out.println("done");
+    }
+}
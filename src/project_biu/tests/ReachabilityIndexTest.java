@@ -0,0 +1,185 @@
+package project_biu.tests;
+
+import project_biu.configs.Config;
+import project_biu.configs.MathExampleConfig;
+import project_biu.graph.CompressedBitSet;
+import project_biu.graph.IndexedGraph;
+import project_biu.graph.ReachabilityIndex;
+import project_biu.graph.TopicManagerSingleton;
+import project_biu.server.RequestParser.RequestInfo;
+import project_biu.servlets.ConfLoader;
+import project_biu.servlets.ImpactServlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Random;
+
+public class ReachabilityIndexTest {
+
+    // Builds random graphs, sparse and dense, and compares the index with a search from every node
+    public static void testMatchesSearch(){
+        Random r=new Random(5);
+        for(int round=0;round<100;round++){
+            int n=1+r.nextInt(60);
+            IndexedGraph.Builder b=new IndexedGraph.Builder();
+            for(int v=0;v<n;v++)
+                b.node("N"+v);
+            int edges=r.nextInt(round%2==0 ? n+1 : 3*n);
+            for(int e=0;e<edges;e++){
+                int u=r.nextInt(n), v=r.nextInt(n);
+                b.edge(round%3==0 ? u : Math.min(u,v), round%3==0 ? v : Math.max(u,v)); // Cycles in a third of the rounds
+            }
+            IndexedGraph g=b.build();
+            ReachabilityIndex index=ReachabilityIndex.of(g);
+            for(int v=0;v<n;v++){
+                BitSet down=search(g,v,false), up=search(g,v,true);
+                BitSet outputs=new BitSet(), inputs=new BitSet();
+                down.stream().filter(index::isOutput).forEach(outputs::set);
+                up.stream().filter(index::isInput).forEach(inputs::set);
+                if(!Arrays.equals(index.outputsOf(v).toArray(),outputs.stream().toArray())
+                        || !Arrays.equals(index.inputsOf(v).toArray(),inputs.stream().toArray())){
+                    System.out.println("reachability index differs from a search of the graph (-20)");
+                    return;
+                }
+            }
+        }
+    }
+
+    // Nodes reachable from v, v included, along the edges or against them
+    static BitSet search(IndexedGraph g, int v, boolean backwards){
+        BitSet seen=new BitSet();
+        ArrayDeque<Integer> queue=new ArrayDeque<>();
+        seen.set(v);
+        queue.add(v);
+        while(!queue.isEmpty()){
+            int u=queue.poll();
+            for(int w=0;w<g.size();w++)
+                for(int k=g.edgeStart(w);k<g.edgeEnd(w);k++){
+                    int from=backwards ? g.target(k) : w, to=backwards ? w : g.target(k);
+                    if(from==u && !seen.get(to)){
+                        seen.set(to);
+                        queue.add(to);
+                    }
+                }
+        }
+        return seen;
+    }
+
+    // Fan-ins wide enough for bitmap containers: inputs feed middle nodes, pairs of which feed outputs,
+    // so every output's inputs are the union of two compressed sets, compared with BitSets
+    public static void testCompressedBitSet(){
+        Random r=new Random(9);
+        for(int round=0;round<2;round++){
+            int inputs=round%2==0 ? 1<<17 : 1<<16, middles=20, outputs=20;
+            IndexedGraph.Builder b=new IndexedGraph.Builder();
+            for(int i=0;i<inputs+middles+outputs;i++)
+                b.addNode("N"+i);
+            BitSet[] fed=new BitSet[middles];
+            for(int m=0;m<middles;m++){
+                fed[m]=new BitSet();
+                int count=r.nextInt(m%2==0 ? 3000 : 40000); // Sparse groups (arrays) or dense ones (bitmaps)
+                for(int k=0;k<count;k++){
+                    int in=r.nextInt(inputs);
+                    fed[m].set(in);
+                    b.edge(in,inputs+m);
+                }
+            }
+            BitSet[] expected=new BitSet[outputs];
+            for(int o=0;o<outputs;o++){
+                int x=r.nextInt(middles), y=r.nextInt(middles);
+                b.edge(inputs+x,inputs+middles+o);
+                b.edge(inputs+y,inputs+middles+o);
+                expected[o]=(BitSet)fed[x].clone();
+                expected[o].or(fed[y]);
+            }
+            ReachabilityIndex index=ReachabilityIndex.of(b.build());
+            boolean right=true;
+            for(int o=0;right && o<outputs;o++){
+                CompressedBitSet set=index.inputsOf(inputs+middles+o);
+                right=Arrays.equals(set.toArray(),expected[o].stream().toArray()) && set.cardinality()==expected[o].cardinality()
+                        && !set.contains(-1) && !set.contains(inputs);
+                for(int k=0;right && k<1000;k++){
+                    int v=r.nextInt(inputs);
+                    right=set.contains(v)==expected[o].get(v);
+                }
+            }
+            if(!right){
+                System.out.println("compressed bit set differs from a BitSet (-20)");
+                return;
+            }
+        }
+    }
+
+    // A chain and a wide layered graph of 200k nodes: built once, then queried without any search
+    public static void testLargeGraph(){
+        int n=200_000;
+        IndexedGraph.Builder b=new IndexedGraph.Builder();
+        for(int i=0;i<n;i++)
+            b.addNode("N"+i);
+        for(int i=0;i<n-1;i++)
+            b.edge(i,i+1);
+        ReachabilityIndex chain=ReachabilityIndex.of(b.build());
+        if(!Arrays.equals(chain.outputsOf(0).toArray(),new int[]{n-1}) || !Arrays.equals(chain.inputsOf(n-1).toArray(),new int[]{0})
+                || chain.sizeInBytes()>1000)
+            System.out.println("wrong or oversized index of a chain, "+chain.sizeInBytes()+" bytes (-10)");
+
+        // 1000 inputs feeding 200 layers of 1000 nodes, each node reading two nodes of the layer above
+        int width=1000, layers=200;
+        b=new IndexedGraph.Builder();
+        for(int i=0;i<width*layers;i++)
+            b.addNode("L"+i);
+        for(int l=1;l<layers;l++)
+            for(int i=0;i<width;i++){
+                b.edge((l-1)*width+i, l*width+i);
+                b.edge((l-1)*width+(i+1)%width, l*width+i);
+            }
+        long start=System.nanoTime();
+        ReachabilityIndex wide=ReachabilityIndex.of(b.build());
+        long buildMillis=(System.nanoTime()-start)/1_000_000;
+        // Node i of layer l is fed by inputs i .. i+l (mod width), and feeds outputs i-(layers-1-l) .. i
+        int node=100*width+500;
+        if(wide.inputsOf(node).cardinality()!=101 || !wide.inputsOf(node).contains(600) || wide.inputsOf(node).contains(601)
+                || wide.outputsOf(node).cardinality()!=100 || !wide.outputsOf(node).contains((layers-1)*width+401))
+            System.out.println("wrong index of a layered graph (-10)");
+        if(buildMillis>5000)
+            System.out.println("indexing 200k nodes took "+buildMillis+" ms (-5)");
+    }
+
+    // Queries the endpoint on the math example: R1 depends on A and B and feeds R3
+    public static void testImpactEndpoint(){
+        TopicManagerSingleton.get().clear();
+        Config c=new MathExampleConfig();
+        try{
+            c.create();
+            ConfLoader.impact=ReachabilityIndex.of(IndexedGraph.fromTopics());
+            String ok=query("R1"), missing=query("nothing");
+            if(!ok.startsWith("HTTP/1.1 200") || !ok.endsWith("{\"topic\": \"R1\", \"outputs\": [\"R3\"], \"inputs\": [\"A\", \"B\"]}"))
+                System.out.println("wrong /impact answer: "+ok+" (-10)");
+            if(!missing.startsWith("HTTP/1.1 404"))
+                System.out.println("/impact should not find an unknown topic (-5)");
+        }
+        catch(Exception e){
+            System.out.println("/impact failed: "+e+" (-10)");
+        }
+        ConfLoader.impact=null;
+    }
+
+    static String query(String topic) throws Exception {
+        ByteArrayOutputStream out=new ByteArrayOutputStream();
+        new ImpactServlet().handle(new RequestInfo("GET","/impact?topic="+topic,new String[]{"impact"},
+                Map.of("topic",topic),Map.of(),new byte[0]),out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    public static void reachabilityIndexTestMain(){
+        testCompressedBitSet();
+        testMatchesSearch();
+        testLargeGraph();
+        testImpactEndpoint();
+        System.out.println("done");
+    }
+}
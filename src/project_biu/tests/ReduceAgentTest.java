@@ -0,0 +1,132 @@
+package project_biu.tests;
+
+import project_biu.configs.ExecutionMode;
+import project_biu.configs.GenericConfig;
+import project_biu.configs.MaxAgent;
+import project_biu.configs.MeanAgent;
+import project_biu.configs.MinAgent;
+import project_biu.configs.ProductAgent;
+import project_biu.configs.ReduceAgent;
+import project_biu.configs.SumAgent;
+import project_biu.graph.Message;
+import project_biu.graph.TopicManagerSingleton;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class ReduceAgentTest {
+
+    static double last(String topic){
+        Message m=TopicManagerSingleton.get().getTopic(topic).getLastMessageObject();
+        return m==null ? Double.NaN : m.asDouble;
+    }
+
+    // Updates random inputs of every reduction and compares each result with a full recomputation
+    public static void testIncrementalMatchesFullRecomputation(){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        int k=50;
+        String[] subs=new String[k];
+        for(int i=0;i<k;i++)
+            subs[i]="I"+(i%40); // The last 10 inputs repeat the first ones
+        ReduceAgent[] agents={
+                new SumAgent(subs,new String[]{"sum"}),
+                new ProductAgent(subs,new String[]{"product"}),
+                new MinAgent(subs,new String[]{"min"}),
+                new MaxAgent(subs,new String[]{"max"}),
+                new MeanAgent(subs,new String[]{"mean"})};
+        double[] choices={-2,-1,0.5,1,2}; // Products of these are exact
+        double[] values=new double[40];
+        Random r=new Random(3);
+        for(int i=0;i<40;i++){
+            if(!Double.isNaN(last("sum")))
+                System.out.println("a reduction published before all of its inputs had a value (-10)");
+            values[i]=choices[r.nextInt(choices.length)];
+            tm.getTopic("I"+i).publish(new Message(values[i]));
+        }
+        for(int step=0;step<500;step++){
+            int i=r.nextInt(40);
+            values[i]=choices[r.nextInt(choices.length)];
+            tm.getTopic("I"+i).publish(new Message(values[i]));
+            double sum=0, product=1, min=Double.POSITIVE_INFINITY, max=Double.NEGATIVE_INFINITY;
+            for(int j=0;j<k;j++){
+                double v=values[j%40];
+                sum+=v;
+                product*=v;
+                min=Math.min(min,v);
+                max=Math.max(max,v);
+            }
+            if(last("sum")!=sum || last("product")!=product || last("min")!=min || last("max")!=max || last("mean")!=sum/k){
+                System.out.println("incremental reduction differs from a full recomputation at step "+step+" (-20)");
+                break;
+            }
+        }
+        for(ReduceAgent a : agents)
+            a.close();
+        if(!agents[0].getFormula().startsWith("sum = sum(I0, I1, "))
+            System.out.println("wrong formula: "+agents[0].getFormula()+" (-5)");
+        try{
+            new SumAgent(new String[0],new String[]{"S"});
+            System.out.println("a reduction without inputs should be rejected (-5)");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    // Publishes random inputs to a configuration of reductions and returns the successive outputs
+    static List<String> run(Path conf, ExecutionMode mode){
+        TopicManagerSingleton.TopicManager tm=TopicManagerSingleton.get();
+        tm.clear();
+        GenericConfig gc=new GenericConfig();
+        gc.setConfFile(conf.toString());
+        gc.setExecutionMode(mode);
+        List<String> values=new ArrayList<>();
+        try{gc.create();}
+        catch (Exception e) {
+            System.out.println("reductions failed to load in "+mode+" mode (-10)");
+            return values;
+        }
+        Random r=new Random(9);
+        String[] inputs={"A","B","C","D","E"};
+        for(String in : inputs){
+            tm.getTopic(in).publish(new Message(r.nextInt(9)+1));
+            gc.awaitSettled(1000);
+        }
+        for(int i=0;i<100;i++){
+            tm.getTopic(inputs[r.nextInt(inputs.length)]).publish(new Message(r.nextInt(9)));
+            gc.awaitSettled(1000);
+            values.add(tm.getTopic("S").getLastMessage()+" "+tm.getTopic("M").getLastMessage()+" "+tm.getTopic("R").getLastMessage());
+        }
+        gc.close();
+        return values;
+    }
+
+    public static void testCompiledModesMatch(){
+        try{
+            Path conf=Files.createTempFile("reduce",".conf");
+            Files.writeString(conf,
+                    "project_biu.configs.SumAgent\nA,B,C,D,E\nS\n"+
+                    "project_biu.configs.MaxAgent\nA,S,E\nM\n"+
+                    "project_biu.configs.MeanAgent\nM\nN\n"+
+                    "project_biu.configs.ProductAgent\nN,C,C\nP\n"+
+                    "project_biu.configs.MinAgent\nP,D\nR\n");
+            List<String> pooled=run(conf, ExecutionMode.POOLED);
+            for(ExecutionMode mode : new ExecutionMode[]{ExecutionMode.COMPILED, ExecutionMode.BYTECODE}){
+                if(!pooled.equals(run(conf, mode)))
+                    System.out.println("reductions in "+mode+" mode differ from POOLED mode (-20)");
+            }
+            Files.delete(conf);
+        }
+        catch (Exception e) {
+            System.out.println("reduction configuration failed: "+e.getMessage()+" (-10)");
+        }
+    }
+
+    public static void reduceAgentTestMain(){
+        testIncrementalMatchesFullRecomputation();
+        testCompiledModesMatch();
+        System.out.println("done");
+    }
+}
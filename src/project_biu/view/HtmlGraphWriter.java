@@ -27,6 +27,19 @@ public class HtmlGraphWriter {
      * @throws IOException if an input or output exception occurs
      */
     public static String getGraphHTML(Graph graph) throws IOException {
+        return getGraphHTML(graph, List.of());
+    }
+
+    /**
+     * Generates HTML representation from the provided graph object from template graph.html,
+     * with lines of text about the deployed configuration shown under the graph
+     *
+     * @param graph  the graph object to be converted to HTML
+     * @param report the lines to show under the graph, as plain text
+     * @return a string containing the HTML representation of the graph
+     * @throws IOException if an input or output exception occurs
+     */
+    public static String getGraphHTML(Graph graph, List<String> report) throws IOException {
         // Load the HTML template from the file located two directories back in "html_files"
         // Get the current working directory
         Path currentDir = Paths.get(System.getProperty("user.dir"));
@@ -47,7 +60,7 @@ public class HtmlGraphWriter {
             String label = node.getName().substring(1);
             String equation = getNodeType(node.getName()).equals("agent") ? equationsMap.get(label) : "Topic";
             String nodeLabel = getNodeType(node.getName()).equals("topic") ? "Topic: " + label : "Agent: " + label;
-            String msg = node.getMsg() != null ? node.getMsg().asText : "null";
+            String msg = node.getMsg() != null ? node.getMsg().asText() : "null";
             nodesJsArray.append(String.format("{ id: '%s', label: '%s', shape: '%s', color: { background: '%s', border: 'black' }, message: '%s', equation: '%s' }",
                     node.getName(), nodeLabel, shape, color, msg, equation));
         }
@@ -66,8 +79,18 @@ public class HtmlGraphWriter {
         edgesJsArray.append("\n]");
 
         // Replace placeholders in the template with generated JavaScript arrays
+        // Report lines are plain text, one per line
+        StringBuilder reportHtml = new StringBuilder();
+        for (String line : report) {
+            if (reportHtml.length() > 0) {
+                reportHtml.append("<br>\n");
+            }
+            reportHtml.append(line.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;"));
+        }
+
         String result = template.replace("/* NODES_PLACEHOLDER */", nodesJsArray.toString())
-                .replace("/* EDGES_PLACEHOLDER */", edgesJsArray.toString());
+                .replace("/* EDGES_PLACEHOLDER */", edgesJsArray.toString())
+                .replace("<!-- REPORT_PLACEHOLDER -->", reportHtml.toString());
 
         return result;
     }
@@ -96,8 +119,8 @@ public class HtmlGraphWriter {
         List<Agent> agents = gc.getAgents();
         Map<String, String> nodeEquationMap = new HashMap<>();
         for (Agent agent : agents) {
-            if (agent instanceof ParallelAgent) {
-                Agent a = ((ParallelAgent) agent).getAgent();
+            Agent a = GenericConfig.unwrap(agent);
+            if (a != agent) { // A deployed wrapper (ParallelAgent or compiled plan proxy)
                 StringBuilder equation = new StringBuilder();
                 equation.append("");
                 switch (a) {
@@ -118,6 +141,12 @@ public class HtmlGraphWriter {
                     case ExponnentAgent exponnentAgent -> {
                         equation.append(exponnentAgent.getOutputTopicName()).append("=").append(exponnentAgent.getFirstTopicName()).append("^").append(exponnentAgent.getSecondTopicName());
                     }
+                    case ReduceAgent reduceAgent -> {
+                        equation.append(reduceAgent.getFormula().replace(" ", ""));
+                    }
+                    case ExpressionAgent expressionAgent -> {
+                        equation.append(expressionAgent.getFormula().replace(" ", ""));
+                    }
                     default -> {
                     }
 